@@ -0,0 +1,63 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// One full allocation pass, as ProducerService runs it after a capacity registration or a
+// POST /api/producers/fulfillment: every queued order against a freshly loaded engine
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AllocationBenchmark {
+
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    private int orders;
+
+    @Param({"UNIFORM", "SKEWED"})
+    private String deadlines;
+
+    private Order[] queue;
+    private List<ProducerCapacity> capacities;
+    private AllocationEngine engine;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        queue = BenchmarkData.orders(orders, deadlines, 42);
+        capacities = BenchmarkData.capacities(queue, deadlines, 43);
+    }
+
+    // Every pass starts from full stock; loading is part of the setup, not the measurement
+    @Setup(Level.Iteration)
+    public void loadEngine() {
+        engine = BenchmarkData.engine(capacities);
+        engine.totalAvailable();
+    }
+
+    @Benchmark
+    public int allocateQueue() {
+        int fulfilled = 0;
+        for (Order order : queue) {
+            Map<Long, Integer> touched = engine.allocate(order.getExpectedDeliveryTime(), order.getVaccineQuantity());
+            if (!touched.isEmpty()) {
+                fulfilled++;
+            }
+        }
+        return fulfilled;
+    }
+}
@@ -0,0 +1,197 @@
+package org.example;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.client.RestTemplate;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Statements, database round trips and HTTP calls of one allocation pass, before and after
+// batching (user-002). per-order is what the original loop did: a JPA save per capacity an
+// order touched (a merge SELECT and an UPDATE in a transaction of their own), then one
+// POST /api/orders/{id}/fulfill per order. batched is CapacityDeductionRepository's single JDBC
+// batch in the run's transaction and one POST /api/orders/fulfill. The counts are printed once
+// per trial; an embedded Tomcat stands in for ordering-service and only counts the calls.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AllocationRoundTripBenchmark {
+
+    private static final byte[] RESPONSE = "0".getBytes(StandardCharsets.UTF_8);
+
+    private static final String INSERT_SQL = "INSERT INTO producer_capacity"
+        + " (id, producer_name, vaccines_quantity, excess_vaccines, production_deadline) VALUES (?, ?, ?, ?, ?)";
+
+    // What Hibernate sends for a merge of a detached ProducerCapacity and its flush
+    private static final String MERGE_SELECT_SQL = "SELECT id, excess_vaccines, producer_name, production_deadline,"
+        + " vaccines_quantity, version FROM producer_capacity WHERE id = ?";
+    private static final String MERGE_UPDATE_SQL = "UPDATE producer_capacity SET excess_vaccines = ?, producer_name = ?,"
+        + " production_deadline = ?, vaccines_quantity = ?, version = ? WHERE id = ? AND version = ?";
+
+    // per-order takes about a minute a pass at 10000 (-p orders=10000)
+    @Param({"1000"})
+    private int orders;
+
+    @Param({"per-order", "batched"})
+    private String mode;
+
+    private EmbeddedPostgres postgres;
+    private CountingDataSource counting;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private CapacityDeductionRepository deductionRepository;
+    private Tomcat tomcat;
+    private String orderingUrl;
+    private final AtomicLong httpCalls = new AtomicLong();
+    private RestTemplate restTemplate;
+
+    private Order[] queue;
+    private List<ProducerCapacity> capacities;
+    private AllocationEngine engine;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException, LifecycleException {
+        postgres = EmbeddedPostgres.builder().start();
+        Flyway.configure()
+            .dataSource(postgres.getPostgresDatabase())
+            .locations("classpath:db/migration")
+            .load()
+            .migrate();
+        counting = new CountingDataSource(postgres.getPostgresDatabase());
+        jdbcTemplate = new JdbcTemplate(counting.getDataSource());
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(counting.getDataSource()));
+        deductionRepository = new CapacityDeductionRepository();
+        Field field = ReflectionUtils.findField(CapacityDeductionRepository.class, "jdbcTemplate");
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, deductionRepository, jdbcTemplate);
+
+        File baseDir = Files.createTempDirectory("tomcat").toFile();
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(baseDir.getAbsolutePath());
+        tomcat.setPort(0);
+        Context context = tomcat.addContext("", baseDir.getAbsolutePath());
+        Tomcat.addServlet(context, "orders", new HttpServlet() {
+            @Override
+            protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                httpCalls.incrementAndGet();
+                request.getInputStream().readAllBytes();
+                response.setContentType("application/json");
+                response.setContentLength(RESPONSE.length);
+                response.getOutputStream().write(RESPONSE);
+            }
+        });
+        context.addServletMappingDecoded("/api/orders/*", "orders");
+        tomcat.start();
+        orderingUrl = "http://127.0.0.1:" + tomcat.getConnector().getLocalPort() + "/api/orders";
+        restTemplate = new RestTemplate();
+
+        queue = BenchmarkData.orders(orders, "UNIFORM", 42);
+        capacities = BenchmarkData.capacities(queue, "UNIFORM", 43);
+        List<Object[]> rows = new ArrayList<>(capacities.size());
+        for (ProducerCapacity capacity : capacities) {
+            rows.add(new Object[] { capacity.getId(), capacity.getProducerName(), capacity.getVaccinesQuantity(),
+                capacity.getExcessVaccines(), Date.valueOf(capacity.getProductionDeadline()) });
+        }
+        new JdbcTemplate(postgres.getPostgresDatabase()).batchUpdate(INSERT_SQL, rows);
+
+        reset();
+        counting.reset();
+        httpCalls.set(0);
+        int fulfilled = allocate();
+        System.out.printf("%n%s, %d orders (%d fulfilled, %d capacities): %d statements, %d database round trips,"
+                + " %d HTTP calls%n", mode, orders, fulfilled, capacities.size(), counting.getStatements(),
+            counting.getRoundTrips(), httpCalls.get());
+    }
+
+    // Every pass starts from full stock; not counted or timed
+    @Setup(Level.Iteration)
+    public void reset() {
+        new JdbcTemplate(postgres.getPostgresDatabase())
+            .update("UPDATE producer_capacity SET excess_vaccines = vaccines_quantity, version = 0");
+        engine = BenchmarkData.engine(capacities);
+        engine.totalAvailable();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException, LifecycleException {
+        tomcat.stop();
+        tomcat.destroy();
+        postgres.close();
+    }
+
+    @Benchmark
+    public int allocate() {
+        return "batched".equals(mode) ? batched() : perOrder();
+    }
+
+    private int perOrder() {
+        int fulfilled = 0;
+        for (Order order : queue) {
+            Map<Long, Integer> touched = engine.allocate(order.getExpectedDeliveryTime(), order.getVaccineQuantity());
+            if (touched.isEmpty()) {
+                continue;
+            }
+            touched.forEach((capacityId, used) -> transactionTemplate.executeWithoutResult(status -> {
+                Map<String, Object> row = jdbcTemplate.queryForMap(MERGE_SELECT_SQL, capacityId);
+                long version = ((Number) row.get("version")).longValue();
+                jdbcTemplate.update(MERGE_UPDATE_SQL, (Integer) row.get("excess_vaccines") - used,
+                    row.get("producer_name"), row.get("production_deadline"), row.get("vaccines_quantity"),
+                    version + 1, capacityId, version);
+            }));
+            restTemplate.postForObject(orderingUrl + "/" + order.getId() + "/fulfill", null, Integer.class);
+            fulfilled++;
+        }
+        return fulfilled;
+    }
+
+    private int batched() {
+        Map<Long, Integer> deductions = new LinkedHashMap<>();
+        List<Long> fulfilledOrderIds = new ArrayList<>();
+        for (Order order : queue) {
+            Map<Long, Integer> touched = engine.allocate(order.getExpectedDeliveryTime(), order.getVaccineQuantity());
+            if (!touched.isEmpty()) {
+                touched.forEach((capacityId, used) -> deductions.merge(capacityId, used, Integer::sum));
+                fulfilledOrderIds.add(order.getId());
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> deductionRepository.deductAll(deductions));
+        restTemplate.postForObject(orderingUrl + "/fulfill", fulfilledOrderIds, Integer.class);
+        return fulfilledOrderIds.size();
+    }
+}
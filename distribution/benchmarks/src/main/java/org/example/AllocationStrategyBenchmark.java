@@ -0,0 +1,106 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// A full allocation pass through each AllocationStrategy, against a freshly loaded engine. How
+// many orders and units each one served is printed once per trial; the time includes the
+// solver's planning and the draws.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AllocationStrategyBenchmark {
+
+    @Param({"10000", "100000"})
+    private int orders;
+
+    @Param({"UNIFORM", "SKEWED"})
+    private String deadlines;
+
+    @Param({"greedy", "max-orders", "max-orders-partial"})
+    private String strategy;
+
+    private Order[] queue;
+    private List<ProducerCapacity> capacities;
+    private AllocationEngine engine;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        queue = BenchmarkData.orders(orders, deadlines, 42);
+        capacities = BenchmarkData.capacities(queue, deadlines, 43);
+
+        loadEngine();
+        Tally tally = allocate();
+        System.out.printf("%n%s %s: %d of %d orders fulfilled, %d partial, %d units%n", strategy, deadlines,
+            tally.fulfilled, queue.length, tally.partial, tally.units);
+    }
+
+    // Every pass starts from full stock; loading is part of the setup, not the measurement
+    @Setup(Level.Iteration)
+    public void loadEngine() {
+        engine = BenchmarkData.engine(capacities);
+        engine.totalAvailable();
+    }
+
+    @Benchmark
+    public Tally allocate() {
+        AllocationStrategy allocationStrategy = "greedy".equals(strategy)
+            ? new GreedyAllocationStrategy()
+            : new MaxOrdersAllocationStrategy(engine, 60_000, 0, "max-orders-partial".equals(strategy));
+        Tally tally = new Tally();
+        allocationStrategy.allocate(consumer -> {
+            for (Order order : queue) {
+                consumer.accept(order);
+            }
+        }, tally);
+        return tally;
+    }
+
+    // Draws like ProducerService, without claims or a run to record in
+    public class Tally implements AllocationStrategy.Allocator {
+
+        int fulfilled;
+        int partial;
+        long units;
+
+        @Override
+        public boolean isClaimed(Order order) {
+            return false;
+        }
+
+        @Override
+        public boolean serve(Order order, int quantity) {
+            Map<Long, Integer> touched = engine.allocate(order.getExpectedDeliveryTime(), quantity);
+            if (touched.isEmpty()) {
+                return false;
+            }
+            if (quantity < order.remainingQuantity()) {
+                partial++;
+            } else {
+                fulfilled++;
+            }
+            units += quantity;
+            return true;
+        }
+
+        @Override
+        public void skip(Order order) {
+        }
+    }
+}
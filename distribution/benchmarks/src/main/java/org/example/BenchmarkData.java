@@ -0,0 +1,91 @@
+package org.example;
+
+import org.springframework.util.ReflectionUtils;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Synthetic orders and capacities for the benchmarks, generated from a fixed seed so every
+// run and every commit sees the same data
+public final class BenchmarkData {
+
+    public static final LocalDate START = LocalDate.of(2030, 1, 1);
+    public static final int DAYS = 365;
+
+    private BenchmarkData() {
+    }
+
+    // UNIFORM spreads deadlines over the year; SKEWED piles most of them into the first weeks,
+    // which is what a backlog of overdue orders looks like
+    public static LocalDate deadline(SplittableRandom random, String distribution) {
+        double r = random.nextDouble();
+        int day = "SKEWED".equals(distribution) ? (int) (DAYS * r * r * r) : (int) (DAYS * r);
+        return START.plusDays(day);
+    }
+
+    // Sorted the way the allocation queue delivers them: Priority first, then date, quantity, id
+    public static Order[] orders(int count, String distribution, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Order[] orders = new Order[count];
+        for (int i = 0; i < count; i++) {
+            Order order = new Order();
+            order.setId((long) i + 1);
+            order.setStatus(random.nextInt(10) == 0 ? "Priority" : "Pending");
+            order.setExpectedDeliveryTime(deadline(random, distribution));
+            order.setVaccineQuantity(10 * (1 + random.nextInt(50)));
+            orders[i] = order;
+        }
+        Arrays.sort(orders, Comparator.comparing((Order order) -> !"Priority".equals(order.getStatus()))
+            .thenComparing(Order::getExpectedDeliveryTime)
+            .thenComparing(Order::getVaccineQuantity)
+            .thenComparing(Order::getId));
+        return orders;
+    }
+
+    // One capacity per ten orders, holding about 80% of the total demand, so some orders are skipped
+    public static List<ProducerCapacity> capacities(Order[] orders, String distribution, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long demand = 0;
+        for (Order order : orders) {
+            demand += order.getVaccineQuantity();
+        }
+        int count = Math.max(1, orders.length / 10);
+        int perCapacity = (int) Math.max(1, demand * 8 / 10 / count);
+
+        List<ProducerCapacity> capacities = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ProducerCapacity capacity = new ProducerCapacity();
+            capacity.setId((long) i + 1);
+            capacity.setProducerName("Producer " + (i % 100));
+            capacity.setVaccinesQuantity(perCapacity);
+            capacity.setExcessVaccines(perCapacity);
+            capacity.setProductionDeadline(deadline(random, distribution));
+            capacities.add(capacity);
+        }
+        return capacities;
+    }
+
+    // An engine loaded from the given capacities instead of the database; only the stock query is used
+    public static AllocationEngine engine(List<ProducerCapacity> capacities) {
+        ProducerResponseRepository repository = (ProducerResponseRepository) Proxy.newProxyInstance(
+            ProducerResponseRepository.class.getClassLoader(),
+            new Class<?>[] { ProducerResponseRepository.class },
+            (proxy, method, args) -> {
+                if (method.getName().equals("findStockedOrderByDeadline")) {
+                    return capacities;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+
+        AllocationEngine engine = new AllocationEngine();
+        Field field = ReflectionUtils.findField(AllocationEngine.class, "responseRepository");
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, engine, repository);
+        return engine;
+    }
+}
@@ -0,0 +1,91 @@
+package org.example;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A DataSource that counts what goes over the wire: every statement executed or added to a
+// batch, and every round trip to the server (an execute, a whole batch, a commit or rollback)
+public final class CountingDataSource {
+
+    private static final Set<String> EXECUTES = Set.of("execute", "executeQuery", "executeUpdate", "executeLargeUpdate");
+    private static final Set<String> BATCHES = Set.of("executeBatch", "executeLargeBatch");
+
+    private final DataSource dataSource;
+    private final AtomicLong statements = new AtomicLong();
+    private final AtomicLong roundTrips = new AtomicLong();
+
+    public CountingDataSource(DataSource target) {
+        this.dataSource = proxy(DataSource.class, target, (proxy, method, args) -> {
+            Object result = invoke(target, method, args);
+            return result instanceof Connection connection ? connection(connection) : result;
+        });
+    }
+
+    public DataSource getDataSource() { return dataSource; }
+
+    public long getStatements() { return statements.get(); }
+
+    public long getRoundTrips() { return roundTrips.get(); }
+
+    public void reset() {
+        statements.set(0);
+        roundTrips.set(0);
+    }
+
+    private Connection connection(Connection target) {
+        return proxy(Connection.class, target, (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.equals("commit") || name.equals("rollback")) {
+                roundTrips.incrementAndGet();
+            }
+            Object result = invoke(target, method, args);
+            if (result instanceof CallableStatement statement) {
+                return statement(CallableStatement.class, statement);
+            }
+            if (result instanceof PreparedStatement statement) {
+                return statement(PreparedStatement.class, statement);
+            }
+            if (result instanceof Statement statement) {
+                return statement(Statement.class, statement);
+            }
+            return result;
+        });
+    }
+
+    private <T extends Statement> T statement(Class<T> type, T target) {
+        return proxy(type, target, (proxy, method, args) -> {
+            String name = method.getName();
+            if (EXECUTES.contains(name)) {
+                statements.incrementAndGet();
+                roundTrips.incrementAndGet();
+            } else if (name.equals("addBatch")) {
+                statements.incrementAndGet();
+            } else if (BATCHES.contains(name)) {
+                roundTrips.incrementAndGet();
+            }
+            return invoke(target, method, args);
+        });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+}
@@ -0,0 +1,62 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// What the allocation loop paid per order while dates travelled as strings, against a lookup of
+// already parsed dates. The loop now gets LocalDate values from the JSON reader.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateParseBenchmark {
+
+    private static final int DATES = 1024;
+
+    private String[] dates;
+    private Map<String, LocalDate> parsed;
+
+    @Setup
+    public void generate() {
+        SplittableRandom random = new SplittableRandom(42);
+        dates = new String[DATES];
+        parsed = new HashMap<>();
+        for (int i = 0; i < DATES; i++) {
+            dates[i] = BenchmarkData.deadline(random, "UNIFORM").toString();
+            parsed.put(dates[i], LocalDate.parse(dates[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DATES)
+    public void parse(Blackhole blackhole) {
+        for (String date : dates) {
+            blackhole.consume(LocalDate.parse(date));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DATES)
+    public void lookup(Blackhole blackhole) {
+        for (String date : dates) {
+            blackhole.consume(parsed.get(date));
+        }
+    }
+}
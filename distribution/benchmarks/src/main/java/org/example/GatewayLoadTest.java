@@ -0,0 +1,160 @@
+package org.example;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Overload test of the gateway's protection (LocalRateLimiter, LoadShedder, circuit breakers).
+// It needs the running stack, so it is a plain main instead of a JMH benchmark:
+//
+//   java -cp benchmarks/target/benchmarks.jar org.example.GatewayLoadTest [baseUrl] [readers] [writers] [seconds] [rows]
+//
+// First only the readers page through the orders, then the writers flood POST /api/orders/batch
+// next to them, each from its own X-Forwarded-For address (start the gateway with
+// --gateway.rate-limit.trusted-proxies=1 so they count as separate clients) and backing off for a
+// second on 429/503. Prints the status codes and the read latency percentiles of both phases.
+public class GatewayLoadTest {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int writers = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        int rows = args.length > 4 ? Integer.parseInt(args[4]) : 1000;
+
+        HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newFixedThreadPool(8))
+            .build();
+        byte[] batch = batch(rows);
+
+        report("baseline", run(client, baseUrl, readers, 0, seconds, batch));
+        report("overload", run(client, baseUrl, readers, writers, seconds, batch));
+        System.exit(0);
+    }
+
+    private static Phase run(HttpClient client, String baseUrl, int readers, int writers, int seconds, byte[] batch)
+            throws InterruptedException {
+        Phase phase = new Phase();
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService threads = Executors.newFixedThreadPool(readers + writers);
+
+        for (int i = 0; i < readers; i++) {
+            threads.execute(() -> {
+                List<Long> latencies = new ArrayList<>();
+                HttpRequest read = HttpRequest.newBuilder(URI.create(baseUrl + "/api/orders/page?limit=100"))
+                    .timeout(REQUEST_TIMEOUT)
+                    .build();
+                while (System.nanoTime() < until) {
+                    long started = System.nanoTime();
+                    int status = send(client, read);
+                    phase.count("read", status);
+                    if (status == 200) {
+                        latencies.add(System.nanoTime() - started);
+                    }
+                }
+                phase.readLatencies.addAll(latencies);
+            });
+        }
+        for (int i = 0; i < writers; i++) {
+            String address = "10.0." + (i / 250) + "." + (i % 250 + 1);
+            threads.execute(() -> {
+                HttpRequest write = HttpRequest.newBuilder(URI.create(baseUrl + "/api/orders/batch"))
+                    .timeout(REQUEST_TIMEOUT)
+                    .header("Content-Type", "application/x-ndjson")
+                    .header("X-Forwarded-For", address)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(batch))
+                    .build();
+                while (System.nanoTime() < until) {
+                    int status = send(client, write);
+                    phase.count("write", status);
+                    // A well-behaved client waits as long as Retry-After (1 s) says
+                    if (status == 429 || status == 503) {
+                        pause(1000);
+                    }
+                }
+            });
+        }
+
+        threads.shutdown();
+        threads.awaitTermination(seconds + REQUEST_TIMEOUT.toSeconds() + 10, TimeUnit.SECONDS);
+        return phase;
+    }
+
+    // Status code, or 0 for a timeout or a failed connection
+    private static int send(HttpClient client, HttpRequest request) {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] batch(int rows) {
+        StringBuilder body = new StringBuilder();
+        LocalDate date = LocalDate.now().plusYears(1);
+        for (int i = 0; i < rows; i++) {
+            body.append("{\"region\":\"Load test\",\"vaccineQuantity\":").append(1 + i % 100)
+                .append(",\"expectedDeliveryTime\":\"").append(date.plusDays(i % 90)).append("\"}\n");
+        }
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void report(String name, Phase phase) {
+        List<Long> latencies = new ArrayList<>(phase.readLatencies);
+        Collections.sort(latencies);
+        System.out.printf("%s: %s%n", name, phase.statuses());
+        System.out.printf("%s: reads ok=%d p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms%n", name, latencies.size(),
+            percentile(latencies, 0.50), percentile(latencies, 0.95), percentile(latencies, 0.99),
+            percentile(latencies, 1.0));
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.size() - 1, Math.ceil(p * sorted.size()) - 1);
+        return sorted.get(Math.max(index, 0)) / 1_000_000d;
+    }
+
+    private static class Phase {
+
+        private final Map<String, LongAdder> statusCounts = new ConcurrentHashMap<>();
+        private final List<Long> readLatencies = Collections.synchronizedList(new ArrayList<>());
+
+        void count(String kind, int status) {
+            statusCounts.computeIfAbsent(kind + " " + status, key -> new LongAdder()).increment();
+        }
+
+        Map<String, Long> statuses() {
+            Map<String, Long> sorted = new TreeMap<>();
+            statusCounts.forEach((key, count) -> sorted.put(key, count.sum()));
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.example;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.Timeout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Requests per second of a POST /api/orders/fulfill-sized call, with the default
+// SimpleClientHttpRequestFactory the services used before and with the pooled HttpClient 5
+// setup of HttpClientConfig, against an embedded Tomcat standing in for the other service
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class InterServiceClientBenchmark {
+
+    private static final List<Long> ORDER_IDS = List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L);
+    private static final byte[] RESPONSE = "8".getBytes(StandardCharsets.UTF_8);
+
+    private Tomcat tomcat;
+    private String url;
+    private RestTemplate simple;
+    private RestTemplate pooled;
+    private CloseableHttpClient pooledClient;
+
+    @Setup
+    public void start() throws IOException, LifecycleException {
+        File baseDir = Files.createTempDirectory("tomcat").toFile();
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(baseDir.getAbsolutePath());
+        tomcat.setPort(0);
+        Context context = tomcat.addContext("", baseDir.getAbsolutePath());
+        Tomcat.addServlet(context, "fulfill", new HttpServlet() {
+            @Override
+            protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                request.getInputStream().readAllBytes();
+                response.setContentType("application/json");
+                response.setContentLength(RESPONSE.length);
+                response.getOutputStream().write(RESPONSE);
+            }
+        });
+        context.addServletMappingDecoded("/api/orders/fulfill", "fulfill");
+        tomcat.start();
+        url = "http://127.0.0.1:" + tomcat.getConnector().getLocalPort() + "/api/orders/fulfill";
+
+        simple = new RestTemplate(new SimpleClientHttpRequestFactory());
+
+        pooledClient = HttpClients.custom()
+            .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(200)
+                .setMaxConnPerRoute(50)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                    .setConnectTimeout(Timeout.ofSeconds(2))
+                    .setSocketTimeout(Timeout.ofSeconds(30))
+                    .build())
+                .build())
+            .build();
+        pooled = new RestTemplate(new HttpComponentsClientHttpRequestFactory(pooledClient));
+    }
+
+    @TearDown
+    public void stop() throws IOException, LifecycleException {
+        pooledClient.close();
+        tomcat.stop();
+        tomcat.destroy();
+    }
+
+    @Benchmark
+    public Integer simpleClient() {
+        return simple.postForObject(url, ORDER_IDS, Integer.class);
+    }
+
+    @Benchmark
+    public Integer pooledClient() {
+        return pooled.postForObject(url, ORDER_IDS, Integer.class);
+    }
+}
@@ -0,0 +1,184 @@
+package org.example;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+// The SQL behind OrderRepository's hot queries, against an embedded PostgreSQL migrated with
+// ordering-service's own Flyway scripts, so the indexes are the ones production has
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderQueryBenchmark {
+
+    // OrderStatus codes
+    private static final short PENDING = 0;
+    private static final short PRIORITY = 1;
+
+    private static final String COLUMNS = "id, region, vaccine_quantity, fulfilled_quantity, expected_delivery_time, status";
+
+    // streamAllocationQueue, one status at a time
+    private static final String ALLOCATION_QUEUE_SQL = "SELECT " + COLUMNS + " FROM vaccine_orders"
+        + " WHERE status = ? AND expected_delivery_time >= ? AND vaccine_quantity <= ?"
+        + " ORDER BY expected_delivery_time, vaccine_quantity, id LIMIT ?";
+
+    // findPageByStatusInAfter
+    private static final String KEYSET_PAGE_SQL = "SELECT " + COLUMNS + " FROM vaccine_orders"
+        + " WHERE status IN (?, ?) AND (expected_delivery_time > ? OR (expected_delivery_time = ? AND id > ?))"
+        + " ORDER BY expected_delivery_time, id LIMIT ?";
+
+    // findByRegionKey
+    private static final String REGION_SQL = "SELECT " + COLUMNS + " FROM vaccine_orders WHERE lower(region) = lower(?)";
+
+    // What a dashboard needs per region: aggregated from the orders, or read from the rollups
+    private static final String REGION_TOTALS_FROM_ORDERS_SQL = "SELECT lower(region), count(*), sum(vaccine_quantity),"
+        + " sum(vaccine_quantity) FILTER (WHERE status IN (0, 1)), sum(vaccine_quantity) FILTER (WHERE status = 2)"
+        + " FROM vaccine_orders GROUP BY lower(region) ORDER BY 1";
+
+    private static final String REGION_TOTALS_FROM_ROLLUPS_SQL = "SELECT region_key, orders, ordered_quantity,"
+        + " pending_quantity, fulfilled_quantity FROM region_rollups ORDER BY region_key";
+
+    // g is a bigint so the multiplications do not overflow at a million rows
+    private static final String GENERATE_SQL = "INSERT INTO vaccine_orders"
+        + " (region, vaccine_quantity, fulfilled_quantity, expected_delivery_time, status)"
+        + " SELECT 'Region ' || (g % 16), CAST(10 * (1 + (g * 7919) % 50) AS INT), 0, DATE '2030-01-01' + CAST((g * 104729) % 365 AS INT),"
+        + " CASE WHEN g % 10 = 0 THEN 1 WHEN g % 3 = 0 THEN 2 ELSE 0 END"
+        + " FROM generate_series(1, CAST(? AS BIGINT)) g";
+
+    @Param({"10000", "1000000"})
+    private int rows;
+
+    @Param({"1000"})
+    private int limit;
+
+    private EmbeddedPostgres postgres;
+    private Connection connection;
+    private PreparedStatement allocationQueue;
+    private PreparedStatement keysetPage;
+    private PreparedStatement region;
+    private PreparedStatement regionTotalsFromOrders;
+    private PreparedStatement regionTotalsFromRollups;
+
+    @Setup
+    public void start() throws IOException, SQLException {
+        postgres = EmbeddedPostgres.builder().start();
+        // The orders go in before V7, so its backfill fills the region rollups
+        migrate("6");
+
+        connection = postgres.getPostgresDatabase().getConnection();
+        try (PreparedStatement generate = connection.prepareStatement(GENERATE_SQL)) {
+            generate.setInt(1, rows);
+            generate.executeUpdate();
+        }
+        migrate("latest");
+        try (Statement analyze = connection.createStatement()) {
+            analyze.execute("ANALYZE vaccine_orders");
+            analyze.execute("ANALYZE region_rollups");
+        }
+
+        allocationQueue = connection.prepareStatement(ALLOCATION_QUEUE_SQL);
+        keysetPage = connection.prepareStatement(KEYSET_PAGE_SQL);
+        region = connection.prepareStatement(REGION_SQL);
+        regionTotalsFromOrders = connection.prepareStatement(REGION_TOTALS_FROM_ORDERS_SQL);
+        regionTotalsFromRollups = connection.prepareStatement(REGION_TOTALS_FROM_ROLLUPS_SQL);
+    }
+
+    private void migrate(String target) {
+        Flyway.configure()
+            .dataSource(postgres.getPostgresDatabase())
+            .locations("classpath:ordering-migrations")
+            .target(target)
+            .load()
+            .migrate();
+    }
+
+    @TearDown
+    public void stop() throws IOException, SQLException {
+        connection.close();
+        postgres.close();
+    }
+
+    @Benchmark
+    public void allocationQueue(Blackhole blackhole) throws SQLException {
+        allocationQueue.setShort(1, PENDING);
+        allocationQueue.setDate(2, Date.valueOf(BenchmarkData.START.plusDays(90)));
+        allocationQueue.setInt(3, 250);
+        allocationQueue.setInt(4, limit);
+        consume(allocationQueue, blackhole);
+    }
+
+    @Benchmark
+    public void keysetPage(Blackhole blackhole) throws SQLException {
+        Date after = Date.valueOf(BenchmarkData.START.plusDays(180));
+        keysetPage.setShort(1, PENDING);
+        keysetPage.setShort(2, PRIORITY);
+        keysetPage.setDate(3, after);
+        keysetPage.setDate(4, after);
+        keysetPage.setLong(5, rows / 2);
+        keysetPage.setInt(6, limit);
+        consume(keysetPage, blackhole);
+    }
+
+    @Benchmark
+    public void ordersByRegion(Blackhole blackhole) throws SQLException {
+        region.setString(1, "region 7");
+        consume(region, blackhole);
+    }
+
+    @Benchmark
+    public void regionTotalsFromOrders(Blackhole blackhole) throws SQLException {
+        consumeTotals(regionTotalsFromOrders, blackhole);
+    }
+
+    @Benchmark
+    public void regionTotalsFromRollups(Blackhole blackhole) throws SQLException {
+        consumeTotals(regionTotalsFromRollups, blackhole);
+    }
+
+    private void consumeTotals(PreparedStatement statement, Blackhole blackhole) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                blackhole.consume(resultSet.getString(1));
+                for (int column = 2; column <= 5; column++) {
+                    blackhole.consume(resultSet.getLong(column));
+                }
+            }
+        }
+    }
+
+    private void consume(PreparedStatement statement, Blackhole blackhole) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                blackhole.consume(resultSet.getLong(1));
+                blackhole.consume(resultSet.getString(2));
+                blackhole.consume(resultSet.getInt(3));
+                blackhole.consume(resultSet.getInt(4));
+                blackhole.consume(resultSet.getDate(5));
+                blackhole.consume(resultSet.getShort(6));
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+// The allocation queue as it goes over the wire: ordering-service writes its orders one by one
+// as NDJSON or as a Smile value sequence (WireFormatConfig), producer-service reads them back
+// into its Order. The encoded size is printed once per trial.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderWireFormatBenchmark {
+
+    private static final String[] REGIONS = {
+        "Dolnośląskie", "Kujawsko-Pomorskie", "Lubelskie", "Lubuskie", "Łódzkie", "Małopolskie", "Mazowieckie",
+        "Opolskie", "Podkarpackie", "Podlaskie", "Pomorskie", "Śląskie", "Świętokrzyskie", "Warmińsko-Mazurskie",
+        "Wielkopolskie", "Zachodniopomorskie"
+    };
+
+    @Param({"100000"})
+    private int orders;
+
+    @Param({"ndjson", "smile"})
+    private String format;
+
+    private ObjectMapper mapper;
+    private QueuedOrder[] payload;
+    private byte[] encoded;
+
+    @Setup
+    public void generate() throws IOException {
+        // Spring Boot's defaults on both sides: ISO dates, unknown fields ignored
+        mapper = new ObjectMapper("smile".equals(format)
+                ? SmileFactory.builder().enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES).build()
+                : new JsonFactory())
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+        Order[] orders = BenchmarkData.orders(this.orders, "UNIFORM", 42);
+        payload = new QueuedOrder[orders.length];
+        for (int i = 0; i < orders.length; i++) {
+            payload[i] = new QueuedOrder(orders[i], REGIONS[i % REGIONS.length]);
+        }
+        encoded = encode();
+        System.out.printf("%n%s: %d orders, %d bytes, %.1f bytes per order%n", format, orders.length, encoded.length,
+            (double) encoded.length / orders.length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(encoded != null ? encoded.length : 1 << 20);
+        if ("smile".equals(format)) {
+            JsonGenerator generator = mapper.getFactory().createGenerator(out);
+            try (SequenceWriter writer = mapper.writerFor(QueuedOrder.class).writeValues(generator)) {
+                for (QueuedOrder order : payload) {
+                    writer.write(order);
+                }
+            }
+        } else {
+            for (QueuedOrder order : payload) {
+                out.write(mapper.writeValueAsBytes(order));
+                out.write('\n');
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) throws IOException {
+        try (MappingIterator<Order> orders = mapper.readerFor(Order.class).readValues(new ByteArrayInputStream(encoded))) {
+            while (orders.hasNext()) {
+                blackhole.consume(orders.next());
+            }
+        }
+    }
+
+    // The fields ordering-service's Order carries
+    public static class QueuedOrder {
+
+        private final Order order;
+        private final String region;
+
+        QueuedOrder(Order order, String region) {
+            this.order = order;
+            this.region = region;
+        }
+
+        public Long getId() { return order.getId(); }
+        public String getRegion() { return region; }
+        public int getVaccineQuantity() { return order.getVaccineQuantity(); }
+        public int getFulfilledQuantity() { return 0; }
+        public String getStatus() { return order.getStatus(); }
+        public LocalDate getExpectedDeliveryTime() { return order.getExpectedDeliveryTime(); }
+        public long getVersion() { return 0; }
+    }
+}
@@ -0,0 +1,160 @@
+package org.example;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Throughput of the services themselves (not through the gateway) while their request threads
+// wait, run once against the default Tomcat threads and once with the virtual-threads profile:
+//
+//   java -cp benchmarks/target/benchmarks.jar org.example.ServiceLoadTest [orderingUrl] [producerUrl] [seconds] [clients...]
+//
+// Two kinds of request, each in closed loop from every client count in turn:
+// - db: GET /api/orders/page on ordering-service, a keyset page read from PostgreSQL
+// - http: POST /api/producers/events on producer-service with an OrderCreated event, which
+//   records the event id in ordering_inbox and reads the order back from ordering-service's
+//   allocation queue before answering. The events name orders that do not exist and carry
+//   negative ids, which ordering-service never hands out, so nothing is allocated.
+// After a warm-up round at the first client count, prints requests/sec, the status codes and the
+// latency percentiles per kind and client count.
+public class ServiceLoadTest {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    public static void main(String[] args) throws Exception {
+        String orderingUrl = args.length > 0 ? args[0] : "http://localhost:8081";
+        String producerUrl = args.length > 1 ? args[1] : "http://localhost:8082";
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        List<Integer> clientCounts = new ArrayList<>();
+        for (int i = 3; i < args.length; i++) {
+            clientCounts.add(Integer.parseInt(args[i]));
+        }
+        if (clientCounts.isEmpty()) {
+            // Past Tomcat's 200 platform threads at the top end
+            clientCounts = List.of(50, 200, 800);
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newFixedThreadPool(16))
+            .build();
+        // Fresh ids per run, so the inbox never drops one as a redelivery
+        AtomicLong eventIds = new AtomicLong(-System.currentTimeMillis() * 1000);
+
+        HttpRequest read = HttpRequest.newBuilder(URI.create(orderingUrl + "/api/orders/page?limit=100"))
+            .timeout(REQUEST_TIMEOUT)
+            .build();
+        Call db = () -> send(client, read);
+        Call http = () -> {
+            long id = eventIds.decrementAndGet();
+            HttpRequest event = HttpRequest.newBuilder(URI.create(producerUrl + "/api/producers/events"))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(orderCreated(id)))
+                .build();
+            return send(client, event);
+        };
+
+        // Not reported: lets both services compile their hot paths and fill their pools first
+        run(clientCounts.get(0), seconds, db);
+        run(clientCounts.get(0), seconds, http);
+        for (int clients : clientCounts) {
+            report("db", clients, seconds, run(clients, seconds, db));
+            report("http", clients, seconds, run(clients, seconds, http));
+        }
+        System.exit(0);
+    }
+
+    private interface Call {
+        int send();
+    }
+
+    private static Phase run(int clients, int seconds, Call call) throws InterruptedException {
+        Phase phase = new Phase();
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService threads = Executors.newFixedThreadPool(clients);
+
+        for (int i = 0; i < clients; i++) {
+            threads.execute(() -> {
+                List<Long> latencies = new ArrayList<>();
+                while (System.nanoTime() < until) {
+                    long started = System.nanoTime();
+                    int status = call.send();
+                    phase.count(status);
+                    if (status == 200) {
+                        latencies.add(System.nanoTime() - started);
+                    }
+                }
+                phase.latencies.addAll(latencies);
+            });
+        }
+
+        threads.shutdown();
+        threads.awaitTermination(seconds + REQUEST_TIMEOUT.toSeconds() + 10, TimeUnit.SECONDS);
+        return phase;
+    }
+
+    // Status code, or 0 for a timeout or a failed connection
+    private static int send(HttpClient client, HttpRequest request) {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private static String orderCreated(long id) {
+        String order = "{\\\"id\\\":" + id + ",\\\"region\\\":\\\"Load test\\\",\\\"status\\\":\\\"Pending\\\","
+            + "\\\"expectedDeliveryTime\\\":\\\"2030-01-01\\\",\\\"vaccineQuantity\\\":1}";
+        return "[{\"id\":" + id + ",\"eventType\":\"OrderCreated\",\"aggregateId\":" + id + ",\"payload\":\""
+            + order + "\"}]";
+    }
+
+    private static void report(String kind, int clients, int seconds, Phase phase) {
+        List<Long> latencies = new ArrayList<>(phase.latencies);
+        Collections.sort(latencies);
+        System.out.printf("%s clients=%d: %.0f ok/s %s%n", kind, clients, latencies.size() / (double) seconds,
+            phase.statuses());
+        System.out.printf("%s clients=%d: p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms%n", kind, clients,
+            percentile(latencies, 0.50), percentile(latencies, 0.95), percentile(latencies, 0.99),
+            percentile(latencies, 1.0));
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.size() - 1, Math.ceil(p * sorted.size()) - 1);
+        return sorted.get(Math.max(index, 0)) / 1_000_000d;
+    }
+
+    private static class Phase {
+
+        private final Map<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+        private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+
+        void count(int status) {
+            statusCounts.computeIfAbsent(status, key -> new LongAdder()).increment();
+        }
+
+        Map<Integer, Long> statuses() {
+            Map<Integer, Long> sorted = new TreeMap<>();
+            statusCounts.forEach((status, count) -> sorted.put(status, count.sum()));
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// One POST /api/producers/simulations against a loaded snapshot: the baseline pass plus one
+// pass per scenario, each adding stock for one producer at a different deadline
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulationBenchmark {
+
+    @Param({"100000"})
+    private int orders;
+
+    @Param({"1", "16"})
+    private int scenarios;
+
+    private SimulationSnapshot snapshot;
+    private List<SimulationScenario> batch;
+    private AllocationSimulator simulator;
+
+    @Setup
+    public void generate() {
+        Order[] queue = BenchmarkData.orders(orders, "UNIFORM", 42);
+        for (int i = 0; i < queue.length; i++) {
+            queue[i].setRegion("Region " + (i % 16));
+        }
+        List<ProducerCapacity> capacities = BenchmarkData.capacities(queue, "UNIFORM", 43);
+        snapshot = new SimulationSnapshot(Arrays.asList(queue), capacities, LocalDateTime.now());
+
+        batch = new ArrayList<>(scenarios);
+        for (int s = 0; s < scenarios; s++) {
+            ProducerCapacityRequest extra = new ProducerCapacityRequest();
+            extra.setProducerName("Producer " + s);
+            extra.setVaccinesQuantity(50_000);
+            extra.setProductionDeadline(BenchmarkData.START.plusDays(20L * s).toString());
+            SimulationScenario scenario = new SimulationScenario();
+            scenario.setName("+50k at day " + 20 * s);
+            scenario.setCapacities(List.of(extra));
+            batch.add(scenario);
+        }
+        simulator = new AllocationSimulator(0);
+    }
+
+    @Benchmark
+    public List<SimulationResult> simulate() {
+        return simulator.simulate(snapshot, batch, false);
+    }
+}
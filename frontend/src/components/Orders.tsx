@@ -22,6 +22,7 @@ import { useRegion } from './RegionContext.tsx';
 function Orders() {
   const { region } = useRegion();
   const [orders, setOrders] = useState([]);
+  const [summary, setSummary] = useState(null);
   const [error, setError] = useState(null);
   const [newOrder, setNewOrder] = useState({
     region: region,
@@ -37,6 +38,28 @@ function Orders() {
     fetchOrders();
   }, []);
 
+  // Live updates instead of re-fetching the list; EventSource reconnects by itself and the
+  // server replays what was missed, or sends "reset" when it has to be reloaded
+  useEffect(() => {
+    const events = new EventSource('http://localhost:8080/api/orders/events');
+    events.addEventListener('order-status', (e) => {
+      const change = JSON.parse(e.data);
+      const ids = new Set(change.orderIds);
+      setOrders((prev) => prev.map((order) => (ids.has(order.id) ? { ...order, status: change.status } : order)));
+      fetchSummary();
+    });
+    events.addEventListener('order-created', (e) => {
+      const order = JSON.parse(e.data);
+      if (order.region.toLowerCase() === region.toLowerCase()) {
+        setOrders((prev) => (prev.some((o) => o.id === order.id) ? prev : [...prev, order]));
+        fetchSummary();
+      }
+    });
+    events.addEventListener('orders-changed', () => fetchOrders());
+    events.addEventListener('reset', () => fetchOrders());
+    return () => events.close();
+  }, [region]);
+
   const sortedOrders = [...orders]
   .filter(order => statusFilter === 'All' || order.status === statusFilter)
   .sort((a, b) => {
@@ -92,6 +115,7 @@ function Orders() {
       });
       setOrders(result.data);
       setError(null);
+      await fetchSummary();
     } catch (err) {
       if (err.response) {
         setError(`Error fetching orders: ${err.response.status} - ${err.response.data}`);
@@ -103,6 +127,19 @@ function Orders() {
     }
   };
 
+  // Totals come from the server-side rollups instead of being summed over the rows
+  const fetchSummary = async () => {
+    try {
+      const totals = await axios.get('http://localhost:8080/api/orders/regions/summary', {
+        params: { region },
+        timeout: 5000,
+      });
+      setSummary(totals.data.length > 0 ? totals.data[0] : null);
+    } catch (err) {
+      setSummary(null);
+    }
+  };
+
   const handleInputChange = (e) => {
     const { name, value } = e.target;
     setNewOrder({ ...newOrder, [name]: value });
@@ -190,6 +227,12 @@ function Orders() {
       )}
 
       <h2>All Orders</h2>
+      {summary && (
+        <Typography variant="body2" sx={{ marginBottom: 2 }}>
+          Ordered: {summary.orderedQuantity} · Delivered: {summary.deliveredQuantity} · Pending:{' '}
+          {summary.pendingQuantity} · Expired: {summary.expiredQuantity} · Cancelled: {summary.cancelledQuantity}
+        </Typography>
+      )}
       {orders.length === 0 ? (
           <p>No orders found.</p>
       ) : (
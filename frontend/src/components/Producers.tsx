@@ -60,6 +60,45 @@ function Producers() {
     }
   }, [producer]);
 
+  // Live stock and queue changes; EventSource reconnects by itself and the server replays what
+  // was missed, or sends "reset" when the lists have to be reloaded
+  useEffect(() => {
+    if (!producer) return;
+    const capacityEvents = new EventSource('http://localhost:8080/api/producers/events');
+    capacityEvents.addEventListener('capacity-deducted', (e: MessageEvent) => {
+      const { deductions } = JSON.parse(e.data);
+      setCapacities((prev) => prev.map((c) => (deductions[c.id] ? { ...c, excessVaccines: c.excessVaccines - deductions[c.id] } : c)));
+    });
+    capacityEvents.addEventListener('capacity-registered', (e: MessageEvent) => {
+      const added = JSON.parse(e.data).filter((c: any) => c.producerName === producer);
+      if (added.length > 0) {
+        setCapacities((prev) => [...prev, ...added.filter((c: any) => !prev.some((p) => p.id === c.id))]);
+      }
+    });
+    capacityEvents.addEventListener('reset', () => fetchCapacities(producer));
+
+    const orderEvents = new EventSource('http://localhost:8080/api/orders/events');
+    orderEvents.addEventListener('order-status', (e: MessageEvent) => {
+      const change = JSON.parse(e.data);
+      const ids = new Set(change.orderIds);
+      const open = change.status === 'Pending' || change.status === 'Priority';
+      setOrders((prev) => prev
+        .filter((o) => open || !ids.has(o.id))
+        .map((o) => (ids.has(o.id) ? { ...o, status: change.status } : o)));
+    });
+    orderEvents.addEventListener('order-created', (e: MessageEvent) => {
+      const order = JSON.parse(e.data);
+      setOrders((prev) => (prev.some((o) => o.id === order.id) ? prev : [...prev, order]));
+    });
+    orderEvents.addEventListener('orders-changed', () => fetchOrdersCombined());
+    orderEvents.addEventListener('reset', () => fetchOrdersCombined());
+
+    return () => {
+      capacityEvents.close();
+      orderEvents.close();
+    };
+  }, [producer]);
+
   const clearForm = () => {
     setVaccinesQuantity('');
     setProductionDeadline('');
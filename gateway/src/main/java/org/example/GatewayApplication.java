@@ -1,13 +1,23 @@
 package org.example;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
 import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.cloud.gateway.route.builder.GatewayFilterSpec;
+import org.springframework.cloud.gateway.support.RouteMetadataUtils;
+import org.springframework.cloud.gateway.support.ipresolver.RemoteAddressResolver;
+import org.springframework.cloud.gateway.support.ipresolver.XForwardedRemoteAddressResolver;
 import org.springframework.cloud.gateway.route.builder.RouteLocatorBuilder;
 import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpMethod;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.reactive.CorsWebFilter;
 import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
+import reactor.core.publisher.Mono;
+import java.net.InetSocketAddress;
+import java.util.Set;
 
 @SpringBootApplication
 public class GatewayApplication {
@@ -16,15 +26,51 @@ public class GatewayApplication {
     }
 
     @Bean
-    public RouteLocator customRouteLocator(RouteLocatorBuilder builder) {
+    public RouteLocator customRouteLocator(RouteLocatorBuilder builder, LocalRateLimiter rateLimiter,
+                                           KeyResolver clientKeyResolver, LoadShedder loadShedder) {
         return builder.routes()
+                // Event streams stay open; declared first so no response timeout applies to them
+                .route("ordering-events", r -> r.method(HttpMethod.GET).and().path("/api/orders/events")
+                        .metadata(RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR, -1)
+                        .uri("http://ordering:8081"))
+                .route("producer-events", r -> r.method(HttpMethod.GET).and().path("/api/producers/events")
+                        .metadata(RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR, -1)
+                        .uri("http://producer:8082"))
                 .route("ordering", r -> r.path("/api/orders/**")
+                        .filters(f -> protect(f, "ordering", rateLimiter, clientKeyResolver, loadShedder))
                         .uri("http://ordering:8081"))
                 .route("producer", r -> r.path("/api/producers/**")
+                        .filters(f -> protect(f, "producer", rateLimiter, clientKeyResolver, loadShedder))
                         .uri("http://producer:8082"))
                 .build();
     }
 
+    // Per client token buckets (429), then the route's bulkheads (503, writes first), then a
+    // circuit breaker that fails fast with 503 while the backend is down, overloaded or timing out.
+    // A 500 is the answer to one bad request (the services report validation errors that way), so
+    // it does not count. Limits are in application.properties (gateway.rate-limit.*, resilience4j.*).
+    private static GatewayFilterSpec protect(GatewayFilterSpec filters, String routeId, LocalRateLimiter rateLimiter,
+                                             KeyResolver clientKeyResolver, LoadShedder loadShedder) {
+        return filters
+                .requestRateLimiter(c -> c.setRateLimiter(rateLimiter).setKeyResolver(clientKeyResolver))
+                .filter(loadShedder.forRoute(routeId))
+                .circuitBreaker(c -> c.setName(routeId).setStatusCodes(Set.of("502", "503", "504")));
+    }
+
+    // "<read|write>|<client address>"; with gateway.rate-limit.trusted-proxies > 0 the address
+    // is taken from X-Forwarded-For, as added by that many proxies in front of the gateway
+    @Bean
+    public KeyResolver clientKeyResolver(@Value("${gateway.rate-limit.trusted-proxies:0}") int trustedProxies) {
+        RemoteAddressResolver addressResolver = trustedProxies > 0
+                ? XForwardedRemoteAddressResolver.maxTrustedIndex(trustedProxies)
+                : new RemoteAddressResolver() { };
+        return exchange -> {
+            InetSocketAddress address = addressResolver.resolve(exchange);
+            String client = address == null ? "unknown" : address.getHostString();
+            return Mono.just(LocalRateLimiter.kind(exchange.getRequest().getMethod()) + "|" + client);
+        };
+    }
+
     @Bean
     public CorsWebFilter corsWebFilter() {
         CorsConfiguration corsConfig = new CorsConfiguration();
@@ -0,0 +1,71 @@
+package org.example;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+// Bulkheads per route: at most resilience4j.bulkhead.instances.<route>.max-concurrent-calls
+// requests of the route are upstream at once, and writes may only take
+// <route>-writes.max-concurrent-calls of those. When a backend slows down, its writes are turned
+// away first with 503 and Retry-After, and the rest of the permits stay free for reads, so
+// dashboards keep loading while a burst of new orders is shed. Nothing queues in the gateway.
+@Component
+public class LoadShedder {
+
+    @Autowired
+    private BulkheadRegistry bulkheadRegistry;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    public GatewayFilter forRoute(String routeId) {
+        Bulkhead route = bulkheadRegistry.bulkhead(routeId);
+        Bulkhead writes = bulkheadRegistry.bulkhead(routeId + "-writes");
+        Counter readsShed = shed(routeId, LocalRateLimiter.READ);
+        Counter writesShed = shed(routeId, LocalRateLimiter.WRITE);
+
+        return (exchange, chain) -> {
+            boolean write = LocalRateLimiter.WRITE.equals(LocalRateLimiter.kind(exchange.getRequest().getMethod()));
+            if (write && !writes.tryAcquirePermission()) {
+                writesShed.increment();
+                return reject(exchange);
+            }
+            if (!route.tryAcquirePermission()) {
+                if (write) {
+                    writes.onComplete();
+                }
+                (write ? writesShed : readsShed).increment();
+                return reject(exchange);
+            }
+            return chain.filter(exchange).doFinally(signal -> {
+                route.onComplete();
+                if (write) {
+                    writes.onComplete();
+                }
+            });
+        };
+    }
+
+    private Counter shed(String routeId, String kind) {
+        return Counter.builder("gateway.requests.shed")
+                .description("Requests turned away because the route's bulkhead was full")
+                .tag("route", routeId)
+                .tag("kind", kind)
+                .register(meterRegistry);
+    }
+
+    private static Mono<Void> reject(ServerWebExchange exchange) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        response.getHeaders().set("Retry-After", "1");
+        return response.setComplete();
+    }
+}
@@ -0,0 +1,102 @@
+package org.example;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Token buckets per route, client and request kind, held in this gateway's memory (no Redis), for
+// the RequestRateLimiter filter of the routes. The key comes from clientKeyResolver as
+// "<read|write>|<client address>". Limits are read from the environment on every request,
+// gateway.rate-limit.<route>.<reads|writes>-per-second and -burst, falling back to
+// gateway.rate-limit.default.*, so they can be changed with properties or environment variables.
+// With several gateway instances each one enforces the limit on its own.
+@Component
+public class LocalRateLimiter implements RateLimiter<Object> {
+
+    public static final String READ = "read";
+    public static final String WRITE = "write";
+
+    private static final Set<HttpMethod> WRITES = Set.of(HttpMethod.POST, HttpMethod.PUT, HttpMethod.PATCH, HttpMethod.DELETE);
+
+    @Autowired
+    private Environment environment;
+
+    // Idle clients' buckets are full again anyway, so they can go
+    private final Cache<String, TokenBucket> buckets = Caffeine.newBuilder()
+            .expireAfterAccess(Duration.ofMinutes(10))
+            .maximumSize(100_000)
+            .build();
+
+    public static String kind(HttpMethod method) {
+        return WRITES.contains(method) ? WRITE : READ;
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        String kind = id.startsWith(WRITE + "|") ? WRITE : READ;
+        double perSecond = limit(routeId, kind + "s-per-second", WRITE.equals(kind) ? 10 : 50);
+        double burst = limit(routeId, kind + "s-burst", WRITE.equals(kind) ? 20 : 100);
+
+        TokenBucket bucket = buckets.get(routeId + "|" + id, key -> new TokenBucket(burst));
+        long remaining = bucket.tryConsume(perSecond, burst, System.nanoTime());
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-RateLimit-Remaining", String.valueOf(Math.max(remaining, 0)));
+        headers.put("X-RateLimit-Replenish-Rate", String.valueOf(perSecond));
+        headers.put("X-RateLimit-Burst-Capacity", String.valueOf(burst));
+        return Mono.just(new Response(remaining >= 0, headers));
+    }
+
+    private double limit(String routeId, String name, double fallback) {
+        Double routeLimit = environment.getProperty("gateway.rate-limit." + routeId + "." + name, Double.class);
+        if (routeLimit != null) {
+            return routeLimit;
+        }
+        return environment.getProperty("gateway.rate-limit.default." + name, Double.class, fallback);
+    }
+
+    @Override
+    public Map<String, Object> getConfig() {
+        return Map.of();
+    }
+
+    @Override
+    public Class<Object> getConfigClass() {
+        return Object.class;
+    }
+
+    @Override
+    public Object newConfig() {
+        return new Object();
+    }
+
+    private static class TokenBucket {
+
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        TokenBucket(double burst) {
+            this.tokens = burst;
+        }
+
+        // Tokens left after taking one, or -1 if there was none to take
+        synchronized long tryConsume(double perSecond, double burst, long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * perSecond / 1_000_000_000d);
+            refilledAt = now;
+            if (tokens < 1) {
+                return -1;
+            }
+            tokens -= 1;
+            return (long) tokens;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package org.example;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Shields the backends from dashboards asking for the same lists at the same time. For the GET
+// paths in gateway.cache.paths, identical requests (path, query and Accept) that arrive while one
+// is on its way upstream wait for that one and get a copy of its response (single-flight), and
+// the response is then kept for gateway.cache.ttl-ms. Responses carry an ETag; a request whose
+// If-None-Match still matches gets 304 without a body. Any other write passing through the
+// gateway empties the cache once it succeeds. Changes the services make to each other directly
+// (allocations, fulfilments) are only picked up when the TTL runs out, so it is kept short.
+@Component
+public class ResponseCacheFilter implements GlobalFilter, Ordered {
+
+    private static final Set<HttpMethod> WRITES = Set.of(HttpMethod.POST, HttpMethod.PUT, HttpMethod.PATCH, HttpMethod.DELETE);
+    private static final Set<HttpStatusCode> CACHEABLE = Set.of(HttpStatus.OK, HttpStatus.NO_CONTENT);
+    // Set per request by the gateway and the CORS filter, or recomputed on replay (lower case)
+    private static final Set<String> NOT_REPLAYED = Set.of("content-length", "transfer-encoding", "connection", "date", "vary");
+
+    private final List<PathPattern> cachedPaths;
+    private final long maxEntryBytes;
+    private final Cache<String, CachedResponse> cache;
+    private final Map<String, Sinks.One<CachedResponse>> inFlight = new ConcurrentHashMap<>();
+    // Bumped by every write, so a response fetched before it is not stored after it
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter coalesced;
+    private final Counter misses;
+    private final Counter notModified;
+    private final Counter invalidations;
+
+    public ResponseCacheFilter(@Value("${gateway.cache.paths}") List<String> paths,
+                               @Value("${gateway.cache.ttl-ms:2000}") long ttlMs,
+                               @Value("${gateway.cache.max-bytes:67108864}") long maxBytes,
+                               @Value("${gateway.cache.max-entry-bytes:8388608}") long maxEntryBytes,
+                               MeterRegistry meterRegistry) {
+        this.cachedPaths = paths.stream().map(PathPatternParser.defaultInstance::parse).toList();
+        this.maxEntryBytes = maxEntryBytes;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .maximumWeight(maxBytes)
+                .weigher((String key, CachedResponse response) -> response.body.length)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "gatewayResponses");
+
+        // hit + coalesced + miss = cacheable requests; miss = the ones that went upstream
+        hits = requests(meterRegistry, "hit");
+        coalesced = requests(meterRegistry, "coalesced");
+        misses = requests(meterRegistry, "miss");
+        notModified = Counter.builder("gateway.cache.not.modified")
+                .description("Cacheable requests answered with 304 Not Modified")
+                .register(meterRegistry);
+        invalidations = Counter.builder("gateway.cache.invalidations")
+                .description("Writes through the gateway that emptied the response cache")
+                .register(meterRegistry);
+        Gauge.builder("gateway.cache.hit.ratio", this, filter -> filter.ratio(filter.hits.count()))
+                .description("Share of cacheable GETs served from the cache")
+                .register(meterRegistry);
+        Gauge.builder("gateway.cache.upstream.reduction", this,
+                        filter -> filter.ratio(filter.hits.count() + filter.coalesced.count()))
+                .description("Share of cacheable GETs that did not need their own upstream call")
+                .register(meterRegistry);
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("gateway.cache.requests")
+                .description("Cacheable GETs by how they were served")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private double ratio(double served) {
+        double total = hits.count() + coalesced.count() + misses.count();
+        return total == 0 ? 0 : served / total;
+    }
+
+    // Before NettyWriteResponseFilter, so the response it writes goes through our decorator
+    @Override
+    public int getOrder() {
+        return NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (WRITES.contains(request.getMethod())) {
+            // Only a write that went through changes anything; rejected ones (429, 503, 4xx) keep the cache
+            return chain.filter(exchange).doFinally(signal -> {
+                HttpStatusCode status = exchange.getResponse().getStatusCode();
+                if (status != null && status.is2xxSuccessful()) {
+                    invalidate();
+                }
+            });
+        }
+        if (request.getMethod() != HttpMethod.GET || !isCached(request) || isNoCache(request)) {
+            return chain.filter(exchange);
+        }
+
+        String key = key(request);
+        CachedResponse cached = cache.getIfPresent(key);
+        if (cached != null) {
+            hits.increment();
+            return write(exchange, cached);
+        }
+
+        Sinks.One<CachedResponse> flight = Sinks.one();
+        Sinks.One<CachedResponse> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            // Empty when the first request got nothing worth sharing; then this one asks for itself
+            return leader.asMono()
+                    .map(response -> {
+                        coalesced.increment();
+                        return write(exchange, response);
+                    })
+                    .switchIfEmpty(Mono.fromSupplier(() -> {
+                        misses.increment();
+                        return chain.filter(exchange);
+                    }))
+                    .flatMap(Function.identity());
+        }
+
+        misses.increment();
+        long startedAt = generation.get();
+        return chain.filter(exchange.mutate().response(new Recorder(exchange, key, flight, startedAt)).build())
+                .doFinally(signal -> {
+                    // Cancelled or failed before a body came back
+                    flight.tryEmitEmpty();
+                    inFlight.remove(key, flight);
+                });
+    }
+
+    private boolean isCached(ServerHttpRequest request) {
+        PathContainer path = request.getPath().pathWithinApplication();
+        for (PathPattern pattern : cachedPaths) {
+            if (pattern.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNoCache(ServerHttpRequest request) {
+        List<String> cacheControl = request.getHeaders().get(HttpHeaders.CACHE_CONTROL);
+        return cacheControl != null && cacheControl.stream().anyMatch(value -> value.contains("no-cache"));
+    }
+
+    private static String key(ServerHttpRequest request) {
+        String accept = request.getHeaders().getFirst(HttpHeaders.ACCEPT);
+        return request.getURI().getRawPath() + "?" + request.getURI().getRawQuery() + " " + accept;
+    }
+
+    private void invalidate() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+        invalidations.increment();
+    }
+
+    private Mono<Void> write(ServerWebExchange exchange, CachedResponse cached) {
+        ServerHttpResponse response = exchange.getResponse();
+        cached.headers.forEach((name, values) -> {
+            if (!response.getHeaders().containsKey(name)) {
+                response.getHeaders().put(name, values);
+            }
+        });
+        if (cached.matches(exchange.getRequest())) {
+            notModified.increment();
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            return response.setComplete();
+        }
+        response.setStatusCode(cached.status);
+        response.getHeaders().setContentLength(cached.body.length);
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(cached.body)));
+    }
+
+    // Reads the upstream body of the request that went upstream, hands it to the requests waiting
+    // on it and to the cache, then writes it (or a 304) to its own client
+    private class Recorder extends ServerHttpResponseDecorator {
+
+        private final ServerWebExchange exchange;
+        private final String key;
+        private final Sinks.One<CachedResponse> flight;
+        private final long startedAt;
+
+        Recorder(ServerWebExchange exchange, String key, Sinks.One<CachedResponse> flight, long startedAt) {
+            super(exchange.getResponse());
+            this.exchange = exchange;
+            this.key = key;
+            this.flight = flight;
+            this.startedAt = startedAt;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return DataBufferUtils.join(Flux.from(body))
+                    .map(joined -> {
+                        byte[] bytes = new byte[joined.readableByteCount()];
+                        joined.read(bytes);
+                        DataBufferUtils.release(joined);
+                        return bytes;
+                    })
+                    .defaultIfEmpty(new byte[0])
+                    .flatMap(this::record);
+        }
+
+        // Streaming responses are passed through and not shared
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            flight.tryEmitEmpty();
+            return super.writeAndFlushWith(body);
+        }
+
+        private Mono<Void> record(byte[] bytes) {
+            HttpStatusCode status = getStatusCode() != null ? getStatusCode() : HttpStatus.OK;
+            if (!CACHEABLE.contains(status)) {
+                flight.tryEmitEmpty();
+                return getDelegate().writeWith(Mono.just(bufferFactory().wrap(bytes)));
+            }
+
+            if (getHeaders().getETag() == null) {
+                getHeaders().setETag("\"" + DigestUtils.md5DigestAsHex(bytes) + "\"");
+            }
+            CachedResponse response = new CachedResponse(status, getHeaders(), bytes);
+            flight.tryEmitValue(response);
+            if (bytes.length <= maxEntryBytes && generation.get() == startedAt) {
+                cache.put(key, response);
+            }
+
+            if (response.matches(exchange.getRequest())) {
+                notModified.increment();
+                getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+                setStatusCode(HttpStatus.NOT_MODIFIED);
+                return getDelegate().setComplete();
+            }
+            getHeaders().setContentLength(bytes.length);
+            return getDelegate().writeWith(Mono.just(bufferFactory().wrap(bytes)));
+        }
+    }
+
+    private static class CachedResponse {
+
+        private final HttpStatusCode status;
+        private final HttpHeaders headers = new HttpHeaders();
+        private final byte[] body;
+        private final String etag;
+
+        CachedResponse(HttpStatusCode status, HttpHeaders upstreamHeaders, byte[] body) {
+            this.status = status;
+            this.body = body;
+            upstreamHeaders.forEach((name, values) -> {
+                String lowerCaseName = name.toLowerCase(Locale.ROOT);
+                if (!NOT_REPLAYED.contains(lowerCaseName) && !lowerCaseName.startsWith("access-control-")) {
+                    headers.put(name, List.copyOf(values));
+                }
+            });
+            this.etag = upstreamHeaders.getETag();
+        }
+
+        boolean matches(ServerHttpRequest request) {
+            List<String> ifNoneMatch = request.getHeaders().getIfNoneMatch();
+            return etag != null && (ifNoneMatch.contains(etag) || ifNoneMatch.contains("*"));
+        }
+    }
+}
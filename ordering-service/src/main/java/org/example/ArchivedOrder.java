@@ -0,0 +1,46 @@
+package org.example;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// A terminal order moved out of vaccine_orders by OrderArchiveJob (see V8); history is read-only
+@Entity
+@Immutable
+@Table(name = "vaccine_orders_archive")
+public class ArchivedOrder {
+
+    @Id
+    private Long id;
+
+    private String region;
+    private int vaccineQuantity;
+    private int fulfilledQuantity;
+    private OrderStatus status;
+    private LocalDate expectedDeliveryTime;
+    private long version;
+    private LocalDateTime archivedAt;
+
+    public Long getId() { return id; }
+    public String getRegion() { return region; }
+    public int getVaccineQuantity() { return vaccineQuantity; }
+    public int getFulfilledQuantity() { return fulfilledQuantity; }
+    public OrderStatus getStatus() { return status; }
+    public LocalDate getExpectedDeliveryTime() { return expectedDeliveryTime; }
+    public long getVersion() { return version; }
+    public LocalDateTime getArchivedAt() { return archivedAt; }
+
+    // Same shape as a live order in the API
+    public Order toOrder() {
+        Order order = new Order();
+        order.setId(id);
+        order.setRegion(region);
+        order.setVaccineQuantity(vaccineQuantity);
+        order.setFulfilledQuantity(fulfilledQuantity);
+        order.setStatus(status);
+        order.setExpectedDeliveryTime(expectedDeliveryTime);
+        order.setVersion(version);
+        return order;
+    }
+}
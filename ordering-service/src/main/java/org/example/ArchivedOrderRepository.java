@@ -0,0 +1,49 @@
+package org.example;
+
+import java.util.List;
+import java.util.stream.Stream;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import java.time.LocalDate;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+
+public interface ArchivedOrderRepository extends JpaRepository<ArchivedOrder, Long> {
+    // Served by idx_vaccine_orders_archive_region_key
+    @Query("SELECT o FROM ArchivedOrder o WHERE lower(o.region) = lower(:region)")
+    List<ArchivedOrder> findByRegionKey(@Param("region") String region);
+
+    // Keyset pages on (expectedDeliveryTime, id) like OrderRepository's, served by
+    // idx_vaccine_orders_archive_keyset; the limit comes from the Pageable
+    @Query("SELECT o FROM ArchivedOrder o ORDER BY o.expectedDeliveryTime, o.id")
+    List<ArchivedOrder> findFirstPage(Pageable limit);
+
+    @Query("SELECT o FROM ArchivedOrder o WHERE o.expectedDeliveryTime > :afterDate"
+            + " OR (o.expectedDeliveryTime = :afterDate AND o.id > :afterId)"
+            + " ORDER BY o.expectedDeliveryTime, o.id")
+    List<ArchivedOrder> findPageAfter(@Param("afterDate") LocalDate afterDate, @Param("afterId") Long afterId,
+                                      Pageable limit);
+
+    @Query("SELECT o FROM ArchivedOrder o WHERE o.status IN :statuses ORDER BY o.expectedDeliveryTime, o.id")
+    List<ArchivedOrder> findFirstPageByStatusIn(@Param("statuses") List<OrderStatus> statuses, Pageable limit);
+
+    @Query("SELECT o FROM ArchivedOrder o WHERE o.status IN :statuses AND (o.expectedDeliveryTime > :afterDate"
+            + " OR (o.expectedDeliveryTime = :afterDate AND o.id > :afterId))"
+            + " ORDER BY o.expectedDeliveryTime, o.id")
+    List<ArchivedOrder> findPageByStatusInAfter(@Param("statuses") List<OrderStatus> statuses,
+                                                @Param("afterDate") LocalDate afterDate, @Param("afterId") Long afterId,
+                                                Pageable limit);
+
+    @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READ_ONLY, value = "true") })
+    @Query("SELECT o FROM ArchivedOrder o ORDER BY o.expectedDeliveryTime, o.vaccineQuantity, o.id")
+    Stream<ArchivedOrder> streamAll();
+
+    @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READ_ONLY, value = "true") })
+    @Query("SELECT o FROM ArchivedOrder o WHERE o.status IN :statuses ORDER BY o.expectedDeliveryTime, o.vaccineQuantity, o.id")
+    Stream<ArchivedOrder> streamByStatusIn(@Param("statuses") List<OrderStatus> statuses);
+}
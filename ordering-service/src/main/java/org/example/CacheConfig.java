@@ -0,0 +1,33 @@
+package org.example;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import java.util.List;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String ORDERS = "orders";
+    public static final String ORDERS_BY_REGION = "ordersByRegion";
+
+    // Caffeine locally; callers only see the Spring cache annotations, so another CacheManager
+    // (Redis, Hazelcast, ...) can replace this bean without touching them
+    @Bean
+    public CacheManager cacheManager(@Value("${cache.caffeine.spec:maximumSize=10000,expireAfterWrite=60s,recordStats}") String spec) {
+        CaffeineCacheManager caffeineCacheManager = new CaffeineCacheManager();
+        caffeineCacheManager.setCaffeine(Caffeine.from(spec));
+        caffeineCacheManager.setCacheNames(List.of(ORDERS, ORDERS_BY_REGION));
+        caffeineCacheManager.setAllowNullValues(false);
+
+        // Evictions inside a transaction wait for the commit, so a concurrent read cannot put the
+        // old row back in between
+        return new TransactionAwareCacheManagerProxy(caffeineCacheManager);
+    }
+}
@@ -0,0 +1,136 @@
+package org.example;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Server-sent change events for dashboards (GET /api/orders/events), so they stop re-fetching
+// whole lists. Events go out after commit and the last events.replay-size of them are kept, so
+// a client reconnecting with Last-Event-ID gets what it missed; if that is no longer kept it gets
+// a "reset" and reloads. Each client has a bounded queue of its own: one that does not keep up
+// is disconnected and resumes from its last id, without slowing down the others. An idle client
+// is one socket and a queue; no thread waits on it.
+@Component
+public class ChangeEventStream {
+
+    public static final String RESET = "reset";
+
+    @Value("${events.replay-size:10000}")
+    private int replaySize;
+
+    @Value("${events.client-buffer:256}")
+    private int clientBuffer;
+
+    @Value("${events.heartbeat-seconds:25}")
+    private long heartbeatSeconds;
+
+    private final Deque<ServerSentEvent<Object>> replay = new ArrayDeque<>();
+    private final Set<Sinks.Many<ServerSentEvent<Object>>> clients = ConcurrentHashMap.newKeySet();
+
+    // Starts at the boot time, so an id from before a restart reads as too old instead of ahead
+    private long lastId = System.currentTimeMillis() * 1000;
+
+    // One timer for all clients; keeps proxies from closing idle streams and finds dead clients
+    private Flux<ServerSentEvent<Object>> heartbeat;
+
+    @PostConstruct
+    void startHeartbeat() {
+        heartbeat = Flux.interval(Duration.ofSeconds(heartbeatSeconds))
+                .map(tick -> ServerSentEvent.<Object>builder().comment("heartbeat").build())
+                .share();
+    }
+
+    // Inside a transaction the event waits for the commit, and is dropped on rollback
+    public void publish(String event, Object data) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    send(event, data);
+                }
+            });
+        } else {
+            send(event, data);
+        }
+    }
+
+    public synchronized Flux<ServerSentEvent<Object>> subscribe(String lastEventId) {
+        List<ServerSentEvent<Object>> missed = missedSince(lastEventId);
+        Sinks.Many<ServerSentEvent<Object>> client = Sinks.many().unicast()
+                .onBackpressureBuffer(new ArrayBlockingQueue<>(missed.size() + clientBuffer));
+        missed.forEach(client::tryEmitNext);
+        // Registered under the same lock as send(), so nothing falls between replay and live events
+        clients.add(client);
+        return Flux.merge(client.asFlux(), heartbeat)
+                .doFinally(signal -> clients.remove(client));
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    private synchronized void send(String event, Object data) {
+        ServerSentEvent<Object> sse = ServerSentEvent.builder(data)
+                .id(String.valueOf(++lastId))
+                .event(event)
+                .build();
+        replay.addLast(sse);
+        if (replay.size() > replaySize) {
+            replay.removeFirst();
+        }
+        for (Sinks.Many<ServerSentEvent<Object>> client : clients) {
+            if (client.tryEmitNext(sse).isFailure()) {
+                // Queue full: drop the client, it reconnects with its last id
+                clients.remove(client);
+                client.tryEmitError(new IllegalStateException("Client too slow, resume with Last-Event-ID"));
+            }
+        }
+    }
+
+    // Caller holds the lock
+    private List<ServerSentEvent<Object>> missedSince(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return List.of();
+        }
+        long since;
+        try {
+            since = Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return List.of(reset());
+        }
+        long oldestKept = replay.isEmpty() ? lastId + 1 : Long.parseLong(replay.peekFirst().id());
+        if (since > lastId || since < oldestKept - 1) {
+            return List.of(reset());
+        }
+
+        List<ServerSentEvent<Object>> missed = new ArrayList<>();
+        for (ServerSentEvent<Object> sse : replay) {
+            if (Long.parseLong(sse.id()) > since) {
+                missed.add(sse);
+            }
+        }
+        return missed;
+    }
+
+    // Carries the current id, so the client resumes from here once it has reloaded
+    private ServerSentEvent<Object> reset() {
+        return ServerSentEvent.<Object>builder(Map.of())
+                .id(String.valueOf(lastId))
+                .event(RESET)
+                .build();
+    }
+}
@@ -0,0 +1,54 @@
+package org.example;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Coalesces fulfillment triggers: every request inside one window ends up in a single outbox
+// relay pass, so producer-service gets the new orders as one batch of events. Runs on the
+// scheduler thread instead of the caller's.
+@Component
+public class FulfillmentTrigger {
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Value("${fulfillment.trigger.window-ms:500}")
+    private long windowMs;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    public void request() {
+        // Inside a transaction wait for the commit, otherwise the run may not see the new rows
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    schedule();
+                }
+            });
+        } else {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            taskScheduler.schedule(this::fire, Instant.now().plusMillis(windowMs));
+        }
+    }
+
+    private void fire() {
+        // Anything requested from here on needs a run of its own
+        scheduled.set(false);
+        outboxRelay.relay();
+    }
+}
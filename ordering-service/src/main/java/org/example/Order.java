@@ -11,27 +11,34 @@ import lombok.Setter;
 @Setter
 public class Order {
 
+    // Sequence ids, handed out 50 at a time, so Hibernate can batch the inserts (see V6)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "vaccine_orders_seq")
+    @SequenceGenerator(name = "vaccine_orders_seq", sequenceName = "vaccine_orders_id_seq", allocationSize = 50)
     private Long id;
 
     private String region;
     private int vaccineQuantity;
     private int fulfilledQuantity;
-    private String status;
+    private OrderStatus status;
     private LocalDate expectedDeliveryTime;
 
+    @Version
+    private long version;
+
     // Getters
     public String getRegion() { return region; }
     public int getVaccineQuantity() { return vaccineQuantity; }
     public int getFulfilledQuantity() { return fulfilledQuantity; }
-    public String getStatus() { return status; }
+    public OrderStatus getStatus() { return status; }
     public LocalDate getExpectedDeliveryTime() { return expectedDeliveryTime; }
+    public long getVersion() { return version; }
 
     // Setters
     public void setRegion(String region) { this.region = region; }
     public void setVaccineQuantity(int vaccineQuantity) { this.vaccineQuantity = vaccineQuantity; }
     public void setFulfilledQuantity(int fulfilledQuantity) { this.fulfilledQuantity = fulfilledQuantity; }
-    public void setStatus(String status) { this.status = status; }
+    public void setStatus(OrderStatus status) { this.status = status; }
     public void setExpectedDeliveryTime(LocalDate expectedDeliveryTime) { this.expectedDeliveryTime = expectedDeliveryTime; }
+    public void setVersion(long version) { this.version = version; }
 }
\ No newline at end of file
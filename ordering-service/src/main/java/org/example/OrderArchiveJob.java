@@ -0,0 +1,92 @@
+package org.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Moves Fulfilled, Cancelled and Expired orders whose delivery date is more than
+// order-archive.retention-days old from vaccine_orders to vaccine_orders_archive, a chunk at a
+// time, creating the archive's month partitions on the way. Keeps the hot table and its indexes
+// the size of the open orders plus the retention window.
+@Component
+public class OrderArchiveJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderArchiveJob.class);
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${order-archive.retention-days:90}")
+    private int retentionDays;
+
+    @Value("${order-archive.batch-size:5000}")
+    private int batchSize;
+
+    // Upper bound per run, like order-expiry.max-batches-per-run
+    @Value("${order-archive.max-batches-per-run:200}")
+    private int maxBatchesPerRun;
+
+    // Partitions this instance has created or found already
+    private final Set<YearMonth> partitions = ConcurrentHashMap.newKeySet();
+
+    @Scheduled(fixedDelayString = "${order-archive.interval-ms:3600000}")
+    public void archiveTerminalOrders() {
+        LocalDate before = LocalDate.now().minusDays(retentionDays);
+        Counter archivedCounter = Counter.builder("orders.archived")
+            .description("Orders moved to vaccine_orders_archive by the archive job")
+            .register(meterRegistry);
+
+        try {
+            LocalDate earliest = orderService.findEarliestArchivable(before);
+            if (earliest == null) {
+                return;
+            }
+            createPartitions(YearMonth.from(earliest), YearMonth.from(before));
+
+            int archived = 0;
+            for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+                int moved = orderService.archiveChunk(before, batchSize);
+                archived += moved;
+                archivedCounter.increment(moved);
+                if (moved < batchSize) {
+                    break;
+                }
+            }
+            if (archived > 0) {
+                logger.info("order.archive before={} archived={}", before, archived);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to archive terminal orders, will retry", e);
+        }
+    }
+
+    private void createPartitions(YearMonth from, YearMonth to) {
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            if (partitions.contains(month)) {
+                continue;
+            }
+            // Names and bounds come from the YearMonth, never from input
+            jdbcTemplate.execute(String.format(
+                "CREATE TABLE IF NOT EXISTS vaccine_orders_archive_y%dm%02d PARTITION OF vaccine_orders_archive"
+                    + " FOR VALUES FROM ('%s') TO ('%s')",
+                month.getYear(), month.getMonthValue(), month.atDay(1), month.plusMonths(1).atDay(1)));
+            partitions.add(month);
+        }
+    }
+}
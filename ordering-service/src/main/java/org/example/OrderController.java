@@ -1,44 +1,159 @@
 package org.example;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 import java.time.LocalDate;
 
 @RestController
 @RequestMapping("/api/orders")
 public class OrderController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private OrderImportService orderImportService;
+
+    @Autowired
+    private ChangeEventStream changeEventStream;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private WireFormatConfig wireFormatConfig;
+
     @PostMapping
     public ResponseEntity<Order> createOrder(@RequestBody Order order) {
         Order createdOrder = orderService.createOrder(order);
         return new ResponseEntity<>(createdOrder, HttpStatus.CREATED);
     }
 
+    // Bulk intake: a JSON array, NDJSON, or CSV with a header row, read as it arrives.
+    // Rows that fail validation are listed in the result, the rest are stored.
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, NDJSON, OrderImportService.CSV})
+    public ResponseEntity<OrderImportResult> importOrders(
+            InputStream body, @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType) throws IOException {
+        return ResponseEntity.ok(orderImportService.importOrders(body, MediaType.parseMediaType(contentType)));
+    }
+
+    // Live order changes as server-sent events; browsers resume with Last-Event-ID on their own
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamEvents(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return changeEventStream.subscribe(lastEventId);
+    }
+
+    // includeHistory adds the orders OrderArchiveJob has moved to the archive. History can be far
+    // bigger than the live table, so that array is written from the database cursors as they are
+    // read, like /stream, instead of loaded first.
     @GetMapping
-    public List<Order> getAllOrders() {
-        return orderService.findAllOrders();
+    public ResponseEntity<?> getAllOrders(@RequestParam(defaultValue = "false") boolean includeHistory) {
+        if (!includeHistory) {
+            return ResponseEntity.ok(orderService.findAllOrders());
+        }
+        StreamingResponseBody body = out -> {
+            try (SequenceWriter writer = objectMapper.writerFor(Order.class).writeValuesAsArray(out)) {
+                orderService.streamOrders(null, true, order -> writeValue(writer, order));
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    @GetMapping("/page")
+    public ResponseEntity<OrderPage> getOrderPage(
+            @RequestParam(required = false) List<OrderStatus> status,
+            @RequestParam(defaultValue = "false") boolean includeHistory,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(orderService.getOrderPage(status, includeHistory, cursor, limit));
+    }
+
+    // Newline-delimited JSON (or Smile values when asked for), written row by row while the
+    // database cursor is read
+    @GetMapping(value = "/stream", produces = {NDJSON, WireFormatConfig.SMILE})
+    public ResponseEntity<StreamingResponseBody> streamOrders(
+            @RequestParam(required = false) List<OrderStatus> status,
+            @RequestParam(defaultValue = "false") boolean includeHistory,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return orderStream(accept, consumer -> orderService.streamOrders(status, includeHistory, consumer));
+    }
+
+    // What the allocator can consume: Priority then Pending, sorted and filtered in SQL; without a
+    // limit, as many as allocation-queue.max-limit allows
+    @GetMapping(value = "/allocation-queue", produces = {NDJSON, WireFormatConfig.SMILE})
+    public ResponseEntity<StreamingResponseBody> streamAllocationQueue(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
+            @RequestParam(defaultValue = "2147483647") int maxQuantity,
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        LocalDate from = fromDate != null ? fromDate : LocalDate.EPOCH;
+        return orderStream(accept, consumer -> orderService.streamAllocationQueue(from, maxQuantity, limit, consumer));
+    }
+
+    // The same for the given order ids, read fresh; orders that are no longer open are left out
+    @PostMapping(value = "/allocation-queue", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = {NDJSON, WireFormatConfig.SMILE})
+    public ResponseEntity<StreamingResponseBody> streamAllocationQueue(
+            @RequestBody List<Long> ids,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return orderStream(accept, consumer -> orderService.streamAllocationQueue(ids, consumer));
+    }
+
+    // Dry run of the expiry job: the orders it would mark EXPIRED on the given day (default today)
+    @GetMapping("/expiry-preview")
+    public List<Order> previewExpiry(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate today) {
+        return orderService.previewExpiry(today != null ? today : LocalDate.now());
+    }
+
+    // Ordered, pending, fulfilled, expired and cancelled quantities per region, optionally per week
+    @GetMapping("/regions/summary")
+    public List<RegionSummary> getRegionSummaries(
+            @RequestParam(required = false) String region,
+            @RequestParam(defaultValue = "false") boolean weekly,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return orderService.getRegionSummaries(region, weekly, from, to);
     }
 
     @GetMapping("/region/{region}")
-    public ResponseEntity<List<Order>> getOrdersByRegion(@PathVariable String region) {
-        List<Order> orders = orderService.getOrdersByRegion(region);
+    public ResponseEntity<List<Order>> getOrdersByRegion(
+            @PathVariable String region,
+            @RequestParam(defaultValue = "false") boolean includeHistory) {
+        List<Order> orders = orderService.getOrdersByRegion(region, includeHistory);
         return ResponseEntity.ok(orders);
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Order> getOrder(@PathVariable Long id) {
-        Order order = orderService.getOrder(id);
+    public ResponseEntity<Order> getOrder(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "false") boolean includeHistory) {
+        Order order = orderService.getOrder(id, includeHistory);
         return ResponseEntity.ok(order);
     }
 
     @PatchMapping("/{id}/status")
-    public ResponseEntity<Order> updateStatus(@PathVariable Long id, @RequestParam String newStatus) {
+    public ResponseEntity<Order> updateStatus(@PathVariable Long id, @RequestParam OrderStatus newStatus) {
         Order updatedOrder = orderService.updateOrderStatus(id, newStatus);
         return ResponseEntity.ok(updatedOrder);
     }
@@ -51,6 +166,18 @@ public class OrderController {
         return ResponseEntity.ok(0);
     }
 
+    // Answers with the ids it turned down, orders no longer open
+    @PostMapping("/fulfill")
+    public ResponseEntity<List<Long>> fulfillOrders(@RequestBody List<Long> ids) {
+        return ResponseEntity.ok(orderService.fulfillOrders(ids));
+    }
+
+    // Order id to the fulfilled quantity a partial allocation reached; answers like /fulfill
+    @PostMapping("/fulfill-partial")
+    public ResponseEntity<List<Long>> fulfillOrdersPartially(@RequestBody Map<Long, Integer> targets) {
+        return ResponseEntity.ok(orderService.fulfillPartially(targets));
+    }
+
     @GetMapping("/pending")
     public List<Order> getPendingOrders() {
         return orderService.getPendingOrders();
@@ -61,5 +188,33 @@ public class OrderController {
         return orderService.getPriorityOrders();
     }
 
+    private ResponseEntity<StreamingResponseBody> orderStream(String accept, Consumer<Consumer<Order>> source) {
+        if (WireFormatConfig.prefersSmile(accept)) {
+            StreamingResponseBody body = out -> {
+                try (SequenceWriter writer = wireFormatConfig.smileWriter(out, Order.class)) {
+                    source.accept(order -> writeValue(writer, order));
+                }
+            };
+            return ResponseEntity.ok().contentType(MediaType.parseMediaType(WireFormatConfig.SMILE)).body(body);
+        }
+        StreamingResponseBody body = out -> source.accept(order -> writeLine(out, order));
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    private static void writeValue(SequenceWriter writer, Order order) {
+        try {
+            writer.write(order);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
+    private void writeLine(OutputStream out, Order order) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(order));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+package org.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import java.time.LocalDate;
+
+// Marks Pending and Priority orders past their delivery date as EXPIRED, straight in the
+// database and a chunk at a time, instead of producer-service pulling every order over HTTP
+@Component
+public class OrderExpiryJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderExpiryJob.class);
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${order-expiry.batch-size:1000}")
+    private int batchSize;
+
+    // Upper bound per run, so one run never holds the scheduler for long; the rest waits for the next run
+    @Value("${order-expiry.max-batches-per-run:100}")
+    private int maxBatchesPerRun;
+
+    @Scheduled(fixedDelayString = "${order-expiry.interval-ms:600000}")
+    public void expireOverdueOrders() {
+        LocalDate today = LocalDate.now();
+        Counter expiredCounter = Counter.builder("orders.expired")
+            .description("Orders moved to EXPIRED by the expiry job")
+            .register(meterRegistry);
+
+        try {
+            int expired = 0;
+            for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+                int updated = orderService.expireOverdueChunk(today, batchSize);
+                expired += updated;
+                expiredCounter.increment(updated);
+                if (updated < batchSize) {
+                    break;
+                }
+            }
+            if (expired > 0) {
+                logger.info("order.expiry today={} expired={}", today, expired);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to expire overdue orders, will retry", e);
+        }
+    }
+}
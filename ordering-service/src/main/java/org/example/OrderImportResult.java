@@ -0,0 +1,49 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class OrderImportResult {
+
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private int received;
+    private int inserted;
+    private int rejected;
+    private List<RowError> errors = new ArrayList<>();
+
+    public void received() {
+        received++;
+    }
+
+    public void inserted(int count) {
+        inserted += count;
+    }
+
+    // Rows are numbered from 1 in the order they were read; a CSV header is not a row.
+    // Only the first errors are listed, the count covers all of them.
+    public void reject(int row, String message) {
+        rejected++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new RowError(row, message));
+        }
+    }
+
+    public int getReceived() { return received; }
+    public int getInserted() { return inserted; }
+    public int getRejected() { return rejected; }
+    public List<RowError> getErrors() { return errors; }
+
+    public static class RowError {
+        private final int row;
+        private final String message;
+
+        public RowError(int row, String message) {
+            this.row = row;
+            this.message = message;
+        }
+
+        public int getRow() { return row; }
+        public String getMessage() { return message; }
+    }
+}
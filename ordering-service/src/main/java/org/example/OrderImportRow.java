@@ -0,0 +1,19 @@
+package org.example;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+// One row of POST /api/orders/batch. Everything is read as text and checked by
+// OrderImportService, so a bad value rejects its row instead of the whole payload.
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class OrderImportRow {
+    private String region;
+    private String vaccineQuantity;
+    private String expectedDeliveryTime;
+
+    public String getRegion() { return region; }
+    public void setRegion(String region) { this.region = region; }
+    public String getVaccineQuantity() { return vaccineQuantity; }
+    public void setVaccineQuantity(String vaccineQuantity) { this.vaccineQuantity = vaccineQuantity; }
+    public String getExpectedDeliveryTime() { return expectedDeliveryTime; }
+    public void setExpectedDeliveryTime(String expectedDeliveryTime) { this.expectedDeliveryTime = expectedDeliveryTime; }
+}
@@ -0,0 +1,218 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Bulk intake behind POST /api/orders/batch. Rows are read one by one from the request body,
+// checked, and inserted in chunks of order-import.chunk-size, one transaction and one JDBC batch
+// per chunk. Bad rows are reported by row number and skipped. Each chunk writes one
+// OrdersImported event in its own transaction, so producer-service hears about exactly the
+// chunks that were stored, without one event per order.
+@Service
+public class OrderImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderImportService.class);
+
+    public static final String CSV = "text/csv";
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private FulfillmentTrigger fulfillmentTrigger;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ChangeEventStream changeEventStream;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${order-import.chunk-size:1000}")
+    private int chunkSize;
+
+    private final CsvMapper csvMapper = new CsvMapper()
+            .enable(CsvParser.Feature.TRIM_SPACES)
+            .enable(CsvParser.Feature.SKIP_EMPTY_LINES);
+
+    @CacheEvict(cacheNames = CacheConfig.ORDERS_BY_REGION, allEntries = true)
+    public OrderImportResult importOrders(InputStream body, MediaType contentType) throws IOException {
+        long started = System.nanoTime();
+        OrderImportResult result = new OrderImportResult();
+        List<Order> chunk = new ArrayList<>(chunkSize);
+        List<Integer> chunkRows = new ArrayList<>(chunkSize);
+
+        try (MappingIterator<OrderImportRow> rows = reader(contentType).readValues(body)) {
+            int rowNumber = 0;
+            while (true) {
+                OrderImportRow row;
+                try {
+                    if (!rows.hasNextValue()) {
+                        break;
+                    }
+                    row = rows.nextValue();
+                } catch (JsonProcessingException e) {
+                    // There is no telling where the next row starts, so the rest is not read
+                    result.reject(rowNumber + 1, "Malformed input: " + e.getOriginalMessage());
+                    break;
+                }
+                rowNumber++;
+                result.received();
+
+                Order order;
+                try {
+                    order = toOrder(row);
+                } catch (IllegalArgumentException e) {
+                    result.reject(rowNumber, e.getMessage());
+                    continue;
+                }
+                chunk.add(order);
+                chunkRows.add(rowNumber);
+
+                if (chunk.size() == chunkSize) {
+                    insertChunk(chunk, chunkRows, result);
+                }
+            }
+        }
+        insertChunk(chunk, chunkRows, result);
+
+        if (result.getInserted() > 0) {
+            changeEventStream.publish(OrderService.ORDERS_CHANGED_EVENT,
+                    Map.of("reason", "import", "orders", result.getInserted()));
+        }
+
+        logger.info("Imported {} of {} orders ({} rejected) in {} ms", result.getInserted(), result.getReceived(),
+                result.getRejected(), (System.nanoTime() - started) / 1_000_000);
+        return result;
+    }
+
+    // A JSON array is read element by element, NDJSON value by value, CSV line by line
+    // against its header row
+    private ObjectReader reader(MediaType contentType) {
+        if (contentType != null && contentType.isCompatibleWith(MediaType.parseMediaType(CSV))) {
+            return csvMapper.readerFor(OrderImportRow.class).with(CsvSchema.emptySchema().withHeader());
+        }
+        return objectMapper.readerFor(OrderImportRow.class);
+    }
+
+    // Same rules as OrderService.createOrder
+    private Order toOrder(OrderImportRow row) {
+        if (row.getRegion() == null || row.getRegion().trim().isEmpty()) {
+            throw new IllegalArgumentException("Region cannot be empty");
+        }
+
+        int vaccineQuantity;
+        try {
+            vaccineQuantity = Integer.parseInt(String.valueOf(row.getVaccineQuantity()).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Vaccine Quantity must be a whole number");
+        }
+        if (vaccineQuantity <= 0) {
+            throw new IllegalArgumentException("Vaccine Quantity must be greater than 0");
+        }
+
+        if (row.getExpectedDeliveryTime() == null || row.getExpectedDeliveryTime().isBlank()) {
+            throw new IllegalArgumentException("Expected Delivery Time cannot be null");
+        }
+        LocalDate expectedDeliveryTime;
+        try {
+            expectedDeliveryTime = LocalDate.parse(row.getExpectedDeliveryTime().trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid Expected Delivery Time format. Use YYYY-MM-DD.");
+        }
+
+        Order order = new Order();
+        order.setRegion(row.getRegion());
+        order.setVaccineQuantity(vaccineQuantity);
+        order.setExpectedDeliveryTime(expectedDeliveryTime);
+        order.setStatus(OrderStatus.PENDING);
+        order.setFulfilledQuantity(0);
+        return order;
+    }
+
+    // A chunk the database refuses is rolled back, its event with it, and reported row by row;
+    // earlier chunks stay
+    private void insertChunk(List<Order> chunk, List<Integer> chunkRows, OrderImportResult result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                orderRepository.saveAll(chunk);
+                // Sends the chunk as one batch, and keeps the request's persistence context from
+                // holding every imported order
+                entityManager.flush();
+                orderRepository.addToRollups(chunk.stream().map(Order::getId).toList());
+                announce(chunk);
+                entityManager.clear();
+            });
+            result.inserted(chunk.size());
+        } catch (DataAccessException e) {
+            logger.warn("Could not store rows {}-{} of an order import", chunkRows.get(0),
+                    chunkRows.get(chunkRows.size() - 1), e);
+            for (int row : chunkRows) {
+                result.reject(row, "Not stored: " + e.getMostSpecificCause().getMessage());
+            }
+        }
+        chunk.clear();
+        chunkRows.clear();
+    }
+
+    // One event per chunk, in the chunk's transaction; producer-service reads the orders from its
+    // queue, and events relayed together make a single pass from the earliest of their dates
+    private void announce(List<Order> chunk) {
+        LocalDate fromDate = chunk.stream()
+                .map(Order::getExpectedDeliveryTime)
+                .min(LocalDate::compareTo)
+                .orElseThrow();
+        OutboxEvent event = new OutboxEvent();
+        event.setEventType(OutboxEvent.ORDERS_IMPORTED);
+        event.setAggregateId(chunk.get(0).getId());
+        event.setPayload(toJson(new OrdersImported(fromDate, chunk.size())));
+        event.setCreatedAt(LocalDateTime.now());
+        outboxEventRepository.save(event);
+
+        // Coalesced, so a big import still makes one relay pass per window
+        fulfillmentTrigger.request();
+    }
+
+    private String toJson(OrdersImported payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize import of " + payload.getOrders() + " orders", e);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package org.example;
+
+import java.util.List;
+
+public class OrderPage {
+    private List<Order> orders;
+    private String nextCursor;
+
+    public OrderPage(List<Order> orders, String nextCursor) {
+        this.orders = orders;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Order> getOrders() { return orders; }
+    public void setOrders(List<Order> orders) { this.orders = orders; }
+
+    // "<expectedDeliveryTime>,<id>" of the last order, null on the last page
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
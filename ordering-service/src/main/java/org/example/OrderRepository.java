@@ -1,12 +1,216 @@
 package org.example;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDate;
 
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+
 
 public interface OrderRepository extends JpaRepository<Order, Long> {
-    List<Order> findByRegionIgnoreCase(String region);
-    List<Order> findByStatusInAndExpectedDeliveryTimeBeforeOrderByExpectedDeliveryTimeAsc(List<String> statuses, LocalDate beforeDate);
-    List<Order> findByStatusIn(List<String> statuses);
+    // Served by idx_vaccine_orders_region_key
+    @Query("SELECT o FROM Order o WHERE lower(o.region) = lower(:region)")
+    List<Order> findByRegionKey(@Param("region") String region);
+
+    List<Order> findByStatusInAndExpectedDeliveryTimeBeforeOrderByExpectedDeliveryTimeAsc(List<OrderStatus> statuses, LocalDate beforeDate);
+    List<Order> findByStatusIn(List<OrderStatus> statuses);
+
+    // Keyset pages on (expectedDeliveryTime, id); the limit comes from the Pageable
+    @Query("SELECT o FROM Order o ORDER BY o.expectedDeliveryTime, o.id")
+    List<Order> findFirstPage(Pageable limit);
+
+    @Query("SELECT o FROM Order o WHERE o.expectedDeliveryTime > :afterDate"
+            + " OR (o.expectedDeliveryTime = :afterDate AND o.id > :afterId)"
+            + " ORDER BY o.expectedDeliveryTime, o.id")
+    List<Order> findPageAfter(@Param("afterDate") LocalDate afterDate, @Param("afterId") Long afterId, Pageable limit);
+
+    @Query("SELECT o FROM Order o WHERE o.status IN :statuses ORDER BY o.expectedDeliveryTime, o.id")
+    List<Order> findFirstPageByStatusIn(@Param("statuses") List<OrderStatus> statuses, Pageable limit);
+
+    @Query("SELECT o FROM Order o WHERE o.status IN :statuses AND (o.expectedDeliveryTime > :afterDate"
+            + " OR (o.expectedDeliveryTime = :afterDate AND o.id > :afterId))"
+            + " ORDER BY o.expectedDeliveryTime, o.id")
+    List<Order> findPageByStatusInAfter(@Param("statuses") List<OrderStatus> statuses, @Param("afterDate") LocalDate afterDate,
+                                        @Param("afterId") Long afterId, Pageable limit);
+
+    // Streamed in the allocator's order, fetched from the cursor in chunks
+    @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READ_ONLY, value = "true") })
+    @Query("SELECT o FROM Order o ORDER BY o.expectedDeliveryTime, o.vaccineQuantity, o.id")
+    Stream<Order> streamAll();
+
+    @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READ_ONLY, value = "true") })
+    @Query("SELECT o FROM Order o WHERE o.status IN :statuses ORDER BY o.expectedDeliveryTime, o.vaccineQuantity, o.id")
+    Stream<Order> streamByStatusIn(@Param("statuses") List<OrderStatus> statuses);
+
+    // Served by idx_vaccine_orders_allocation_queue: one index range scan per status, already sorted
+    @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READ_ONLY, value = "true") })
+    @Query("SELECT o FROM Order o WHERE o.status = :status AND o.expectedDeliveryTime >= :fromDate"
+            + " AND o.vaccineQuantity - o.fulfilledQuantity <= :maxQuantity"
+            + " ORDER BY o.expectedDeliveryTime, o.vaccineQuantity, o.id")
+    Stream<Order> streamAllocationQueue(@Param("status") OrderStatus status, @Param("fromDate") LocalDate fromDate,
+                                        @Param("maxQuantity") int maxQuantity, Limit limit);
+
+    // The same order, for the given orders only
+    @QueryHints(@QueryHint(name = HINT_READ_ONLY, value = "true"))
+    @Query("SELECT o FROM Order o WHERE o.status = :status AND o.id IN :ids"
+            + " ORDER BY o.expectedDeliveryTime, o.vaccineQuantity, o.id")
+    List<Order> findAllocationQueueByIdIn(@Param("status") OrderStatus status, @Param("ids") List<Long> ids);
+
+    // Which of the given orders are in one of the statuses
+    @Query("SELECT o.id FROM Order o WHERE o.id IN :ids AND o.status IN :statuses")
+    List<Long> findIdsByIdInAndStatusIn(@Param("ids") List<Long> ids, @Param("statuses") List<OrderStatus> statuses);
+
+    // Appended to a CTE named "changed" (region, expected_delivery_time, vaccine_quantity,
+    // old_status, new_status, old_fulfilled, new_fulfilled; the old columns are NULL for new
+    // orders): moves the quantities between the columns of region_rollups and
+    // region_week_rollups in the same statement, and returns the number of orders changed.
+    // Codes as in OrderStatus: 0 and 1 are pending, 2 fulfilled, 4 expired. Pending and expired
+    // count what is still undelivered, delivered what fulfilled_quantity says whatever the
+    // status (see V10). Rollup rows are upserted in key order so concurrent writers cannot
+    // deadlock on them.
+    String UPDATE_ROLLUPS = ", deltas AS (SELECT lower(region) AS region_key, region,"
+            + " CAST(date_trunc('week', expected_delivery_time) AS date) AS week_start,"
+            + " CASE WHEN old_status IS NULL THEN 1 ELSE 0 END AS orders,"
+            + " CASE WHEN old_status IS NULL THEN vaccine_quantity ELSE 0 END AS ordered,"
+            + " CASE WHEN new_status IN (0, 1) THEN vaccine_quantity - new_fulfilled ELSE 0 END"
+            + " - CASE WHEN old_status IN (0, 1) THEN vaccine_quantity - old_fulfilled ELSE 0 END AS pending,"
+            + " CASE WHEN new_status = 2 THEN vaccine_quantity ELSE 0 END"
+            + " - CASE WHEN old_status = 2 THEN vaccine_quantity ELSE 0 END AS fulfilled,"
+            + " CASE WHEN new_status = 4 THEN vaccine_quantity - new_fulfilled ELSE 0 END"
+            + " - CASE WHEN old_status = 4 THEN vaccine_quantity - old_fulfilled ELSE 0 END AS expired,"
+            + " new_fulfilled - coalesce(old_fulfilled, 0) AS delivered"
+            + " FROM changed),"
+            + " by_region AS (INSERT INTO region_rollups AS r (region_key, region, orders, ordered_quantity,"
+            + " pending_quantity, fulfilled_quantity, expired_quantity, delivered_quantity)"
+            + " SELECT region_key, min(region), sum(orders), sum(ordered), sum(pending), sum(fulfilled), sum(expired),"
+            + " sum(delivered) FROM deltas GROUP BY region_key ORDER BY region_key"
+            + " ON CONFLICT (region_key) DO UPDATE SET orders = r.orders + EXCLUDED.orders,"
+            + " ordered_quantity = r.ordered_quantity + EXCLUDED.ordered_quantity,"
+            + " pending_quantity = r.pending_quantity + EXCLUDED.pending_quantity,"
+            + " fulfilled_quantity = r.fulfilled_quantity + EXCLUDED.fulfilled_quantity,"
+            + " expired_quantity = r.expired_quantity + EXCLUDED.expired_quantity,"
+            + " delivered_quantity = r.delivered_quantity + EXCLUDED.delivered_quantity),"
+            + " by_week AS (INSERT INTO region_week_rollups AS w (region_key, week_start, orders, ordered_quantity,"
+            + " pending_quantity, fulfilled_quantity, expired_quantity, delivered_quantity)"
+            + " SELECT region_key, week_start, sum(orders), sum(ordered), sum(pending), sum(fulfilled), sum(expired),"
+            + " sum(delivered) FROM deltas GROUP BY region_key, week_start ORDER BY region_key, week_start"
+            + " ON CONFLICT (region_key, week_start) DO UPDATE SET orders = w.orders + EXCLUDED.orders,"
+            + " ordered_quantity = w.ordered_quantity + EXCLUDED.ordered_quantity,"
+            + " pending_quantity = w.pending_quantity + EXCLUDED.pending_quantity,"
+            + " fulfilled_quantity = w.fulfilled_quantity + EXCLUDED.fulfilled_quantity,"
+            + " expired_quantity = w.expired_quantity + EXCLUDED.expired_quantity,"
+            + " delivered_quantity = w.delivered_quantity + EXCLUDED.delivered_quantity)"
+            + " SELECT count(*) FROM changed";
+
+    // The statements below change rows and return a count, so they are queries rather than
+    // @Modifying updates and need a read-write transaction of their own
+
+    // New orders must be flushed first
+    @Transactional
+    @Query(value = "WITH changed AS (SELECT region, expected_delivery_time, vaccine_quantity,"
+            + " CAST(NULL AS SMALLINT) AS old_status, status AS new_status,"
+            + " CAST(NULL AS INT) AS old_fulfilled, fulfilled_quantity AS new_fulfilled"
+            + " FROM vaccine_orders WHERE id IN (:ids))"
+            + UPDATE_ROLLUPS, nativeQuery = true)
+    int addToRollups(@Param("ids") List<Long> ids);
+
+    // Fulfilled means fulfilled_quantity is the ordered quantity, whatever partial allocations
+    // came before. Any other status keeps what was delivered: a reopened order only waits for
+    // the rest, so it is never served twice.
+    @Transactional
+    @Query(value = "WITH old AS (SELECT id, status, fulfilled_quantity FROM vaccine_orders"
+            + " WHERE id IN (:ids) AND status IN (:fromCodes) ORDER BY id FOR UPDATE),"
+            + " changed AS (UPDATE vaccine_orders o SET status = :toCode, version = o.version + 1,"
+            + " fulfilled_quantity = CASE WHEN :toCode = 2 THEN o.vaccine_quantity ELSE o.fulfilled_quantity END"
+            + " FROM old WHERE o.id = old.id RETURNING o.region, o.expected_delivery_time, o.vaccine_quantity,"
+            + " old.status AS old_status, o.status AS new_status,"
+            + " old.fulfilled_quantity AS old_fulfilled, o.fulfilled_quantity AS new_fulfilled)"
+            + UPDATE_ROLLUPS, nativeQuery = true)
+    int changeStatusByCode(@Param("ids") List<Long> ids, @Param("fromCodes") List<Short> fromCodes,
+                           @Param("toCode") short toCode);
+
+    // Partial allocations: raises fulfilled_quantity of open orders to the target the producer
+    // reached, ids and targets pairwise. Never lowers it, so a relay retry changes nothing; the
+    // status stays open until the rest is served, and the units move from pending to delivered
+    // in the rollups.
+    // The pairs go in as two arrays: a list parameter inside ARRAY[...] is expanded to a row.
+    @Transactional
+    @Query(value = "WITH targets AS (SELECT * FROM unnest(CAST(:ids AS bigint[]),"
+            + " CAST(:targets AS int[])) AS t(id, target)),"
+            + " locked AS (SELECT o.id, o.fulfilled_quantity, t.target FROM vaccine_orders o JOIN targets t ON t.id = o.id"
+            + " WHERE o.status IN (0, 1) AND o.fulfilled_quantity < t.target ORDER BY o.id FOR UPDATE OF o),"
+            + " changed AS (UPDATE vaccine_orders o SET version = o.version + 1,"
+            + " fulfilled_quantity = least(o.vaccine_quantity, locked.target) FROM locked"
+            + " WHERE o.id = locked.id RETURNING o.region, o.expected_delivery_time, o.vaccine_quantity,"
+            + " o.status AS old_status, o.status AS new_status,"
+            + " locked.fulfilled_quantity AS old_fulfilled, o.fulfilled_quantity AS new_fulfilled)"
+            + UPDATE_ROLLUPS, nativeQuery = true)
+    int raiseFulfilledQuantityTo(@Param("ids") Long[] ids, @Param("targets") Integer[] targets);
+
+    default int raiseFulfilledQuantity(List<Long> ids, List<Integer> targets) {
+        return raiseFulfilledQuantityTo(ids.toArray(Long[]::new), targets.toArray(Integer[]::new));
+    }
+
+    default int changeStatus(List<Long> ids, List<OrderStatus> from, OrderStatus to) {
+        return changeStatusByCode(ids, from.stream().map(OrderStatus::getCode).toList(), to.getCode());
+    }
+
+    default int markFulfilled(List<Long> ids) {
+        return changeStatus(ids, List.of(OrderStatus.PENDING, OrderStatus.PRIORITY), OrderStatus.FULFILLED);
+    }
+
+    // One chunk of the expiry job. SKIP LOCKED leaves rows another transaction is working on
+    // (an allocation marking them fulfilled) for the next run instead of waiting on them.
+    @Transactional
+    @Query(value = "WITH due AS (SELECT id, status FROM vaccine_orders"
+            + " WHERE status IN (:statusCodes) AND expected_delivery_time < :today"
+            + " ORDER BY id LIMIT :batchSize FOR UPDATE SKIP LOCKED),"
+            + " changed AS (UPDATE vaccine_orders o SET status = :expiredCode, version = o.version + 1 FROM due"
+            + " WHERE o.id = due.id RETURNING o.region, o.expected_delivery_time, o.vaccine_quantity,"
+            + " due.status AS old_status, o.status AS new_status,"
+            + " o.fulfilled_quantity AS old_fulfilled, o.fulfilled_quantity AS new_fulfilled)"
+            + UPDATE_ROLLUPS, nativeQuery = true)
+    int expireOverdueByCode(@Param("statusCodes") List<Short> statusCodes, @Param("today") LocalDate today,
+                            @Param("batchSize") int batchSize, @Param("expiredCode") short expiredCode);
+
+    // Native SQL sees the SMALLINT column, so the statuses go in as their codes
+    default int expireOverdue(List<OrderStatus> statuses, LocalDate today, int batchSize) {
+        return expireOverdueByCode(statuses.stream().map(OrderStatus::getCode).toList(), today, batchSize,
+                OrderStatus.EXPIRED.getCode());
+    }
+
+    // One chunk of the archive job: moves terminal orders due before the given date to
+    // vaccine_orders_archive in a single statement. The month partitions must exist already.
+    // Status does not change, so the rollups stay as they are.
+    @Transactional
+    @Query(value = "WITH due AS (SELECT id FROM vaccine_orders"
+            + " WHERE status IN (:statusCodes) AND expected_delivery_time < :before"
+            + " ORDER BY expected_delivery_time, id LIMIT :batchSize FOR UPDATE SKIP LOCKED),"
+            + " moved AS (DELETE FROM vaccine_orders o USING due WHERE o.id = due.id"
+            + " RETURNING o.id, o.region, o.vaccine_quantity, o.fulfilled_quantity, o.expected_delivery_time,"
+            + " o.status, o.version),"
+            + " archived AS (INSERT INTO vaccine_orders_archive"
+            + " (id, region, vaccine_quantity, fulfilled_quantity, expected_delivery_time, status, version)"
+            + " SELECT * FROM moved RETURNING id)"
+            + " SELECT count(*) FROM archived", nativeQuery = true)
+    int archiveByCode(@Param("statusCodes") List<Short> statusCodes, @Param("before") LocalDate before,
+                      @Param("batchSize") int batchSize);
+
+    default int archive(List<OrderStatus> statuses, LocalDate before, int batchSize) {
+        return archiveByCode(statuses.stream().map(OrderStatus::getCode).toList(), before, batchSize);
+    }
+
+    // One status at a time, so it is the first entry of idx_vaccine_orders_status_keyset
+    Optional<Order> findFirstByStatusAndExpectedDeliveryTimeBeforeOrderByExpectedDeliveryTimeAsc(OrderStatus status,
+                                                                                                 LocalDate before);
 
-}
\ No newline at end of file
+}
@@ -1,27 +1,88 @@
 package org.example;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.example.OrderRequest;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.web.client.ResourceAccessException;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.time.LocalDate;
-import java.util.Optional;
+import java.time.LocalDateTime;
+import java.time.DayOfWeek;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class OrderService {
 
     private static final Logger logger = LoggerFactory.getLogger(OrderService.class);
 
+    private static final int FULFILL_CHUNK_SIZE = 1000;
+    private static final List<OrderStatus> OPEN_STATUSES = List.of(OrderStatus.PENDING, OrderStatus.PRIORITY);
+    private static final List<OrderStatus> ALL_STATUSES = List.of(OrderStatus.values());
+    private static final List<OrderStatus> TERMINAL_STATUSES = List.of(OrderStatus.FULFILLED, OrderStatus.CANCELLED, OrderStatus.EXPIRED);
+    // An allocation for an order in any other state (cancelled, expired, archived) cannot be delivered
+    private static final List<OrderStatus> SERVABLE_STATUSES = List.of(OrderStatus.PENDING, OrderStatus.PRIORITY, OrderStatus.FULFILLED);
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    // Change events for GET /api/orders/events; orders-changed means "reload", for bulk changes
+    public static final String ORDER_CREATED_EVENT = "order-created";
+    public static final String ORDER_STATUS_EVENT = "order-status";
+    public static final String ORDERS_CHANGED_EVENT = "orders-changed";
+
     @Autowired
     private OrderRepository orderRepository;
 
     @Autowired
-    private RestTemplate restTemplate;
+    private FulfillmentTrigger fulfillmentTrigger;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private ChangeEventStream changeEventStream;
+
+    @Autowired
+    private ArchivedOrderRepository archivedOrderRepository;
 
+    @Autowired
+    private RegionRollupRepository regionRollupRepository;
+
+    @Autowired
+    private RegionWeekRollupRepository regionWeekRollupRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${allocation-queue.max-limit:100000}")
+    private int allocationQueueMaxLimit;
+
+    @Transactional
+    @CacheEvict(cacheNames = CacheConfig.ORDERS_BY_REGION, key = "#order.region.toLowerCase()")
     public Order createOrder(Order order) {
         if (order.getRegion() == null || order.getRegion().trim().isEmpty()) {
             throw new IllegalArgumentException("Region cannot be empty");
@@ -33,20 +94,35 @@ public class OrderService {
             throw new IllegalArgumentException("Expected Delivery Time cannot be null");
         }
 
-        order.setStatus("Pending");
+        order.setStatus(OrderStatus.PENDING);
         order.setFulfilledQuantity(0);
 
-        Order savedOrder = orderRepository.save(order);
+        Order savedOrder = orderRepository.saveAndFlush(order);
+        orderRepository.addToRollups(List.of(savedOrder.getId()));
 
-        try {
-            restTemplate.postForObject("http://producer:8082/api/producers/fulfillment", null, Void.class);
-        } catch (Exception e) {
-            logger.error("Failed to trigger fulfillment after order creation", e);
-        }
+        // Recorded in the same transaction, published to producer-service after commit
+        OutboxEvent event = new OutboxEvent();
+        event.setEventType(OutboxEvent.ORDER_CREATED);
+        event.setAggregateId(savedOrder.getId());
+        event.setPayload(toJson(savedOrder));
+        event.setCreatedAt(LocalDateTime.now());
+        outboxEventRepository.save(event);
+
+        fulfillmentTrigger.request();
+        changeEventStream.publish(ORDER_CREATED_EVENT, savedOrder);
 
         return savedOrder;
     }
 
+    private String toJson(Order order) {
+        try {
+            return objectMapper.writeValueAsString(order);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize order " + order.getId(), e);
+        }
+    }
+
+    @Cacheable(cacheNames = CacheConfig.ORDERS, key = "#id")
     public Order getOrder(Long id) {
         return orderRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Order with ID " + id + " not found"));
@@ -56,54 +132,321 @@ public class OrderService {
         return orderRepository.findAll();
     }
 
+    // With includeHistory the archive is paged the same way and the two pages merged on the key.
+    // An order archived between two pages keeps its key, so it is neither skipped nor repeated;
+    // one archived between the two reads below is in both and taken once.
+    public OrderPage getOrderPage(List<OrderStatus> statuses, boolean includeHistory, String cursor, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        Pageable pageable = PageRequest.ofSize(limit);
+        boolean allStatuses = statuses == null || statuses.isEmpty();
+
+        LocalDate afterDate = null;
+        Long afterId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] parts = cursor.split(",");
+            try {
+                afterDate = LocalDate.parse(parts[0]);
+                afterId = Long.parseLong(parts[1]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor " + cursor);
+            }
+        }
+
+        List<Order> orders;
+        if (afterDate == null) {
+            orders = allStatuses
+                    ? orderRepository.findFirstPage(pageable)
+                    : orderRepository.findFirstPageByStatusIn(statuses, pageable);
+        } else {
+            orders = allStatuses
+                    ? orderRepository.findPageAfter(afterDate, afterId, pageable)
+                    : orderRepository.findPageByStatusInAfter(statuses, afterDate, afterId, pageable);
+        }
+
+        if (includeHistory) {
+            List<ArchivedOrder> archived;
+            if (afterDate == null) {
+                archived = allStatuses
+                        ? archivedOrderRepository.findFirstPage(pageable)
+                        : archivedOrderRepository.findFirstPageByStatusIn(statuses, pageable);
+            } else {
+                archived = allStatuses
+                        ? archivedOrderRepository.findPageAfter(afterDate, afterId, pageable)
+                        : archivedOrderRepository.findPageByStatusInAfter(statuses, afterDate, afterId, pageable);
+            }
+            Set<Long> live = orders.stream().map(Order::getId).collect(Collectors.toSet());
+            List<Order> merged = new ArrayList<>(orders);
+            archived.stream()
+                    .filter(order -> !live.contains(order.getId()))
+                    .forEach(order -> merged.add(order.toOrder()));
+            merged.sort(Comparator.comparing(Order::getExpectedDeliveryTime).thenComparing(Order::getId));
+            orders = merged.subList(0, Math.min(limit, merged.size()));
+        }
+
+        String nextCursor = null;
+        if (orders.size() == limit) {
+            Order last = orders.get(orders.size() - 1);
+            nextCursor = last.getExpectedDeliveryTime() + "," + last.getId();
+        }
+        return new OrderPage(orders, nextCursor);
+    }
+
+    // Hands every matching order to the consumer one by one, then detaches it, so memory stays flat.
+    // With includeHistory the archived orders follow the live ones.
+    @Transactional(readOnly = true)
+    public void streamOrders(List<OrderStatus> statuses, boolean includeHistory, Consumer<Order> consumer) {
+        boolean allStatuses = statuses == null || statuses.isEmpty();
+        try (Stream<Order> orders = allStatuses
+                ? orderRepository.streamAll()
+                : orderRepository.streamByStatusIn(statuses)) {
+            orders.forEach(order -> {
+                consumer.accept(order);
+                entityManager.detach(order);
+            });
+        }
+        if (!includeHistory) {
+            return;
+        }
+        try (Stream<ArchivedOrder> archived = allStatuses
+                ? archivedOrderRepository.streamAll()
+                : archivedOrderRepository.streamByStatusIn(statuses)) {
+            archived.forEach(order -> {
+                consumer.accept(order.toOrder());
+                entityManager.detach(order);
+            });
+        }
+    }
+
+    // Priority orders, then Pending ones, each sorted by delivery date and quantity in SQL.
+    // Orders due before fromDate or with more left to serve than maxQuantity cannot be served and are left out.
+    @Transactional(readOnly = true)
+    public void streamAllocationQueue(LocalDate fromDate, int maxQuantity, Integer limit, Consumer<Order> consumer) {
+        if (limit != null && (limit <= 0 || limit > allocationQueueMaxLimit)) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + allocationQueueMaxLimit);
+        }
+
+        int remaining = limit != null ? limit : allocationQueueMaxLimit;
+        for (OrderStatus status : List.of(OrderStatus.PRIORITY, OrderStatus.PENDING)) {
+            if (remaining == 0) {
+                break;
+            }
+            try (Stream<Order> orders = orderRepository.streamAllocationQueue(status, fromDate, maxQuantity, Limit.of(remaining))) {
+                Iterator<Order> it = orders.iterator();
+                while (it.hasNext()) {
+                    Order order = it.next();
+                    consumer.accept(order);
+                    entityManager.detach(order);
+                    remaining--;
+                }
+            }
+        }
+    }
+
+    // The given orders as they are now, in queue order: the allocator reads new orders back
+    // through this rather than trusting the event that announced them, so ones cancelled,
+    // expired or fulfilled since are left out and get no stock
+    @Transactional(readOnly = true)
+    public void streamAllocationQueue(List<Long> ids, Consumer<Order> consumer) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        if (ids.size() > FULFILL_CHUNK_SIZE) {
+            throw new IllegalArgumentException("At most " + FULFILL_CHUNK_SIZE + " orders per request");
+        }
+        for (OrderStatus status : List.of(OrderStatus.PRIORITY, OrderStatus.PENDING)) {
+            for (Order order : orderRepository.findAllocationQueueByIdIn(status, ids)) {
+                consumer.accept(order);
+                entityManager.detach(order);
+            }
+        }
+    }
+
+    // The lookup ignores case, so the key does too
+    @Cacheable(cacheNames = CacheConfig.ORDERS_BY_REGION, key = "#region.toLowerCase()")
     public List<Order> getOrdersByRegion(String region) {
-        return orderRepository.findByRegionIgnoreCase(region);
+        return orderRepository.findByRegionKey(region);
+    }
+
+    // Read from the rollups, so the cost grows with the number of regions (and weeks), not
+    // orders. Weeks are only listed when asked for, limited to those starting in from..to.
+    @Transactional(readOnly = true)
+    public List<RegionSummary> getRegionSummaries(String region, boolean weekly, LocalDate from, LocalDate to) {
+        List<RegionRollup> totals = region == null || region.isBlank()
+                ? regionRollupRepository.findAllByOrderByRegionKey()
+                : regionRollupRepository.findByRegionKey(region.toLowerCase(Locale.ROOT));
+        if (!weekly) {
+            return totals.stream().map(rollup -> new RegionSummary(rollup, null)).toList();
+        }
+
+        LocalDate fromWeek = (from != null ? from : LocalDate.EPOCH).with(DayOfWeek.MONDAY);
+        LocalDate toWeek = to != null ? to : LocalDate.of(9999, 12, 31);
+        Map<String, List<RegionWeekRollup>> weeksByRegion = regionWeekRollupRepository
+                .findByRegionKeyInAndWeekStartBetweenOrderByRegionKeyAscWeekStartAsc(
+                        totals.stream().map(RegionRollup::getRegionKey).toList(), fromWeek, toWeek)
+                .stream()
+                .collect(Collectors.groupingBy(RegionWeekRollup::getRegionKey));
+        return totals.stream()
+                .map(rollup -> new RegionSummary(rollup, weeksByRegion.getOrDefault(rollup.getRegionKey(), List.of())))
+                .toList();
     }
 
+    @Caching(evict = {
+        @CacheEvict(cacheNames = CacheConfig.ORDERS, key = "#id.longValue()"),
+        @CacheEvict(cacheNames = CacheConfig.ORDERS_BY_REGION, allEntries = true)
+    })
+    @Transactional
     public int fulfillOrder(int id) {
-        Optional<Order> optionalOrder = orderRepository.findById((long) id);
-        if (optionalOrder.isPresent()) {
-            Order order = optionalOrder.get();
-            order.setStatus("Fulfilled");
-            orderRepository.save(order);
-        } else {
+        if (orderRepository.changeStatus(List.of((long) id), ALL_STATUSES, OrderStatus.FULFILLED) == 0) {
             throw new IllegalArgumentException("Order not found with id " + id);
         }
+        changeEventStream.publish(ORDER_STATUS_EVENT, new OrderStatusChange(List.of((long) id), OrderStatus.FULFILLED));
         return 0;
     }
 
-    private int fulfillOrderList(List<Order> orders, int availableVaccines) {
-        int remaining = availableVaccines;
+    // Marks a whole allocation run as fulfilled with one UPDATE per chunk of ids. Returns the
+    // orders it turned down: cancelled, expired or archived after the allocation read them, so
+    // producer-service gives their stock back. Orders fulfilled already (a relay retry) are not
+    // turned down.
+    @Transactional
+    @Caching(evict = {
+        @CacheEvict(cacheNames = CacheConfig.ORDERS, allEntries = true),
+        @CacheEvict(cacheNames = CacheConfig.ORDERS_BY_REGION, allEntries = true)
+    })
+    public List<Long> fulfillOrders(List<Long> ids) {
+        List<Long> rejected = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += FULFILL_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + FULFILL_CHUNK_SIZE, ids.size()));
+            orderRepository.markFulfilled(chunk);
+            rejected.addAll(unservable(chunk));
+        }
+        List<Long> fulfilled = ids.stream().filter(id -> !rejected.contains(id)).toList();
+        changeEventStream.publish(ORDER_STATUS_EVENT, new OrderStatusChange(fulfilled, OrderStatus.FULFILLED));
+        return rejected;
+    }
+
+    // Partial allocations of a run: each order's fulfilled quantity goes up to its target, one
+    // UPDATE per chunk of orders. Returns the orders turned down, as fulfillOrders does.
+    @Transactional
+    @Caching(evict = {
+        @CacheEvict(cacheNames = CacheConfig.ORDERS, allEntries = true),
+        @CacheEvict(cacheNames = CacheConfig.ORDERS_BY_REGION, allEntries = true)
+    })
+    public List<Long> fulfillPartially(Map<Long, Integer> targets) {
+        List<Long> ids = List.copyOf(targets.keySet());
+        List<Long> rejected = new ArrayList<>();
+        int updated = 0;
+        for (int from = 0; from < ids.size(); from += FULFILL_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + FULFILL_CHUNK_SIZE, ids.size()));
+            updated += orderRepository.raiseFulfilledQuantity(chunk, chunk.stream().map(targets::get).toList());
+            rejected.addAll(unservable(chunk));
+        }
+        if (updated > 0) {
+            changeEventStream.publish(ORDERS_CHANGED_EVENT, Map.of("reason", "partially-fulfilled", "orders", updated));
+        }
+        return rejected;
+    }
+
+    // Checked after the update in the same transaction; the rows it changed stay locked until commit
+    private List<Long> unservable(List<Long> ids) {
+        Set<Long> servable = new HashSet<>(orderRepository.findIdsByIdInAndStatusIn(ids, SERVABLE_STATUSES));
+        return ids.stream().filter(id -> !servable.contains(id)).toList();
+    }
 
-        for (Order order : orders) {
-            int needed = order.getVaccineQuantity() - order.getFulfilledQuantity();
+    @Caching(evict = {
+        @CacheEvict(cacheNames = CacheConfig.ORDERS, key = "#id"),
+        @CacheEvict(cacheNames = CacheConfig.ORDERS_BY_REGION, allEntries = true)
+    })
+    @Transactional
+    public Order updateOrderStatus(Long id, OrderStatus newStatus) {
+        // Through SQL so the region rollups move with it
+        if (orderRepository.changeStatus(List.of(id), ALL_STATUSES, newStatus) == 0) {
+            throw new RuntimeException("Order with ID " + id + " not found");
+        }
+        changeEventStream.publish(ORDER_STATUS_EVENT, new OrderStatusChange(List.of(id), newStatus));
+        // From the database, never a cached instance other readers share
+        return orderRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Order with ID " + id + " not found"));
+    }
 
-            if (needed <= 0) continue;
+    // Orders that are still open past their delivery date; what the expiry job would update
+    public List<Order> previewExpiry(LocalDate today) {
+        return orderRepository.findByStatusInAndExpectedDeliveryTimeBeforeOrderByExpectedDeliveryTimeAsc(OPEN_STATUSES, today);
+    }
 
-            if (remaining >= needed) {
-                order.setFulfilledQuantity(order.getFulfilledQuantity() + needed);
-                order.setStatus("Fulfilled");
-                orderRepository.save(order);
-                remaining -= needed;
-            } else {
-                break;
+    // One chunk per transaction, so the row locks are held briefly; returns the rows updated
+    @Transactional
+    @Caching(evict = {
+        @CacheEvict(cacheNames = CacheConfig.ORDERS, allEntries = true, condition = "#result > 0"),
+        @CacheEvict(cacheNames = CacheConfig.ORDERS_BY_REGION, allEntries = true, condition = "#result > 0")
+    })
+    public int expireOverdueChunk(LocalDate today, int batchSize) {
+        int expired = orderRepository.expireOverdue(OPEN_STATUSES, today, batchSize);
+        if (expired > 0) {
+            changeEventStream.publish(ORDERS_CHANGED_EVENT, Map.of("reason", "expired", "orders", expired));
+        }
+        return expired;
+    }
+
+    // Terminal orders due before the given date can go to the archive; the earliest of those
+    // dates, or null when there is nothing to archive
+    public LocalDate findEarliestArchivable(LocalDate before) {
+        LocalDate earliest = null;
+        for (OrderStatus status : TERMINAL_STATUSES) {
+            LocalDate date = orderRepository.findFirstByStatusAndExpectedDeliveryTimeBeforeOrderByExpectedDeliveryTimeAsc(status, before)
+                    .map(Order::getExpectedDeliveryTime)
+                    .orElse(null);
+            if (date != null && (earliest == null || date.isBefore(earliest))) {
+                earliest = date;
             }
         }
+        return earliest;
+    }
 
-        return remaining;
+    // Moves one chunk to vaccine_orders_archive in its own transaction; returns the rows moved
+    @Transactional
+    @Caching(evict = {
+        @CacheEvict(cacheNames = CacheConfig.ORDERS, allEntries = true, condition = "#result > 0"),
+        @CacheEvict(cacheNames = CacheConfig.ORDERS_BY_REGION, allEntries = true, condition = "#result > 0")
+    })
+    public int archiveChunk(LocalDate before, int batchSize) {
+        int archived = orderRepository.archive(TERMINAL_STATUSES, before, batchSize);
+        if (archived > 0) {
+            changeEventStream.publish(ORDERS_CHANGED_EVENT, Map.of("reason", "archived", "orders", archived));
+        }
+        return archived;
     }
 
-    public Order updateOrderStatus(Long id, String newStatus) {
-        Order order = getOrder(id);
-        order.setStatus(newStatus);
-        return orderRepository.save(order);
+    // Archived orders are read-only, so only reads ever look at them. Without them the overloads
+    // use the same caches as getOrder(Long) and getOrdersByRegion(String): calls on this do not
+    // go through the cache proxy, so they are annotated themselves.
+    @Cacheable(cacheNames = CacheConfig.ORDERS, key = "#id", condition = "!#includeHistory")
+    public Order getOrder(Long id, boolean includeHistory) {
+        if (!includeHistory) {
+            return getOrder(id);
+        }
+        return orderRepository.findById(id)
+                .or(() -> archivedOrderRepository.findById(id).map(ArchivedOrder::toOrder))
+                .orElseThrow(() -> new RuntimeException("Order with ID " + id + " not found"));
+    }
+
+    @Cacheable(cacheNames = CacheConfig.ORDERS_BY_REGION, key = "#region.toLowerCase()", condition = "!#includeHistory")
+    public List<Order> getOrdersByRegion(String region, boolean includeHistory) {
+        List<Order> orders = getOrdersByRegion(region);
+        if (!includeHistory) {
+            return orders;
+        }
+        List<Order> all = new ArrayList<>(orders);
+        archivedOrderRepository.findByRegionKey(region).forEach(archived -> all.add(archived.toOrder()));
+        return all;
     }
 
     public List<Order> getPendingOrders() {
-        return orderRepository.findByStatusIn(List.of("Pending"));
+        return orderRepository.findByStatusIn(List.of(OrderStatus.PENDING));
     }
 
     public List<Order> getPriorityOrders() {
-        return orderRepository.findByStatusIn(List.of("Priority"));
+        return orderRepository.findByStatusIn(List.of(OrderStatus.PRIORITY));
     }
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package org.example;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+// Stored as a SMALLINT code (OrderStatusConverter); the labels are what the API and the
+// frontend have always used
+public enum OrderStatus {
+    PENDING((short) 0, "Pending"),
+    PRIORITY((short) 1, "Priority"),
+    FULFILLED((short) 2, "Fulfilled"),
+    CANCELLED((short) 3, "Cancelled"),
+    EXPIRED((short) 4, "EXPIRED");
+
+    private final short code;
+    private final String label;
+
+    OrderStatus(short code, String label) {
+        this.code = code;
+        this.label = label;
+    }
+
+    public short getCode() { return code; }
+
+    @JsonValue
+    public String getLabel() { return label; }
+
+    public static OrderStatus fromCode(short code) {
+        for (OrderStatus status : values()) {
+            if (status.code == code) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("Unknown order status code " + code);
+    }
+
+    @JsonCreator
+    public static OrderStatus fromLabel(String label) {
+        for (OrderStatus status : values()) {
+            if (status.label.equalsIgnoreCase(label)) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("Unknown order status " + label);
+    }
+}
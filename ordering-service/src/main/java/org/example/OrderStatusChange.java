@@ -0,0 +1,17 @@
+package org.example;
+
+import java.util.List;
+
+// Data of an order-status event: these orders now have this status
+public class OrderStatusChange {
+    private final List<Long> orderIds;
+    private final OrderStatus status;
+
+    public OrderStatusChange(List<Long> orderIds, OrderStatus status) {
+        this.orderIds = orderIds;
+        this.status = status;
+    }
+
+    public List<Long> getOrderIds() { return orderIds; }
+    public OrderStatus getStatus() { return status; }
+}
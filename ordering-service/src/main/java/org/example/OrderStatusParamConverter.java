@@ -0,0 +1,14 @@
+package org.example;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.stereotype.Component;
+
+// Lets request parameters use the labels (?status=Pending, ?newStatus=EXPIRED)
+@Component
+public class OrderStatusParamConverter implements Converter<String, OrderStatus> {
+
+    @Override
+    public OrderStatus convert(String label) {
+        return OrderStatus.fromLabel(label.trim());
+    }
+}
@@ -0,0 +1,19 @@
+package org.example;
+
+import java.time.LocalDate;
+
+// Payload of the OrdersImported outbox event, one per stored chunk of an import:
+// producer-service reads the new orders from the allocation queue starting at fromDate instead
+// of getting one event per order
+public class OrdersImported {
+    private LocalDate fromDate;
+    private int orders;
+
+    public OrdersImported(LocalDate fromDate, int orders) {
+        this.fromDate = fromDate;
+        this.orders = orders;
+    }
+
+    public LocalDate getFromDate() { return fromDate; }
+    public int getOrders() { return orders; }
+}
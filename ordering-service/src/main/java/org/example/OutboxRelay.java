@@ -0,0 +1,81 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Publishes committed outbox rows to producer-service in id order, one batch per call.
+// Delivery is at least once; producer-service drops events it has already processed.
+@Component
+public class OutboxRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private static final String PRODUCER_EVENTS_URL = "http://producer:8082/api/producers/events";
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${outbox.relay.batch-size:500}")
+    private int batchSize;
+
+    // One pass at a time: two would post the same batch and could mark it out of order
+    private final AtomicBoolean running = new AtomicBoolean();
+    // Set by a call that found a pass running, which then goes round once more for it
+    private final AtomicBoolean requested = new AtomicBoolean();
+
+    // Safety net for batches that failed to publish; new events are pushed by FulfillmentTrigger,
+    // which may call this while the scheduled pass is still running
+    @Scheduled(fixedDelayString = "${outbox.relay.interval-ms:5000}")
+    public void relay() {
+        requested.set(true);
+        do {
+            if (!running.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                while (requested.getAndSet(false)) {
+                    publishPending();
+                }
+            } finally {
+                running.set(false);
+            }
+            // A request that came in after the last pass but before running was cleared
+        } while (requested.get());
+    }
+
+    private void publishPending() {
+        try {
+            List<OutboxEvent> batch;
+            do {
+                batch = outboxEventRepository.findByPublishedAtIsNullOrderByIdAsc(Limit.of(batchSize));
+                if (batch.isEmpty()) {
+                    return;
+                }
+
+                restTemplate.postForObject(PRODUCER_EVENTS_URL, batch, Void.class);
+
+                List<Long> ids = batch.stream().map(OutboxEvent::getId).toList();
+                transactionTemplate.executeWithoutResult(
+                        status -> outboxEventRepository.markPublished(ids, LocalDateTime.now()));
+            } while (batch.size() == batchSize);
+        } catch (Exception e) {
+            logger.error("Failed to publish outbox events, will retry", e);
+        }
+    }
+}
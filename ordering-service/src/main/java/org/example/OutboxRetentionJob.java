@@ -0,0 +1,60 @@
+package org.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import java.time.LocalDateTime;
+
+// Deletes ordering_outbox rows published more than outbox-retention.retention-days ago, a chunk
+// at a time. Producer-service keeps the ids it has processed for as long, see its own job.
+@Component
+public class OutboxRetentionJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRetentionJob.class);
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${outbox-retention.retention-days:30}")
+    private int retentionDays;
+
+    @Value("${outbox-retention.batch-size:5000}")
+    private int batchSize;
+
+    @Value("${outbox-retention.max-batches-per-run:200}")
+    private int maxBatchesPerRun;
+
+    @Scheduled(fixedDelayString = "${outbox-retention.interval-ms:3600000}")
+    public void prunePublishedEvents() {
+        LocalDateTime before = LocalDateTime.now().minusDays(retentionDays);
+        Counter prunedCounter = Counter.builder("outbox.pruned")
+            .description("Rows deleted by the outbox retention job")
+            .tag("table", "ordering_outbox")
+            .register(meterRegistry);
+
+        try {
+            int pruned = 0;
+            for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+                int deleted = outboxEventRepository.deletePublishedBefore(before, batchSize);
+                pruned += deleted;
+                prunedCounter.increment(deleted);
+                if (deleted < batchSize) {
+                    break;
+                }
+            }
+            if (pruned > 0) {
+                logger.info("outbox.retention table=ordering_outbox before={} pruned={}", before, pruned);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to prune published outbox events, will retry", e);
+        }
+    }
+}
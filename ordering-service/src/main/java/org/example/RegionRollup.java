@@ -0,0 +1,37 @@
+package org.example;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+
+// Running totals of one region, written only by the SQL in OrderRepository (see V7)
+@Entity
+@Immutable
+@Table(name = "region_rollups")
+public class RegionRollup {
+
+    @Id
+    private String regionKey;
+
+    private String region;
+    private long orders;
+    private long orderedQuantity;
+    private long pendingQuantity;
+    private long fulfilledQuantity;
+    private long expiredQuantity;
+    private long deliveredQuantity;
+
+    public String getRegionKey() { return regionKey; }
+    public String getRegion() { return region; }
+    public long getOrders() { return orders; }
+    public long getOrderedQuantity() { return orderedQuantity; }
+    public long getPendingQuantity() { return pendingQuantity; }
+    public long getFulfilledQuantity() { return fulfilledQuantity; }
+    public long getExpiredQuantity() { return expiredQuantity; }
+    public long getDeliveredQuantity() { return deliveredQuantity; }
+
+    // Pending and expired are what is still undelivered (see V10), so whatever is neither
+    // delivered, open nor expired was cancelled
+    public long getCancelledQuantity() {
+        return orderedQuantity - deliveredQuantity - pendingQuantity - expiredQuantity;
+    }
+}
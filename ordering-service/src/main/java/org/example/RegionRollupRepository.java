@@ -0,0 +1,9 @@
+package org.example;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.List;
+
+public interface RegionRollupRepository extends JpaRepository<RegionRollup, String> {
+    List<RegionRollup> findAllByOrderByRegionKey();
+    List<RegionRollup> findByRegionKey(String regionKey);
+}
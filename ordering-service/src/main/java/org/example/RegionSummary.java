@@ -0,0 +1,21 @@
+package org.example;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import java.util.List;
+
+// One row of GET /api/orders/regions/summary: the region's totals, plus its weeks if asked for
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RegionSummary {
+    private final RegionRollup totals;
+    private final List<RegionWeekRollup> weeks;
+
+    public RegionSummary(RegionRollup totals, List<RegionWeekRollup> weeks) {
+        this.totals = totals;
+        this.weeks = weeks;
+    }
+
+    @JsonUnwrapped
+    public RegionRollup getTotals() { return totals; }
+    public List<RegionWeekRollup> getWeeks() { return weeks; }
+}
@@ -0,0 +1,61 @@
+package org.example;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Objects;
+
+// Totals of one region for the orders due in one week (Monday to Sunday)
+@Entity
+@Immutable
+@Table(name = "region_week_rollups")
+@IdClass(RegionWeekRollup.Key.class)
+public class RegionWeekRollup {
+
+    @Id
+    private String regionKey;
+
+    @Id
+    private LocalDate weekStart;
+
+    private long orders;
+    private long orderedQuantity;
+    private long pendingQuantity;
+    private long fulfilledQuantity;
+    private long expiredQuantity;
+    private long deliveredQuantity;
+
+    @JsonIgnore
+    public String getRegionKey() { return regionKey; }
+    public LocalDate getWeekStart() { return weekStart; }
+    public long getOrders() { return orders; }
+    public long getOrderedQuantity() { return orderedQuantity; }
+    public long getPendingQuantity() { return pendingQuantity; }
+    public long getFulfilledQuantity() { return fulfilledQuantity; }
+    public long getExpiredQuantity() { return expiredQuantity; }
+    public long getDeliveredQuantity() { return deliveredQuantity; }
+
+    public long getCancelledQuantity() {
+        return orderedQuantity - deliveredQuantity - pendingQuantity - expiredQuantity;
+    }
+
+    public static class Key implements Serializable {
+        private String regionKey;
+        private LocalDate weekStart;
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return Objects.equals(regionKey, key.regionKey) && Objects.equals(weekStart, key.weekStart);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(regionKey, weekStart);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.example;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.time.LocalDate;
+import java.util.List;
+
+public interface RegionWeekRollupRepository extends JpaRepository<RegionWeekRollup, RegionWeekRollup.Key> {
+    List<RegionWeekRollup> findByRegionKeyInAndWeekStartBetweenOrderByRegionKeyAscWeekStartAsc(
+            List<String> regionKeys, LocalDate from, LocalDate to);
+}
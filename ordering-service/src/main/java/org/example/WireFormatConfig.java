@@ -0,0 +1,74 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Comparator;
+import java.util.List;
+
+// Jackson Smile (binary JSON) next to JSON for the bulk order endpoints producer-service reads.
+// Field names and repeated short values (statuses, regions, dates) are written once and then
+// referred to by a one-byte back-reference, so a large order list is a fraction of its JSON size
+// and parses without number or date text. JSON stays the default: Smile is only sent to clients
+// that ask for application/x-jackson-smile.
+@Configuration
+public class WireFormatConfig implements WebMvcConfigurer {
+
+    public static final String SMILE = "application/x-jackson-smile";
+
+    private final ObjectMapper smileMapper;
+
+    // Same modules and settings as the JSON mapper, so both formats carry the same fields
+    public WireFormatConfig(@Autowired ObjectMapper objectMapper) {
+        this.smileMapper = objectMapper.copyWith(SmileFactory.builder()
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .build());
+    }
+
+    // Appended, so */* and browsers still get JSON from the converter before it
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new MappingJackson2SmileHttpMessageConverter(smileMapper));
+    }
+
+    // Whether the Accept header ranks Smile above NDJSON; ties and absent headers go to NDJSON
+    public static boolean prefersSmile(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return false;
+        }
+        MediaType smile = MediaType.parseMediaType(SMILE);
+        List<MediaType> accepted = MediaType.parseMediaTypes(accept).stream()
+                .sorted(Comparator.comparingDouble(MediaType::getQualityValue).reversed())
+                .toList();
+        for (MediaType mediaType : accepted) {
+            if (mediaType.getQualityValue() == 0) {
+                break;
+            }
+            if (mediaType.equalsTypeAndSubtype(smile)) {
+                return true;
+            }
+            if (!mediaType.isWildcardType()) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    // One Smile header, then the values one after another; the back-references span the whole
+    // stream. Leaves the response stream open for the servlet container to close.
+    public SequenceWriter smileWriter(OutputStream out, Class<?> type) throws IOException {
+        JsonGenerator generator = smileMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return smileMapper.writerFor(type).writeValues(generator);
+    }
+}
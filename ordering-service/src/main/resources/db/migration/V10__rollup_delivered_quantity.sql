@@ -0,0 +1,39 @@
+-- Partial allocations deliver units before an order is fulfilled, and a partly served order
+-- can expire, be cancelled or be reopened with what it got. The rollups now count what was
+-- delivered (fulfilled_quantity of every order, whatever its status) in delivered_quantity,
+-- and pending and expired only hold what is still undelivered. fulfilled_quantity stays the
+-- ordered quantity of Fulfilled orders; cancelled is ordered less delivered, pending and expired.
+ALTER TABLE region_rollups ADD COLUMN IF NOT EXISTS delivered_quantity BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE region_week_rollups ADD COLUMN IF NOT EXISTS delivered_quantity BIGINT NOT NULL DEFAULT 0;
+
+-- Recomputed from scratch, archived orders included; the old totals booked partial
+-- deliveries nowhere and expired partly served orders whole
+LOCK TABLE vaccine_orders, region_rollups, region_week_rollups IN SHARE ROW EXCLUSIVE MODE;
+
+DELETE FROM region_rollups;
+DELETE FROM region_week_rollups;
+
+INSERT INTO region_rollups (region_key, region, orders, ordered_quantity, pending_quantity, fulfilled_quantity,
+                            expired_quantity, delivered_quantity)
+SELECT lower(region), min(region), count(*), sum(vaccine_quantity),
+       coalesce(sum(vaccine_quantity - fulfilled_quantity) FILTER (WHERE status IN (0, 1)), 0),
+       coalesce(sum(vaccine_quantity) FILTER (WHERE status = 2), 0),
+       coalesce(sum(vaccine_quantity - fulfilled_quantity) FILTER (WHERE status = 4), 0),
+       sum(fulfilled_quantity)
+FROM (SELECT region, vaccine_quantity, fulfilled_quantity, status FROM vaccine_orders
+      UNION ALL
+      SELECT region, vaccine_quantity, fulfilled_quantity, status FROM vaccine_orders_archive) o
+GROUP BY lower(region);
+
+INSERT INTO region_week_rollups (region_key, week_start, orders, ordered_quantity, pending_quantity,
+                                 fulfilled_quantity, expired_quantity, delivered_quantity)
+SELECT lower(region), date_trunc('week', expected_delivery_time)::date, count(*), sum(vaccine_quantity),
+       coalesce(sum(vaccine_quantity - fulfilled_quantity) FILTER (WHERE status IN (0, 1)), 0),
+       coalesce(sum(vaccine_quantity) FILTER (WHERE status = 2), 0),
+       coalesce(sum(vaccine_quantity - fulfilled_quantity) FILTER (WHERE status = 4), 0),
+       sum(fulfilled_quantity)
+FROM (SELECT region, vaccine_quantity, fulfilled_quantity, expected_delivery_time, status FROM vaccine_orders
+      UNION ALL
+      SELECT region, vaccine_quantity, fulfilled_quantity, expected_delivery_time, status
+      FROM vaccine_orders_archive) o
+GROUP BY 1, 2;
@@ -0,0 +1,4 @@
+-- Keyset pages over history (GET /api/orders/page?includeHistory=true) walk the archive in
+-- (expected_delivery_time, id) order like idx_vaccine_orders_keyset does the live table; the
+-- primary key leads with id. Created on every partition, and on those the archive job adds.
+CREATE INDEX IF NOT EXISTS idx_vaccine_orders_archive_keyset ON vaccine_orders_archive (expected_delivery_time, id);
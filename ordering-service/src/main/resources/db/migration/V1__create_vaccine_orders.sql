@@ -0,0 +1,8 @@
+CREATE TABLE IF NOT EXISTS vaccine_orders (
+    id SERIAL PRIMARY KEY,
+    region VARCHAR(255) NOT NULL,
+    vaccine_quantity INT NOT NULL,
+    fulfilled_quantity INT NOT NULL,
+    expected_delivery_time DATE NOT NULL,
+    status VARCHAR(50) NOT NULL
+);
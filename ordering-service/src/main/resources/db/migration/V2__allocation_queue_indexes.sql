@@ -0,0 +1,10 @@
+-- Allocation queue: one status at a time, in the allocator's order
+CREATE INDEX IF NOT EXISTS idx_vaccine_orders_allocation_queue
+    ON vaccine_orders (status, expected_delivery_time, vaccine_quantity, id);
+
+-- Keyset pages with and without a status filter
+CREATE INDEX IF NOT EXISTS idx_vaccine_orders_status_keyset
+    ON vaccine_orders (status, expected_delivery_time, id);
+
+CREATE INDEX IF NOT EXISTS idx_vaccine_orders_keyset
+    ON vaccine_orders (expected_delivery_time, id);
@@ -0,0 +1,12 @@
+CREATE TABLE IF NOT EXISTS ordering_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    event_type VARCHAR(50) NOT NULL,
+    aggregate_id BIGINT NOT NULL,
+    payload TEXT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT now(),
+    published_at TIMESTAMP
+);
+
+-- The relay only ever looks at the unpublished tail
+CREATE INDEX IF NOT EXISTS idx_ordering_outbox_unpublished
+    ON ordering_outbox (id) WHERE published_at IS NULL;
@@ -0,0 +1 @@
+ALTER TABLE vaccine_orders ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
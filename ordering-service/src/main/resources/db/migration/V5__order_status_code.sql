@@ -0,0 +1,23 @@
+-- Status as a SMALLINT code (see OrderStatus) instead of free text
+ALTER TABLE vaccine_orders ADD COLUMN status_code SMALLINT;
+
+UPDATE vaccine_orders SET status_code = CASE upper(status)
+    WHEN 'PENDING' THEN 0
+    WHEN 'PRIORITY' THEN 1
+    WHEN 'FULFILLED' THEN 2
+    WHEN 'CANCELLED' THEN 3
+    WHEN 'EXPIRED' THEN 4
+END;
+
+-- Fails the migration on a status the application does not know, rather than guessing
+ALTER TABLE vaccine_orders ALTER COLUMN status_code SET NOT NULL;
+
+-- Takes the status indexes from V2 with it; they are recreated on the new column below
+ALTER TABLE vaccine_orders DROP COLUMN status;
+ALTER TABLE vaccine_orders RENAME COLUMN status_code TO status;
+
+CREATE INDEX idx_vaccine_orders_allocation_queue
+    ON vaccine_orders (status, expected_delivery_time, vaccine_quantity, id);
+
+CREATE INDEX idx_vaccine_orders_status_keyset
+    ON vaccine_orders (status, expected_delivery_time, id);
@@ -0,0 +1,3 @@
+-- Order ids come from the SERIAL sequence through Hibernate's pooled optimizer, which reserves
+-- 50 ids per nextval. Plain INSERTs that use the column default still get unique ids.
+ALTER SEQUENCE vaccine_orders_id_seq INCREMENT BY 50;
@@ -0,0 +1,46 @@
+-- Per-region and per-region-per-week totals, kept up to date by the statements that insert
+-- orders or change their status (see OrderRepository). Regions are keyed case-insensitively,
+-- like the region lookup. Quantities by status: pending = Pending + Priority (codes 0, 1),
+-- fulfilled = 2, expired = 4; cancelled is what is left of ordered.
+CREATE TABLE IF NOT EXISTS region_rollups (
+    region_key VARCHAR(255) PRIMARY KEY,
+    region VARCHAR(255) NOT NULL,
+    orders BIGINT NOT NULL DEFAULT 0,
+    ordered_quantity BIGINT NOT NULL DEFAULT 0,
+    pending_quantity BIGINT NOT NULL DEFAULT 0,
+    fulfilled_quantity BIGINT NOT NULL DEFAULT 0,
+    expired_quantity BIGINT NOT NULL DEFAULT 0
+);
+
+-- Weeks start on Monday of the expected delivery date
+CREATE TABLE IF NOT EXISTS region_week_rollups (
+    region_key VARCHAR(255) NOT NULL,
+    week_start DATE NOT NULL,
+    orders BIGINT NOT NULL DEFAULT 0,
+    ordered_quantity BIGINT NOT NULL DEFAULT 0,
+    pending_quantity BIGINT NOT NULL DEFAULT 0,
+    fulfilled_quantity BIGINT NOT NULL DEFAULT 0,
+    expired_quantity BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (region_key, week_start)
+);
+
+INSERT INTO region_rollups (region_key, region, orders, ordered_quantity, pending_quantity, fulfilled_quantity, expired_quantity)
+SELECT lower(region), min(region), count(*), sum(vaccine_quantity),
+       coalesce(sum(vaccine_quantity) FILTER (WHERE status IN (0, 1)), 0),
+       coalesce(sum(vaccine_quantity) FILTER (WHERE status = 2), 0),
+       coalesce(sum(vaccine_quantity) FILTER (WHERE status = 4), 0)
+FROM vaccine_orders
+GROUP BY lower(region)
+ON CONFLICT (region_key) DO NOTHING;
+
+INSERT INTO region_week_rollups (region_key, week_start, orders, ordered_quantity, pending_quantity, fulfilled_quantity, expired_quantity)
+SELECT lower(region), date_trunc('week', expected_delivery_time)::date, count(*), sum(vaccine_quantity),
+       coalesce(sum(vaccine_quantity) FILTER (WHERE status IN (0, 1)), 0),
+       coalesce(sum(vaccine_quantity) FILTER (WHERE status = 2), 0),
+       coalesce(sum(vaccine_quantity) FILTER (WHERE status = 4), 0)
+FROM vaccine_orders
+GROUP BY 1, 2
+ON CONFLICT (region_key, week_start) DO NOTHING;
+
+-- Case-insensitive region lookup on the same key
+CREATE INDEX IF NOT EXISTS idx_vaccine_orders_region_key ON vaccine_orders (lower(region));
@@ -0,0 +1,20 @@
+-- Cold storage for orders that can no longer be allocated: Fulfilled, Cancelled and EXPIRED
+-- orders (codes 2, 3, 4) past order-archive.retention-days are moved here in chunks by
+-- OrderArchiveJob, so vaccine_orders only holds open and recent orders however much history
+-- piles up. One partition per delivery month, created by the job before it moves rows into it;
+-- old months can be detached or dropped without touching the rest. Region totals stay in the
+-- rollups, which count archived orders too.
+CREATE TABLE IF NOT EXISTS vaccine_orders_archive (
+    id BIGINT NOT NULL,
+    region VARCHAR(255) NOT NULL,
+    vaccine_quantity INT NOT NULL,
+    fulfilled_quantity INT NOT NULL,
+    expected_delivery_time DATE NOT NULL,
+    status SMALLINT NOT NULL,
+    version BIGINT NOT NULL DEFAULT 0,
+    archived_at TIMESTAMP NOT NULL DEFAULT now(),
+    PRIMARY KEY (id, expected_delivery_time)
+) PARTITION BY RANGE (expected_delivery_time);
+
+-- History by region, like idx_vaccine_orders_region_key; created on every partition
+CREATE INDEX IF NOT EXISTS idx_vaccine_orders_archive_region_key ON vaccine_orders_archive (lower(region));
@@ -0,0 +1,4 @@
+-- Allocations always serve the whole order, but fulfilled_quantity used to stay 0; from now on
+-- status changes keep it in step (see OrderRepository.changeStatusByCode)
+UPDATE vaccine_orders SET fulfilled_quantity = vaccine_quantity WHERE status = 2 AND fulfilled_quantity = 0;
+UPDATE vaccine_orders_archive SET fulfilled_quantity = vaccine_quantity WHERE status = 2 AND fulfilled_quantity = 0;
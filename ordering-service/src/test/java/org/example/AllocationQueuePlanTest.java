@@ -0,0 +1,146 @@
+package org.example;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The allocation queue must be one range scan of idx_vaccine_orders_allocation_queue per
+// status, already in the allocator's order, so it never sorts however big vaccine_orders gets.
+// Explains the SQL Hibernate actually sends for OrderRepository.streamAllocationQueue, with the
+// same values bound, against ordering-service's own migrations.
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "org.example.AllocationQueuePlanTest$RecordingInspector")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class AllocationQueuePlanTest {
+
+    private static final int ROWS = 200_000;
+    private static final LocalDate FROM = LocalDate.of(2030, 4, 1);
+    private static final int MAX_QUANTITY = 250;
+    private static final int LIMIT = 1000;
+
+    // Same spread as OrderQueryBenchmark: a year of delivery dates, 10% Priority, a third Fulfilled
+    private static final String GENERATE_SQL = "INSERT INTO vaccine_orders"
+            + " (region, vaccine_quantity, fulfilled_quantity, expected_delivery_time, status)"
+            + " SELECT 'Region ' || (g % 16), CAST(10 * (1 + (g * 7919) % 50) AS INT), 0,"
+            + " DATE '2030-01-01' + CAST((g * 104729) % 365 AS INT),"
+            + " CASE WHEN g % 10 = 0 THEN 1 WHEN g % 3 = 0 THEN 2 ELSE 0 END"
+            + " FROM generate_series(1, CAST(? AS BIGINT)) g";
+
+    private static final EmbeddedPostgres postgres = start();
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @DynamicPropertySource
+    static void dataSource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+    }
+
+    // Migrated and filled before the context starts, so the planner has statistics to go by
+    private static EmbeddedPostgres start() {
+        try {
+            EmbeddedPostgres started = EmbeddedPostgres.builder().start();
+            Flyway.configure()
+                    .dataSource(started.getPostgresDatabase())
+                    .table("ordering_schema_history")
+                    .load()
+                    .migrate();
+            try (Connection connection = started.getPostgresDatabase().getConnection()) {
+                try (PreparedStatement generate = connection.prepareStatement(GENERATE_SQL)) {
+                    generate.setInt(1, ROWS);
+                    generate.executeUpdate();
+                }
+                try (Statement analyze = connection.createStatement()) {
+                    analyze.execute("ANALYZE vaccine_orders");
+                }
+            }
+            return started;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = OrderStatus.class, names = {"PENDING", "PRIORITY"})
+    void allocationQueueIsAnIndexRangeScanWithoutSort(OrderStatus status) throws SQLException {
+        RecordingInspector.statements.clear();
+        try (Stream<Order> orders = orderRepository.streamAllocationQueue(status, FROM, MAX_QUANTITY, Limit.of(LIMIT))) {
+            assertThat(orders.count()).isEqualTo(LIMIT);
+        }
+        String sql = RecordingInspector.statements.stream()
+                .filter(statement -> statement.contains("vaccine_orders"))
+                .reduce((first, second) -> second)
+                .orElseThrow();
+
+        List<String> plan = explain(sql, status);
+
+        assertThat(plan)
+                .as("plan of %s", sql)
+                .anyMatch(line -> line.contains("Index Scan using idx_vaccine_orders_allocation_queue"))
+                .noneMatch(line -> line.contains("Sort"))
+                .noneMatch(line -> line.contains("Seq Scan"));
+    }
+
+    // Parameters in the order of the query: status, fromDate, maxQuantity, then the Limit as
+    // Hibernate renders it (offset 0 rows fetch first n rows only)
+    private List<String> explain(String sql, OrderStatus status) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql)) {
+            assertThat(explain.getParameterMetaData().getParameterCount()).as(sql).isEqualTo(5);
+            explain.setShort(1, status.getCode());
+            explain.setDate(2, Date.valueOf(FROM));
+            explain.setInt(3, MAX_QUANTITY);
+            explain.setInt(4, 0);
+            explain.setInt(5, LIMIT);
+            List<String> plan = new ArrayList<>();
+            try (ResultSet resultSet = explain.executeQuery()) {
+                while (resultSet.next()) {
+                    plan.add(resultSet.getString(1));
+                }
+            }
+            return plan;
+        }
+    }
+
+    // Keeps every SQL string Hibernate prepares
+    public static class RecordingInspector implements StatementInspector {
+
+        static final List<String> statements = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            statements.add(sql);
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// FulfillmentTrigger calls relay() from the scheduler while the @Scheduled pass may still be
+// posting: the second call must not post the same batch again, and must not be lost either
+class OutboxRelayTest {
+
+    private static final String PRODUCER_EVENTS_URL = "http://producer:8082/api/producers/events";
+
+    private final List<OutboxEvent> pending = new CopyOnWriteArrayList<>();
+    private final List<List<Long>> posted = new CopyOnWriteArrayList<>();
+    private final AtomicInteger posting = new AtomicInteger();
+    private final AtomicInteger maxPosting = new AtomicInteger();
+    private final CountDownLatch firstPostStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseFirstPost = new CountDownLatch(1);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void callDuringAPassGoesRoundOnceMoreInsteadOfPostingTwice() throws InterruptedException {
+        OutboxEventRepository repository = mock(OutboxEventRepository.class);
+        when(repository.findByPublishedAtIsNullOrderByIdAsc(any(Limit.class))).thenAnswer(call -> List.copyOf(pending));
+        when(repository.markPublished(anyList(), any())).thenAnswer(call -> {
+            List<Long> ids = call.getArgument(0);
+            pending.removeIf(event -> ids.contains(event.getId()));
+            return ids.size();
+        });
+
+        RestTemplate restTemplate = mock(RestTemplate.class);
+        when(restTemplate.postForObject(eq(PRODUCER_EVENTS_URL), anyList(), eq(Void.class))).thenAnswer(call -> {
+            maxPosting.accumulateAndGet(posting.incrementAndGet(), Math::max);
+            List<OutboxEvent> batch = call.getArgument(1);
+            posted.add(batch.stream().map(OutboxEvent::getId).toList());
+            firstPostStarted.countDown();
+            releaseFirstPost.await(10, TimeUnit.SECONDS);
+            posting.decrementAndGet();
+            return null;
+        });
+
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(call -> {
+            ((Consumer<TransactionStatus>) call.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        OutboxRelay relay = new OutboxRelay();
+        ReflectionTestUtils.setField(relay, "outboxEventRepository", repository);
+        ReflectionTestUtils.setField(relay, "restTemplate", restTemplate);
+        ReflectionTestUtils.setField(relay, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(relay, "batchSize", 500);
+
+        pending.add(event(1));
+        Thread scheduled = new Thread(relay::relay);
+        scheduled.start();
+        assertThat(firstPostStarted.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // A new order committed while the first batch is on its way
+        pending.add(event(2));
+        relay.relay();
+        assertThat(posted).hasSize(1);
+
+        releaseFirstPost.countDown();
+        scheduled.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertThat(posted).containsExactly(List.of(1L), List.of(2L));
+        assertThat(maxPosting.get()).isEqualTo(1);
+        assertThat(pending).isEmpty();
+    }
+
+    private static OutboxEvent event(long id) {
+        OutboxEvent event = new OutboxEvent();
+        event.setId(id);
+        event.setEventType(OutboxEvent.ORDER_CREATED);
+        return event;
+    }
+}
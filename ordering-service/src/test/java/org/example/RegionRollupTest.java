@@ -0,0 +1,136 @@
+package org.example;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The rollups OrderRepository keeps in step must always equal the totals V10 computes from the
+// orders themselves, through partial allocations, expiry, cancellation and reopening
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class RegionRollupTest {
+
+    private static final LocalDate DELIVERY = LocalDate.of(2030, 3, 6);
+
+    // The recomputation in V10__rollup_delivered_quantity.sql, archive left out as nothing is archived here
+    private static final String RECOMPUTE_SQL = "SELECT lower(region) AS region_key, count(*) AS orders,"
+            + " sum(vaccine_quantity) AS ordered_quantity,"
+            + " coalesce(sum(vaccine_quantity - fulfilled_quantity) FILTER (WHERE status IN (0, 1)), 0) AS pending_quantity,"
+            + " coalesce(sum(vaccine_quantity) FILTER (WHERE status = 2), 0) AS fulfilled_quantity,"
+            + " coalesce(sum(vaccine_quantity - fulfilled_quantity) FILTER (WHERE status = 4), 0) AS expired_quantity,"
+            + " sum(fulfilled_quantity) AS delivered_quantity"
+            + " FROM vaccine_orders GROUP BY lower(region) ORDER BY 1";
+
+    private static final String ROLLUPS_SQL = "SELECT region_key, orders, ordered_quantity, pending_quantity,"
+            + " fulfilled_quantity, expired_quantity, delivered_quantity FROM region_rollups WHERE orders > 0 ORDER BY 1";
+
+    private static final String WEEK_ROLLUPS_SQL = "SELECT region_key, orders, ordered_quantity, pending_quantity,"
+            + " fulfilled_quantity, expired_quantity, delivered_quantity FROM region_week_rollups WHERE orders > 0"
+            + " ORDER BY 1";
+
+    private static final EmbeddedPostgres postgres = start();
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private RegionRollupRepository regionRollupRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void dataSource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+    }
+
+    private static EmbeddedPostgres start() {
+        try {
+            EmbeddedPostgres started = EmbeddedPostgres.builder().start();
+            Flyway.configure()
+                    .dataSource(started.getPostgresDatabase())
+                    .table("ordering_schema_history")
+                    .load()
+                    .migrate();
+            return started;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    void partlyServedOrdersAreBookedByWhatTheyGot() {
+        long reopened = order("North", 100, OrderStatus.PENDING);
+        long fulfilled = order("North", 50, OrderStatus.PRIORITY);
+        long expired = order("north", 40, OrderStatus.PENDING);
+        long cancelled = order("South", 30, OrderStatus.PENDING);
+        orderRepository.addToRollups(List.of(reopened, fulfilled, expired, cancelled));
+        assertRollupsMatchTheOrders();
+
+        orderRepository.raiseFulfilledQuantity(List.of(reopened, expired, cancelled), List.of(30, 10, 5));
+        assertRollupsMatchTheOrders();
+
+        orderRepository.markFulfilled(List.of(fulfilled, reopened));
+        orderRepository.changeStatus(List.of(expired), List.of(OrderStatus.PENDING), OrderStatus.EXPIRED);
+        orderRepository.changeStatus(List.of(cancelled), List.of(OrderStatus.PENDING), OrderStatus.CANCELLED);
+        assertRollupsMatchTheOrders();
+
+        // Reopened after it was delivered in full: it keeps the units and has nothing left to serve
+        orderRepository.changeStatus(List.of(reopened), List.of(OrderStatus.FULFILLED), OrderStatus.PENDING);
+        assertRollupsMatchTheOrders();
+        assertThat(jdbcTemplate.queryForObject("SELECT fulfilled_quantity FROM vaccine_orders WHERE id = ?",
+                Integer.class, reopened)).isEqualTo(100);
+
+        RegionRollup north = regionRollupRepository.findByRegionKey("north").get(0);
+        assertThat(north.getOrderedQuantity()).isEqualTo(190);
+        assertThat(north.getDeliveredQuantity()).isEqualTo(160);
+        assertThat(north.getPendingQuantity()).isZero();
+        assertThat(north.getFulfilledQuantity()).isEqualTo(50);
+        assertThat(north.getExpiredQuantity()).isEqualTo(30);
+        assertThat(north.getCancelledQuantity()).isZero();
+        RegionRollup south = regionRollupRepository.findByRegionKey("south").get(0);
+        assertThat(south.getDeliveredQuantity()).isEqualTo(5);
+        assertThat(south.getCancelledQuantity()).isEqualTo(25);
+    }
+
+    @Test
+    void expiryBooksOnlyWhatWasNotDelivered() {
+        long order = order("East", 80, OrderStatus.PRIORITY);
+        orderRepository.addToRollups(List.of(order));
+        orderRepository.raiseFulfilledQuantity(List.of(order), List.of(60));
+
+        orderRepository.expireOverdue(List.of(OrderStatus.PENDING, OrderStatus.PRIORITY), DELIVERY.plusDays(1), 100);
+
+        assertRollupsMatchTheOrders();
+        RegionRollup east = regionRollupRepository.findByRegionKey("east").get(0);
+        assertThat(east.getExpiredQuantity()).isEqualTo(20);
+        assertThat(east.getDeliveredQuantity()).isEqualTo(60);
+    }
+
+    private void assertRollupsMatchTheOrders() {
+        List<Map<String, Object>> expected = jdbcTemplate.queryForList(RECOMPUTE_SQL);
+        assertThat(jdbcTemplate.queryForList(ROLLUPS_SQL)).isEqualTo(expected);
+        // Every order is due in the same week
+        assertThat(jdbcTemplate.queryForList(WEEK_ROLLUPS_SQL)).isEqualTo(expected);
+    }
+
+    private long order(String region, int quantity, OrderStatus status) {
+        return jdbcTemplate.queryForObject("INSERT INTO vaccine_orders"
+                + " (region, vaccine_quantity, fulfilled_quantity, expected_delivery_time, status)"
+                + " VALUES (?, ?, 0, ?, ?) RETURNING id", Long.class, region, quantity, DELIVERY, status.getCode());
+    }
+}
@@ -0,0 +1,60 @@
+package org.example;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Repository
+public class AllocatedOrderRepository {
+
+    private static final String CLAIM_SQL =
+        "INSERT INTO allocated_orders (order_id, order_version) SELECT * FROM unnest(?::bigint[], ?::bigint[])"
+            + " ON CONFLICT DO NOTHING RETURNING order_id";
+
+    private static final String SETTLE_SQL =
+        "UPDATE allocated_orders SET settled_at = now()"
+            + " WHERE order_id = ANY(?::bigint[]) AND settled_at IS NULL AND allocated_at <= ?";
+
+    private static final String DELETE_SETTLED_SQL =
+        "DELETE FROM allocated_orders WHERE (order_id, order_version) IN (SELECT order_id, order_version"
+            + " FROM allocated_orders WHERE settled_at < ? LIMIT ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Same pattern as the inbox: returns the order ids no other run has taken stock for. An
+    // order is claimed together with the version the run saw. Ordering-service raises it on
+    // every change, so an order that comes back to the queue (served in part, or reopened) is a
+    // new claim, but two runs serving the same state are not. A concurrent run claiming the same
+    // key waits for this transaction and gets nothing back. Inserted in order id order, so two
+    // runs that overlap cannot deadlock on each other's keys.
+    public List<Long> claim(Map<Long, Long> versions) {
+        if (versions.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Long> sorted = new TreeMap<>(versions);
+        return jdbcTemplate.queryForList(CLAIM_SQL, Long.class,
+            sorted.keySet().toArray(new Long[0]), sorted.values().toArray(new Long[0]));
+    }
+
+    // In the transaction marking the events that reported the orders published. Only claims made
+    // no later than those events, so a newer claim on a version reached since stays open until
+    // its own event goes out.
+    public int settle(List<Long> orderIds, LocalDateTime claimedBy) {
+        if (orderIds.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update(SETTLE_SQL, orderIds.toArray(new Long[0]), claimedBy);
+    }
+
+    // Up to limit claims settled before the cutoff, for OutboxRetentionJob
+    @Transactional
+    public int deleteSettledBefore(LocalDateTime before, int limit) {
+        return jdbcTemplate.update(DELETE_SETTLED_SQL, before, limit);
+    }
+}
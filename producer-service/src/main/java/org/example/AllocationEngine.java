@@ -0,0 +1,444 @@
+package org.example;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Keeps producer capacities indexed by production deadline, with running prefix sums of
+// excessVaccines, so "enough stock on or before date D?" is a log-time lookup instead of a
+// rescan of every capacity for every order.
+//
+// Loading, invalidating and adding a new deadline change the shape of the index and take the
+// write lock. Allocations take the read lock plus the striped locks of the deadline buckets they
+// draw from, so orders served from different buckets allocate in parallel.
+@Component
+public class AllocationEngine {
+
+    private static final int STRIPES = 64;
+
+    @Autowired
+    private ProducerResponseRepository responseRepository;
+
+    private final ReentrantReadWriteLock structure = new ReentrantReadWriteLock();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    // Every deadline that has an index slot in the Fenwick tree, changed under the write lock only
+    private final NavigableMap<LocalDate, DeadlineBucket> buckets = new TreeMap<>();
+
+    // Only the deadlines that still have stock left
+    private final ConcurrentNavigableMap<LocalDate, DeadlineBucket> stocked = new ConcurrentSkipListMap<>();
+
+    // Deadline of every capacity indexed since the last load, so a capacity is indexed once and
+    // units given back find their bucket
+    private final Map<Long, LocalDate> deadlines = new ConcurrentHashMap<>();
+
+    private volatile AtomicLongArray fenwick = new AtomicLongArray(1);
+    private final AtomicLong totalAvailable = new AtomicLong();
+    private volatile boolean loaded;
+    // Goes up with every load from the database, changed under the write lock only. Stock drawn
+    // under one load is not in the next: the load read the rows before the draw was committed.
+    private volatile long generation;
+
+    public AllocationEngine() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    // The capacity must be committed already; a first load reads it from the database together
+    // with the others, so it is only indexed by hand once the index is warm, and only if no load
+    // since the commit has picked it up
+    public void addCapacity(ProducerCapacity capacity) {
+        if (!loaded) {
+            ensureLoaded();
+            return;
+        }
+        if (capacity.getExcessVaccines() <= 0) {
+            return;
+        }
+        addStock(capacity.getProductionDeadline(), capacity.getId(), capacity.getExcessVaccines(), true, 0);
+    }
+
+    // Same for several capacities saved together: a first load already reads all of them
+    public void addCapacities(List<ProducerCapacity> capacities) {
+        if (!loaded) {
+            ensureLoaded();
+            return;
+        }
+        for (ProducerCapacity capacity : capacities) {
+            addCapacity(capacity);
+        }
+    }
+
+    // Units a run drew under the given load and then did not keep (see AllocationRun.drop), back
+    // to their capacities. Dropped if the index has been reloaded since: the new load read the
+    // rows without the draw, so the units are in it already.
+    public void release(Map<Long, Integer> units, long drawnUnder) {
+        units.forEach((capacityId, quantity) -> {
+            LocalDate deadline = deadlines.get(capacityId);
+            if (deadline != null) {
+                addStock(deadline, capacityId, quantity, false, drawnUnder);
+            }
+        });
+    }
+
+    // Units going back to capacities once their deductions have been undone in the database
+    // (see ProducerService.returnStock). Added to the load that was current before that commit,
+    // which cannot have seen them; if the index has been reloaded since, it is not known whether
+    // the new load did, so it is read again.
+    public void restore(List<ProducerCapacity> capacities, Map<Long, Integer> units, long loadedBefore) {
+        boolean added = true;
+        for (ProducerCapacity capacity : capacities) {
+            Integer quantity = units.get(capacity.getId());
+            if (quantity != null) {
+                added &= addStock(capacity.getProductionDeadline(), capacity.getId(), quantity, false, loadedBefore);
+            }
+        }
+        if (!added) {
+            invalidate();
+        }
+    }
+
+    // The load allocations draw from now, loading the index first if needed. A run notes it when
+    // it starts and draws under it only.
+    public long generation() {
+        ensureLoaded();
+        return generation;
+    }
+
+    // Whether the index is still the load with the given generation
+    public boolean isCurrent(long generation) {
+        return loaded && this.generation == generation;
+    }
+
+    public long availableUpTo(LocalDate date) {
+        ensureLoaded();
+        structure.readLock().lock();
+        try {
+            return prefixUpTo(date);
+        } finally {
+            structure.readLock().unlock();
+        }
+    }
+
+    public long totalAvailable() {
+        ensureLoaded();
+        return totalAvailable.get();
+    }
+
+    public LocalDate earliestStockedDeadline() {
+        ensureLoaded();
+        Map.Entry<LocalDate, DeadlineBucket> first = stocked.firstEntry();
+        return first == null ? null : first.getKey();
+    }
+
+    // Remaining stock per deadline, for strategies that plan a whole pass before drawing; draws
+    // running at the same time can make it stale, allocate() still has the last word
+    public NavigableMap<LocalDate, Long> stockByDeadline() {
+        ensureLoaded();
+        structure.readLock().lock();
+        try {
+            NavigableMap<LocalDate, Long> stock = new TreeMap<>();
+            stocked.forEach((deadline, bucket) -> stock.put(deadline, bucket.total));
+            return stock;
+        } finally {
+            structure.readLock().unlock();
+        }
+    }
+
+    // Takes the quantity from the latest deadlines that are not after the order date, same as
+    // the old loop did. Returns how much was drawn from each capacity id, or an empty map if
+    // there is not enough.
+    public Map<Long, Integer> allocate(LocalDate orderDate, int quantity) {
+        return allocate(orderDate, quantity, generation());
+    }
+
+    // The same, for a run that started under the given load: nothing once the index has been
+    // reloaded, since that load does not know what the run has drawn so far
+    public Map<Long, Integer> allocate(LocalDate orderDate, int quantity, long generation) {
+        if (quantity <= 0) {
+            return Map.of();
+        }
+        ensureLoaded();
+
+        structure.readLock().lock();
+        try {
+            if (this.generation != generation) {
+                return Map.of();
+            }
+            while (true) {
+                if (prefixUpTo(orderDate) < quantity) {
+                    return Map.of();
+                }
+
+                // Plan without locks, then lock the planned buckets and check the plan still holds
+                List<DeadlineBucket> plan = new ArrayList<>();
+                long planned = 0;
+                for (DeadlineBucket bucket : stocked.headMap(orderDate, true).descendingMap().values()) {
+                    plan.add(bucket);
+                    planned += bucket.total;
+                    if (planned >= quantity) {
+                        break;
+                    }
+                }
+                if (planned < quantity) {
+                    continue;
+                }
+
+                List<ReentrantLock> held = lockStripes(plan);
+                try {
+                    long available = 0;
+                    for (DeadlineBucket bucket : plan) {
+                        available += bucket.total;
+                    }
+                    if (available < quantity) {
+                        // Another allocation drew from these buckets in the meantime
+                        continue;
+                    }
+                    return draw(plan, quantity);
+                } finally {
+                    held.forEach(ReentrantLock::unlock);
+                }
+            }
+        } finally {
+            structure.readLock().unlock();
+        }
+    }
+
+    // Drops the in-memory state so the next call reloads it from the database
+    public void invalidate() {
+        structure.writeLock().lock();
+        try {
+            buckets.clear();
+            stocked.clear();
+            deadlines.clear();
+            fenwick = new AtomicLongArray(1);
+            totalAvailable.set(0);
+            loaded = false;
+        } finally {
+            structure.writeLock().unlock();
+        }
+    }
+
+    // Caller holds the stripe locks of every bucket in the plan
+    private Map<Long, Integer> draw(List<DeadlineBucket> plan, int quantity) {
+        Map<Long, Integer> touched = new LinkedHashMap<>();
+        int remainingToFulfill = quantity;
+
+        for (DeadlineBucket bucket : plan) {
+            while (remainingToFulfill > 0 && !bucket.capacities.isEmpty()) {
+                Stock stock = bucket.capacities.peekFirst();
+                int used = Math.min(stock.excess, remainingToFulfill);
+
+                stock.excess -= used;
+                touched.put(stock.capacityId, used);
+                bucket.total -= used;
+                addToFenwick(bucket.index, -used);
+                totalAvailable.addAndGet(-used);
+                remainingToFulfill -= used;
+
+                if (stock.excess == 0) {
+                    bucket.capacities.pollFirst();
+                }
+            }
+
+            if (bucket.capacities.isEmpty()) {
+                stocked.remove(bucket.deadline, bucket);
+            }
+            if (remainingToFulfill == 0) {
+                break;
+            }
+        }
+        return touched;
+    }
+
+    // Always in stripe order, so two allocations never wait on each other crosswise
+    private List<ReentrantLock> lockStripes(List<DeadlineBucket> plan) {
+        TreeSet<Integer> stripeIds = new TreeSet<>();
+        for (DeadlineBucket bucket : plan) {
+            stripeIds.add(bucket.stripe);
+        }
+        List<ReentrantLock> held = new ArrayList<>(stripeIds.size());
+        for (int stripe : stripeIds) {
+            stripes[stripe].lock();
+            held.add(stripes[stripe]);
+        }
+        return held;
+    }
+
+    // A new capacity, or units going back to one that were drawn under the given load. False if
+    // the index would not take them.
+    private boolean addStock(LocalDate deadline, Long capacityId, int units, boolean newCapacity, long drawnUnder) {
+        structure.readLock().lock();
+        try {
+            if (!accepts(capacityId, newCapacity, drawnUnder)) {
+                return false;
+            }
+            DeadlineBucket bucket = buckets.get(deadline);
+            if (bucket != null) {
+                stripes[bucket.stripe].lock();
+                try {
+                    addToBucket(bucket, capacityId, units, !newCapacity);
+                } finally {
+                    stripes[bucket.stripe].unlock();
+                }
+                return true;
+            }
+        } finally {
+            structure.readLock().unlock();
+        }
+
+        structure.writeLock().lock();
+        try {
+            // Checked again, the index may have been reloaded in between
+            if (!accepts(capacityId, newCapacity, drawnUnder)) {
+                return false;
+            }
+            index(deadline, capacityId, units, !newCapacity);
+            return true;
+        } finally {
+            structure.writeLock().unlock();
+        }
+    }
+
+    // False once a load has read the stock from the database: a new capacity is in it already,
+    // units given back were never taken off there. Caller holds a structure lock.
+    private boolean accepts(Long capacityId, boolean newCapacity, long drawnUnder) {
+        if (!loaded) {
+            return false;
+        }
+        return newCapacity ? !deadlines.containsKey(capacityId) : generation == drawnUnder;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        structure.writeLock().lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            for (ProducerCapacity pc : responseRepository.findStockedOrderByDeadline()) {
+                if (pc.getExcessVaccines() > 0) {
+                    index(pc.getProductionDeadline(), pc.getId(), pc.getExcessVaccines(), false);
+                }
+            }
+            generation++;
+            loaded = true;
+        } finally {
+            structure.writeLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock
+    private void index(LocalDate deadline, Long capacityId, int units, boolean merge) {
+        DeadlineBucket bucket = buckets.get(deadline);
+        if (bucket == null) {
+            bucket = new DeadlineBucket(deadline);
+            buckets.put(deadline, bucket);
+            rebuildIndex();
+        }
+        addToBucket(bucket, capacityId, units, merge);
+    }
+
+    // Caller holds the write lock or the bucket's stripe lock. With merge the units go to the
+    // capacity's entry if it still has one; only for units given back, so the scan is rare.
+    private void addToBucket(DeadlineBucket bucket, Long capacityId, int units, boolean merge) {
+        Stock stock = null;
+        if (merge) {
+            for (Stock candidate : bucket.capacities) {
+                if (candidate.capacityId.equals(capacityId)) {
+                    stock = candidate;
+                    break;
+                }
+            }
+        }
+        if (stock != null) {
+            stock.excess += units;
+        } else {
+            bucket.capacities.addLast(new Stock(capacityId, units));
+        }
+        bucket.total += units;
+        addToFenwick(bucket.index, units);
+        totalAvailable.addAndGet(units);
+        stocked.put(bucket.deadline, bucket);
+        deadlines.put(capacityId, bucket.deadline);
+    }
+
+    // A new deadline shifts the positions of the later ones, so the tree is rebuilt; drained
+    // deadlines are dropped at the same time. Deadlines are few compared to orders.
+    private void rebuildIndex() {
+        buckets.values().removeIf(b -> b.index >= 0 && b.total == 0);
+
+        fenwick = new AtomicLongArray(buckets.size() + 1);
+        int i = 0;
+        for (DeadlineBucket bucket : buckets.values()) {
+            bucket.index = i++;
+            if (bucket.total > 0) {
+                addToFenwick(bucket.index, bucket.total);
+            }
+        }
+    }
+
+    private long prefixUpTo(LocalDate date) {
+        Map.Entry<LocalDate, DeadlineBucket> floor = buckets.floorEntry(date);
+        return floor == null ? 0 : prefixSum(floor.getValue().index);
+    }
+
+    private void addToFenwick(int index, long delta) {
+        AtomicLongArray tree = fenwick;
+        for (int i = index + 1; i < tree.length(); i += i & -i) {
+            tree.addAndGet(i, delta);
+        }
+    }
+
+    private long prefixSum(int index) {
+        AtomicLongArray tree = fenwick;
+        long sum = 0;
+        for (int i = index + 1; i > 0; i -= i & -i) {
+            sum += tree.get(i);
+        }
+        return sum;
+    }
+
+    // Copy of a capacity's id and remaining stock, so the index never holds managed entities
+    private static class Stock {
+        private final Long capacityId;
+        private int excess;
+
+        Stock(Long capacityId, int excess) {
+            this.capacityId = capacityId;
+            this.excess = excess;
+        }
+    }
+
+    private static class DeadlineBucket {
+        private final LocalDate deadline;
+        private final int stripe;
+        private final Deque<Stock> capacities = new ArrayDeque<>();
+        private volatile long total;
+        private int index = -1;
+
+        DeadlineBucket(LocalDate deadline) {
+            this.deadline = deadline;
+            this.stripe = (int) Math.floorMod(deadline.toEpochDay(), (long) STRIPES);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.example;
+
+import java.time.LocalDateTime;
+
+// One row of allocation_ledger, with the producer of its capacity
+public class AllocationLedgerEntry {
+
+    private long id;
+    private long runId;
+    private long orderId;
+    private long capacityId;
+    private String producerName;
+    private int quantity;
+    private LocalDateTime allocatedAt;
+
+    public long getId() { return id; }
+    public void setId(long id) { this.id = id; }
+    public long getRunId() { return runId; }
+    public void setRunId(long runId) { this.runId = runId; }
+    public long getOrderId() { return orderId; }
+    public void setOrderId(long orderId) { this.orderId = orderId; }
+    public long getCapacityId() { return capacityId; }
+    public void setCapacityId(long capacityId) { this.capacityId = capacityId; }
+    public String getProducerName() { return producerName; }
+    public void setProducerName(String producerName) { this.producerName = producerName; }
+    public int getQuantity() { return quantity; }
+    public void setQuantity(int quantity) { this.quantity = quantity; }
+    public LocalDateTime getAllocatedAt() { return allocatedAt; }
+    public void setAllocatedAt(LocalDateTime allocatedAt) { this.allocatedAt = allocatedAt; }
+}
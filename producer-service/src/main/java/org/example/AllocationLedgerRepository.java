@@ -0,0 +1,130 @@
+package org.example;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.List;
+import java.util.Map;
+
+// allocation_ledger (see V6): appended to by every allocation run in the run's transaction, read
+// per order, producer and run, and folded into capacity_allocation_snapshots from time to time
+@Repository
+public class AllocationLedgerRepository {
+
+    private static final String INSERT_RUN_SQL =
+        "INSERT INTO allocation_runs (trigger, orders, units) VALUES (?, ?, ?) RETURNING id";
+
+    // One statement per chunk, the entries as three parallel arrays
+    private static final String APPEND_SQL =
+        "INSERT INTO allocation_ledger (run_id, order_id, capacity_id, quantity)"
+            + " SELECT ?, * FROM unnest(?::bigint[], ?::bigint[], ?::int[])";
+
+    private static final String SELECT_ENTRIES =
+        "SELECT l.id, l.run_id, l.order_id, l.capacity_id, c.producer_name, l.quantity, l.allocated_at"
+            + " FROM allocation_ledger l JOIN producer_capacity c ON c.id = l.capacity_id";
+
+    // Inserts wait until the snapshot commits, and the snapshot waits for runs still writing, so
+    // no entry below the watermark can show up after it. Self-conflicting, so two instances do
+    // not fold the same entries twice.
+    private static final String LOCK_SQL = "LOCK TABLE allocation_ledger IN SHARE ROW EXCLUSIVE MODE";
+
+    // Adds the entries since the last snapshot to each capacity's total
+    private static final String SNAPSHOT_SQL =
+        "WITH last AS (SELECT coalesce(max(through_entry_id), 0) AS through FROM capacity_allocation_snapshots),"
+            + " fresh AS (SELECT l.capacity_id, sum(l.quantity) AS quantity"
+            + " FROM allocation_ledger l, last WHERE l.id > last.through AND l.id <= ? GROUP BY l.capacity_id),"
+            + " folded AS (INSERT INTO capacity_allocation_snapshots AS s (capacity_id, allocated_quantity, through_entry_id)"
+            + " SELECT capacity_id, quantity, ? FROM fresh ORDER BY capacity_id"
+            + " ON CONFLICT (capacity_id) DO UPDATE SET allocated_quantity = s.allocated_quantity + EXCLUDED.allocated_quantity,"
+            + " through_entry_id = EXCLUDED.through_entry_id, taken_at = now() RETURNING 1)"
+            + " SELECT count(*) FROM folded";
+
+    private static final String RECONCILE_SQL =
+        "SELECT c.id AS capacity_id, c.producer_name, c.vaccines_quantity, c.excess_vaccines,"
+            + " coalesce(s.allocated_quantity, 0) + coalesce(t.quantity, 0) AS allocated_quantity"
+            + " FROM producer_capacity c"
+            + " LEFT JOIN capacity_allocation_snapshots s ON s.capacity_id = c.id"
+            + " LEFT JOIN LATERAL (SELECT sum(l.quantity) AS quantity FROM allocation_ledger l"
+            + " WHERE l.capacity_id = c.id AND l.id > coalesce(s.through_entry_id, 0)) t ON true"
+            + " WHERE c.vaccines_quantity - coalesce(s.allocated_quantity, 0) - coalesce(t.quantity, 0) <> c.excess_vaccines"
+            + " ORDER BY c.id";
+
+    // What the given runs served to the given orders, per order and capacity; pairs of order and
+    // run ids as two parallel arrays
+    private static final String SERVED_SQL =
+        "SELECT l.order_id, l.capacity_id, sum(l.quantity) AS quantity FROM allocation_ledger l"
+            + " JOIN unnest(?::bigint[], ?::bigint[]) AS r(order_id, run_id) ON r.order_id = l.order_id AND r.run_id = l.run_id"
+            + " GROUP BY l.order_id, l.capacity_id HAVING sum(l.quantity) > 0 ORDER BY l.order_id, l.capacity_id";
+
+    private static final RowMapper<AllocationLedgerEntry> ENTRY = new BeanPropertyRowMapper<>(AllocationLedgerEntry.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${allocation-ledger.batch-size:5000}")
+    private int batchSize;
+
+    // In the run's transaction, next to its deductions; returns the new run id
+    public long append(AllocationRun run) {
+        Long runId = jdbcTemplate.queryForObject(INSERT_RUN_SQL, Long.class, run.getTrigger(),
+            run.getFulfilledOrderIds().size(), run.getUnitsAllocated());
+
+        List<AllocationRun.LedgerEntry> entries = run.getLedgerEntries();
+        for (int from = 0; from < entries.size(); from += batchSize) {
+            List<AllocationRun.LedgerEntry> chunk = entries.subList(from, Math.min(from + batchSize, entries.size()));
+            Long[] orderIds = new Long[chunk.size()];
+            Long[] capacityIds = new Long[chunk.size()];
+            Integer[] quantities = new Integer[chunk.size()];
+            for (int i = 0; i < chunk.size(); i++) {
+                orderIds[i] = chunk.get(i).getOrderId();
+                capacityIds[i] = chunk.get(i).getCapacityId();
+                quantities[i] = chunk.get(i).getQuantity();
+            }
+            jdbcTemplate.update(APPEND_SQL, runId, orderIds, capacityIds, quantities);
+        }
+        return runId;
+    }
+
+    // Order id to the id of the run that served it
+    public List<AllocationRun.LedgerEntry> findServed(Map<Long, Long> runIdsByOrderId) {
+        if (runIdsByOrderId.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query(SERVED_SQL,
+            (rs, rowNum) -> new AllocationRun.LedgerEntry(rs.getLong("order_id"), rs.getLong("capacity_id"), rs.getInt("quantity")),
+            runIdsByOrderId.keySet().toArray(new Long[0]), runIdsByOrderId.values().toArray(new Long[0]));
+    }
+
+    public List<AllocationLedgerEntry> findByOrder(long orderId) {
+        return jdbcTemplate.query(SELECT_ENTRIES + " WHERE l.order_id = ? ORDER BY l.id", ENTRY, orderId);
+    }
+
+    public List<AllocationLedgerEntry> findByRun(long runId) {
+        return jdbcTemplate.query(SELECT_ENTRIES + " WHERE l.run_id = ? ORDER BY l.id", ENTRY, runId);
+    }
+
+    // Newest first
+    public List<AllocationLedgerEntry> findByProducer(String producerName, int limit) {
+        return jdbcTemplate.query(SELECT_ENTRIES + " WHERE c.producer_name = ? ORDER BY l.id DESC LIMIT ?", ENTRY,
+            producerName, limit);
+    }
+
+    // Returns the number of capacities whose snapshot moved
+    @Transactional
+    public int snapshot() {
+        jdbcTemplate.execute(LOCK_SQL);
+        Long watermark = jdbcTemplate.queryForObject("SELECT coalesce(max(id), 0) FROM allocation_ledger", Long.class);
+        Integer folded = jdbcTemplate.queryForObject(SNAPSHOT_SQL, Integer.class, watermark, watermark);
+        return folded != null ? folded : 0;
+    }
+
+    // Capacities whose stored excess_vaccines disagrees with the ledger; empty when all agree
+    @Transactional(readOnly = true)
+    public List<CapacityReconciliation> reconcile() {
+        return jdbcTemplate.query(RECONCILE_SQL, new BeanPropertyRowMapper<>(CapacityReconciliation.class));
+    }
+}
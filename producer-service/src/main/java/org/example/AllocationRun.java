@@ -0,0 +1,139 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// What one allocation pass collected: the stock to deduct, the orders it served in full or in
+// part, the ledger entries saying which capacity served which order, and the counts reported to
+// the metrics once it is done
+public class AllocationRun {
+
+    public static final String FULL = "full";
+    public static final String CAPACITY_REGISTERED = "capacity-registered";
+    public static final String CAPACITY_BATCH = "capacity-batch";
+    public static final String ORDER_CREATED = "order-created";
+    public static final String ORDERS_IMPORTED = "orders-imported";
+    // Not a pass: reverses what passes served to orders ordering-service then turned down
+    public static final String ORDERS_REJECTED = "orders-rejected";
+
+    private final String trigger;
+    // AllocationEngine load the run draws under
+    private final long generation;
+    private final Map<Long, Integer> deductions = new LinkedHashMap<>();
+    private final List<Long> fulfilledOrderIds = new ArrayList<>();
+    // Order id to the fulfilled quantity it reaches, for orders that got part of what is left
+    private final Map<Long, Integer> partialFulfilments = new LinkedHashMap<>();
+    // Order id to the version ordering-service had for it when this run read it, for every order served
+    private final Map<Long, Long> claims = new LinkedHashMap<>();
+    private final List<LedgerEntry> ledgerEntries = new ArrayList<>();
+    private Long runId;
+    private int ordersConsidered;
+    private int ordersSkipped;
+    private long unitsAllocated;
+
+    public AllocationRun(String trigger, long generation) {
+        this.trigger = trigger;
+        this.generation = generation;
+    }
+
+    public void considered() {
+        ordersConsidered++;
+    }
+
+    // Not enough stock on or before the order's delivery date
+    public void skipped() {
+        ordersSkipped++;
+    }
+
+    public void allocated(Order order, int quantity, Map<Long, Integer> touched) {
+        Long orderId = order.getId();
+        touched.forEach((capacityId, used) -> {
+            deductions.merge(capacityId, used, Integer::sum);
+            ledgerEntries.add(new LedgerEntry(orderId, capacityId, used));
+            unitsAllocated += used;
+        });
+        claims.put(orderId, order.getVersion());
+        if (quantity < order.remainingQuantity()) {
+            partialFulfilments.put(orderId, order.getFulfilledQuantity() + quantity);
+        } else {
+            fulfilledOrderIds.add(orderId);
+        }
+    }
+
+    // Units a pass served to an order that never got them: a negative ledger entry. The units
+    // go back to the capacity outside the run, see ProducerService.returnStock.
+    public void reversed(long orderId, long capacityId, int quantity) {
+        ledgerEntries.add(new LedgerEntry(orderId, capacityId, -quantity));
+        unitsAllocated -= quantity;
+    }
+
+    // Takes orders back out of the run before it is written, e.g. ones another run claimed
+    // first. Returns the units they had drawn per capacity id, for the index to get back.
+    public Map<Long, Integer> drop(Collection<Long> orderIds) {
+        Map<Long, Integer> returned = new LinkedHashMap<>();
+        ledgerEntries.removeIf(entry -> {
+            if (!orderIds.contains(entry.getOrderId())) {
+                return false;
+            }
+            returned.merge(entry.getCapacityId(), entry.getQuantity(), Integer::sum);
+            return true;
+        });
+        returned.forEach((capacityId, quantity) -> {
+            deductions.computeIfPresent(capacityId, (id, deducted) -> deducted > quantity ? deducted - quantity : null);
+            unitsAllocated -= quantity;
+        });
+        fulfilledOrderIds.removeAll(orderIds);
+        partialFulfilments.keySet().removeAll(orderIds);
+        claims.keySet().removeAll(orderIds);
+        return returned;
+    }
+
+    public String getTrigger() { return trigger; }
+
+    public long getGeneration() { return generation; }
+
+    public Map<Long, Integer> getDeductions() { return deductions; }
+
+    public List<Long> getFulfilledOrderIds() { return fulfilledOrderIds; }
+
+    public Map<Long, Integer> getPartialFulfilments() { return partialFulfilments; }
+
+    public Map<Long, Long> getClaims() { return claims; }
+
+    public List<LedgerEntry> getLedgerEntries() { return ledgerEntries; }
+
+    // allocation_runs id, once the run has written its ledger entries
+    public Long getRunId() { return runId; }
+
+    public void setRunId(Long runId) { this.runId = runId; }
+
+    public int getOrdersConsidered() { return ordersConsidered; }
+
+    public int getOrdersSkipped() { return ordersSkipped; }
+
+    public long getUnitsAllocated() { return unitsAllocated; }
+
+    public int getCapacitiesTouched() { return deductions.size(); }
+
+    public static class LedgerEntry {
+
+        private final long orderId;
+        private final long capacityId;
+        private final int quantity;
+
+        LedgerEntry(long orderId, long capacityId, int quantity) {
+            this.orderId = orderId;
+            this.capacityId = capacityId;
+            this.quantity = quantity;
+        }
+
+        public long getOrderId() { return orderId; }
+
+        public long getCapacityId() { return capacityId; }
+
+        public int getQuantity() { return quantity; }
+    }
+}
@@ -0,0 +1,257 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// What-if allocation for planners: runs the greedy pass over a SimulationSnapshot with stock
+// added or left out, entirely in memory and without writing anything. Scenarios run in
+// parallel, each on its own copy of the stock; the snapshot is shared and only reloaded once
+// it is older than simulation.snapshot.max-age-ms or on request.
+@Service
+public class AllocationSimulator {
+
+    private static final Logger log = LoggerFactory.getLogger(AllocationSimulator.class);
+
+    @Autowired
+    private ProducerService producerService;
+
+    @Autowired
+    private ProducerResponseRepository responseRepository;
+
+    @Value("${simulation.snapshot.max-age-ms:60000}")
+    private long snapshotMaxAgeMs;
+
+    @Value("${simulation.max-scenarios:100}")
+    private int maxScenarios;
+
+    private final ForkJoinPool pool;
+
+    private volatile SimulationSnapshot snapshot;
+
+    public AllocationSimulator(@Value("${simulation.parallelism:0}") int parallelism) {
+        this.pool = parallelism > 0 ? new ForkJoinPool(parallelism) : ForkJoinPool.commonPool();
+    }
+
+    public SimulationSnapshot getSnapshot() {
+        SimulationSnapshot current = snapshot;
+        if (current != null && current.getTakenAt().plusNanos(TimeUnit.MILLISECONDS.toNanos(snapshotMaxAgeMs))
+                .isAfter(LocalDateTime.now())) {
+            return current;
+        }
+        synchronized (this) {
+            // Another request may have reloaded it while this one waited
+            if (snapshot != current) {
+                return snapshot;
+            }
+            return refreshSnapshot();
+        }
+    }
+
+    // The stock is read after the queue, so a run committing in between can only make the
+    // snapshot look a little short of stock, never serve an order twice
+    public synchronized SimulationSnapshot refreshSnapshot() {
+        long started = System.nanoTime();
+        List<Order> orders = new ArrayList<>();
+        producerService.readAllocationQueue(orders::add);
+        List<ProducerCapacity> capacities = responseRepository.findStockedOrderByDeadline();
+        snapshot = new SimulationSnapshot(orders, capacities, LocalDateTime.now());
+        log.info("allocation.simulation.snapshot orders={} capacities={} durationMs={}", orders.size(),
+            capacities.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return snapshot;
+    }
+
+    public List<SimulationResult> simulate(List<SimulationScenario> scenarios, boolean includeOrders) {
+        if (scenarios == null || scenarios.isEmpty()) {
+            throw new IllegalArgumentException("At least one scenario is required.");
+        }
+        if (scenarios.size() > maxScenarios) {
+            throw new IllegalArgumentException("At most " + maxScenarios + " scenarios per request.");
+        }
+        for (int i = 0; i < scenarios.size(); i++) {
+            SimulationScenario scenario = scenarios.get(i);
+            try {
+                if (scenario == null) {
+                    throw new IllegalArgumentException("Scenario cannot be null.");
+                }
+                if (scenario.getCapacities() != null) {
+                    scenario.getCapacities().forEach(producerService::toCapacity);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Scenario " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+
+        long started = System.nanoTime();
+        SimulationSnapshot current = getSnapshot();
+        List<SimulationResult> results = simulate(current, scenarios, includeOrders);
+        log.info("allocation.simulation scenarios={} orders={} capacities={} durationMs={}", scenarios.size(),
+            current.getOrders(), current.getCapacities(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return results;
+    }
+
+    // The scenarios and the snapshot as it is, all at once on the pool
+    public List<SimulationResult> simulate(SimulationSnapshot snapshot, List<SimulationScenario> scenarios,
+                                           boolean includeOrders) {
+        boolean[][] fulfilled = pool.submit(() -> IntStream.rangeClosed(0, scenarios.size())
+                .parallel()
+                .mapToObj(i -> i == 0 ? allocate(snapshot, null) : allocate(snapshot, scenarios.get(i - 1)))
+                .toArray(boolean[][]::new))
+            .join();
+
+        boolean[] baseline = fulfilled[0];
+        int baselineOrders = 0;
+        long baselineUnits = 0;
+        for (int i = 0; i < baseline.length; i++) {
+            if (baseline[i]) {
+                baselineOrders++;
+                baselineUnits += snapshot.orderQuantities[i];
+            }
+        }
+
+        List<SimulationResult> results = new ArrayList<>(scenarios.size());
+        for (int s = 0; s < scenarios.size(); s++) {
+            results.add(result(snapshot, scenarios.get(s).getName(), fulfilled[s + 1], baselineOrders, baselineUnits,
+                includeOrders));
+        }
+        return results;
+    }
+
+    private static SimulationResult result(SimulationSnapshot snapshot, String name, boolean[] fulfilled,
+                                           int baselineOrders, long baselineUnits, boolean includeOrders) {
+        int regions = snapshot.regions.length;
+        int[] orders = new int[regions];
+        int[] ordersFulfilled = new int[regions];
+        long[] unitsOrdered = new long[regions];
+        long[] unitsAllocated = new long[regions];
+        List<Long> fulfilledOrderIds = includeOrders ? new ArrayList<>() : null;
+        for (int i = 0; i < fulfilled.length; i++) {
+            int region = snapshot.orderRegions[i];
+            orders[region]++;
+            unitsOrdered[region] += snapshot.orderQuantities[i];
+            if (fulfilled[i]) {
+                ordersFulfilled[region]++;
+                unitsAllocated[region] += snapshot.orderQuantities[i];
+                if (includeOrders) {
+                    fulfilledOrderIds.add(snapshot.orderIds[i]);
+                }
+            }
+        }
+
+        List<SimulationResult.RegionProjection> projections = new ArrayList<>(regions);
+        int totalOrders = 0;
+        long totalUnits = 0;
+        for (int r = 0; r < regions; r++) {
+            projections.add(new SimulationResult.RegionProjection(snapshot.regions[r], orders[r], ordersFulfilled[r],
+                unitsOrdered[r], unitsAllocated[r]));
+            totalOrders += ordersFulfilled[r];
+            totalUnits += unitsAllocated[r];
+        }
+        return new SimulationResult(name, totalOrders, totalUnits, totalOrders - baselineOrders,
+            totalUnits - baselineUnits, projections, fulfilledOrderIds);
+    }
+
+    // The pass AllocationEngine makes with allocation.strategy=greedy: each order in queue order
+    // gets its whole quantity from the latest deadlines on or before its delivery date, or
+    // nothing. Stock is kept per deadline day with a Fenwick tree for "how much up to day d" and
+    // a union-find that skips emptied days, so a pass is O(n log k) on the snapshot's arrays.
+    static boolean[] allocate(SimulationSnapshot snapshot, SimulationScenario scenario) {
+        List<ProducerCapacityRequest> added = scenario != null && scenario.getCapacities() != null
+            ? scenario.getCapacities()
+            : List.of();
+        int[] addedDays = new int[added.size()];
+        for (int a = 0; a < addedDays.length; a++) {
+            addedDays[a] = (int) LocalDate.parse(added.get(a).getProductionDeadline()).toEpochDay();
+        }
+        boolean[] excluded = new boolean[snapshot.getProducers()];
+        if (scenario != null && scenario.getExcludedProducers() != null) {
+            for (String producerName : scenario.getExcludedProducers()) {
+                int producer = snapshot.producerIndex(producerName);
+                if (producer >= 0) {
+                    excluded[producer] = true;
+                }
+            }
+        }
+
+        int[] days = IntStream.concat(Arrays.stream(snapshot.capacityDays), Arrays.stream(addedDays))
+            .distinct()
+            .sorted()
+            .toArray();
+        int buckets = days.length;
+        long[] stock = new long[buckets];
+        for (int j = 0; j < snapshot.capacityDays.length; j++) {
+            if (!excluded[snapshot.capacityProducers[j]]) {
+                stock[Arrays.binarySearch(days, snapshot.capacityDays[j])] += snapshot.capacityQuantities[j];
+            }
+        }
+        for (int a = 0; a < addedDays.length; a++) {
+            stock[Arrays.binarySearch(days, addedDays[a])] += added.get(a).getVaccinesQuantity();
+        }
+
+        // 1-based; tree[b + 1] covers bucket b
+        long[] tree = new long[buckets + 1];
+        for (int b = 0; b < buckets; b++) {
+            tree[b + 1] += stock[b];
+            int parent = (b + 1) + ((b + 1) & -(b + 1));
+            if (parent <= buckets) {
+                tree[parent] += tree[b + 1];
+            }
+        }
+        // next[b + 1] leads to the latest bucket at or before b that still has stock; 0 is none
+        int[] next = new int[buckets + 1];
+        for (int b = 0; b < buckets; b++) {
+            next[b + 1] = stock[b] > 0 ? b + 1 : b;
+        }
+
+        boolean[] fulfilled = new boolean[snapshot.orderIds.length];
+        for (int i = 0; i < fulfilled.length; i++) {
+            int need = snapshot.orderQuantities[i];
+            int found = Arrays.binarySearch(days, snapshot.orderDays[i]);
+            int last = found >= 0 ? found : -found - 2;
+            if (need <= 0 || last < 0 || prefix(tree, last) < need) {
+                continue;
+            }
+            while (need > 0) {
+                int b = find(next, last + 1) - 1;
+                long take = Math.min(stock[b], need);
+                stock[b] -= take;
+                need -= (int) take;
+                for (int x = b + 1; x <= buckets; x += x & -x) {
+                    tree[x] -= take;
+                }
+                if (stock[b] == 0) {
+                    next[b + 1] = b;
+                }
+            }
+            fulfilled[i] = true;
+        }
+        return fulfilled;
+    }
+
+    private static long prefix(long[] tree, int bucket) {
+        long sum = 0;
+        for (int x = bucket + 1; x > 0; x -= x & -x) {
+            sum += tree[x];
+        }
+        return sum;
+    }
+
+    // With path halving
+    private static int find(int[] next, int x) {
+        while (next[x] != x) {
+            next[x] = next[next[x]];
+            x = next[x];
+        }
+        return x;
+    }
+}
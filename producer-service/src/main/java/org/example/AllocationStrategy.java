@@ -0,0 +1,27 @@
+package org.example;
+
+import java.util.function.Consumer;
+
+// Decides which orders of an allocation pass get stock. ProducerService hands over the orders
+// in queue order (Priority first, then delivery date, quantity and id) and an Allocator that
+// draws from the AllocationEngine and records the result in the run. Selected with
+// allocation.strategy, by bean name.
+public interface AllocationStrategy {
+
+    // Calls the consumer once per queued order; for the allocation queue that is while the
+    // response from ordering-service is still being read
+    void allocate(Consumer<Consumer<Order>> queue, Allocator allocator);
+
+    interface Allocator {
+
+        // Another run has drawn stock for the order already
+        boolean isClaimed(Order order);
+
+        // Draws the units for the order, fewer than its remaining quantity for a partial
+        // allocation; false if the order is claimed or the stock is not there (any more)
+        boolean serve(Order order, int quantity);
+
+        // Counts an order the strategy decided not to serve
+        void skip(Order order);
+    }
+}
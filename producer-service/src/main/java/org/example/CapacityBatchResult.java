@@ -0,0 +1,39 @@
+package org.example;
+
+import java.util.List;
+import java.util.Map;
+
+// What POST /api/producers/capacities/batch stored and what its allocation pass served
+public class CapacityBatchResult {
+    private final List<ProducerCapacity> capacities;
+    private final long vaccinesRegistered;
+    private final int ordersConsidered;
+    private final int ordersSkipped;
+    private final long unitsAllocated;
+    private final List<Long> fulfilledOrderIds;
+    private final Map<Long, Integer> partialFulfilments;
+    // Null when the pass served nothing
+    private final Long runId;
+
+    public CapacityBatchResult(List<ProducerCapacity> capacities, AllocationRun run) {
+        this.capacities = capacities;
+        this.vaccinesRegistered = capacities.stream().mapToLong(ProducerCapacity::getVaccinesQuantity).sum();
+        this.ordersConsidered = run.getOrdersConsidered();
+        this.ordersSkipped = run.getOrdersSkipped();
+        this.unitsAllocated = run.getUnitsAllocated();
+        this.fulfilledOrderIds = run.getFulfilledOrderIds();
+        this.partialFulfilments = run.getPartialFulfilments();
+        this.runId = run.getRunId();
+    }
+
+    public List<ProducerCapacity> getCapacities() { return capacities; }
+    public long getVaccinesRegistered() { return vaccinesRegistered; }
+    public int getOrdersConsidered() { return ordersConsidered; }
+    public int getOrdersFulfilled() { return fulfilledOrderIds.size(); }
+    public int getOrdersSkipped() { return ordersSkipped; }
+    public long getUnitsAllocated() { return unitsAllocated; }
+    public List<Long> getFulfilledOrderIds() { return fulfilledOrderIds; }
+    // Order id to its fulfilled quantity after the pass, for orders served in part
+    public Map<Long, Integer> getPartialFulfilments() { return partialFulfilments; }
+    public Long getRunId() { return runId; }
+}
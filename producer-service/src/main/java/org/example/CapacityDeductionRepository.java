@@ -0,0 +1,64 @@
+package org.example;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Repository
+public class CapacityDeductionRepository {
+
+    private static final String RESTORE_SQL =
+        "UPDATE producer_capacity SET excess_vaccines = excess_vaccines + ?, version = version + 1 WHERE id = ?";
+
+    // Never takes a row below zero, whatever the in-memory index believed
+    private static final String DEDUCT_SQL =
+        "UPDATE producer_capacity SET excess_vaccines = excess_vaccines - ?, version = version + 1"
+            + " WHERE id = ? AND excess_vaccines >= ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Writes all deductions of an allocation run as one JDBC batch. A row without enough stock
+    // left fails the whole run, which rolls back and rebuilds the index from the database.
+    // Only capacity ids are known here, so every producer's cached list is evicted. Rows are
+    // updated in id order, so concurrent runs lock them the same way round and never deadlock.
+    @CacheEvict(cacheNames = CacheConfig.CAPACITIES_BY_PRODUCER, allEntries = true)
+    public void deductAll(Map<Long, Integer> deductionsByCapacityId) {
+        if (deductionsByCapacityId.isEmpty()) {
+            return;
+        }
+
+        List<Long> ids = new ArrayList<>(deductionsByCapacityId.size());
+        List<Object[]> args = new ArrayList<>(deductionsByCapacityId.size());
+        new TreeMap<>(deductionsByCapacityId).forEach((id, quantity) -> {
+            ids.add(id);
+            args.add(new Object[] { quantity, id, quantity });
+        });
+
+        int[] updated = jdbcTemplate.batchUpdate(DEDUCT_SQL, args);
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                throw new OptimisticLockingFailureException(
+                    "Producer capacity " + ids.get(i) + " no longer has enough excess vaccines");
+            }
+        }
+    }
+
+    // Gives units back, the other way round from deductAll and in the same order
+    @CacheEvict(cacheNames = CacheConfig.CAPACITIES_BY_PRODUCER, allEntries = true)
+    public void restoreAll(Map<Long, Integer> unitsByCapacityId) {
+        if (unitsByCapacityId.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> args = new ArrayList<>(unitsByCapacityId.size());
+        new TreeMap<>(unitsByCapacityId).forEach((id, quantity) -> args.add(new Object[] { quantity, id }));
+        jdbcTemplate.batchUpdate(RESTORE_SQL, args);
+    }
+}
@@ -0,0 +1,25 @@
+package org.example;
+
+// A capacity whose excess_vaccines does not match what the ledger says it has served
+public class CapacityReconciliation {
+
+    private long capacityId;
+    private String producerName;
+    private int vaccinesQuantity;
+    private int excessVaccines;
+    private long allocatedQuantity;
+
+    public long getCapacityId() { return capacityId; }
+    public void setCapacityId(long capacityId) { this.capacityId = capacityId; }
+    public String getProducerName() { return producerName; }
+    public void setProducerName(String producerName) { this.producerName = producerName; }
+    public int getVaccinesQuantity() { return vaccinesQuantity; }
+    public void setVaccinesQuantity(int vaccinesQuantity) { this.vaccinesQuantity = vaccinesQuantity; }
+    public int getExcessVaccines() { return excessVaccines; }
+    public void setExcessVaccines(int excessVaccines) { this.excessVaccines = excessVaccines; }
+    // Snapshot plus the entries after it
+    public long getAllocatedQuantity() { return allocatedQuantity; }
+    public void setAllocatedQuantity(long allocatedQuantity) { this.allocatedQuantity = allocatedQuantity; }
+
+    public long getLedgerExcessVaccines() { return vaccinesQuantity - allocatedQuantity; }
+}
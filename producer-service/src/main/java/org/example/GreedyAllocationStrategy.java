@@ -0,0 +1,18 @@
+package org.example;
+
+import org.springframework.stereotype.Component;
+import java.util.function.Consumer;
+
+// Each order in queue order gets its whole remaining quantity if the stock on or before its
+// delivery date still covers it, and is skipped otherwise. Streams the queue, so memory stays
+// flat however long it is.
+@Component(GreedyAllocationStrategy.NAME)
+public class GreedyAllocationStrategy implements AllocationStrategy {
+
+    public static final String NAME = "greedy";
+
+    @Override
+    public void allocate(Consumer<Consumer<Order>> queue, Allocator allocator) {
+        queue.accept(order -> allocator.serve(order, order.remainingQuantity()));
+    }
+}
@@ -0,0 +1,114 @@
+package org.example;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import io.netty.channel.ChannelOption;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import java.time.Duration;
+
+// Client side of the calls to ordering-service: one keep-alive connection pool with timeouts,
+// shared by every caller instead of a new connection (and no timeout) per request
+@Configuration
+public class HttpClientConfig {
+
+    @Value("${inter-service.http.max-connections:200}")
+    private int maxConnections;
+
+    @Value("${inter-service.http.max-connections-per-host:50}")
+    private int maxConnectionsPerHost;
+
+    @Value("${inter-service.http.connect-timeout-ms:2000}")
+    private int connectTimeoutMs;
+
+    // Time between two packets, so long NDJSON streams are fine as long as they keep flowing
+    @Value("${inter-service.http.read-timeout-ms:30000}")
+    private int readTimeoutMs;
+
+    // How long a caller waits for a free pooled connection
+    @Value("${inter-service.http.pool-acquire-timeout-ms:5000}")
+    private int poolAcquireTimeoutMs;
+
+    // Below Tomcat's keep-alive timeout (20s), so the pool drops idle connections before the server does
+    @Value("${inter-service.http.idle-timeout-ms:15000}")
+    private int idleTimeoutMs;
+
+    // HTTP/2 over cleartext for the WebClient, falling back to HTTP/1.1 if the peer does not upgrade
+    @Value("${inter-service.http.web-client.h2c:true}")
+    private boolean webClientH2c;
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager interServiceConnectionManager(MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(maxConnections)
+            .setMaxConnPerRoute(maxConnectionsPerHost)
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                .build())
+            .build();
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "ordering").bindTo(meterRegistry);
+        return connectionManager;
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient interServiceHttpClient(PoolingHttpClientConnectionManager connectionManager) {
+        return HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolAcquireTimeoutMs))
+                .build())
+            .evictExpiredConnections()
+            .evictIdleConnections(TimeValue.ofMilliseconds(idleTimeoutMs))
+            .build();
+    }
+
+    // Built from Boot's builder so every call is timed under http.client.requests, tagged with
+    // the URI template rather than the expanded URL
+    @Bean
+    public RestTemplate restTemplate(RestTemplateBuilder restTemplateBuilder, CloseableHttpClient interServiceHttpClient) {
+        return restTemplateBuilder
+            .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(interServiceHttpClient))
+            .build();
+    }
+
+    // Non-blocking variant on Reactor Netty, with the same limits and timeouts
+    @Bean
+    public WebClient interServiceWebClient(WebClient.Builder webClientBuilder) {
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("ordering")
+            .maxConnections(maxConnections)
+            .pendingAcquireTimeout(Duration.ofMillis(poolAcquireTimeoutMs))
+            .maxIdleTime(Duration.ofMillis(idleTimeoutMs))
+            .metrics(true)
+            .build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+            .protocol(webClientH2c
+                ? new HttpProtocol[] { HttpProtocol.H2C, HttpProtocol.HTTP11 }
+                : new HttpProtocol[] { HttpProtocol.HTTP11 })
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+            .responseTimeout(Duration.ofMillis(readTimeoutMs));
+
+        return webClientBuilder
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .build();
+    }
+}
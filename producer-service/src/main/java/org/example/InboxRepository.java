@@ -0,0 +1,38 @@
+package org.example;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public class InboxRepository {
+
+    private static final String CLAIM_SQL =
+        "INSERT INTO ordering_inbox (event_id) SELECT unnest(?::bigint[]) ON CONFLICT DO NOTHING RETURNING event_id";
+
+    private static final String DELETE_PROCESSED_SQL =
+        "DELETE FROM ordering_inbox WHERE event_id IN (SELECT event_id FROM ordering_inbox"
+            + " WHERE processed_at < ? ORDER BY event_id LIMIT ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Records the ids in the current transaction and returns the ones not seen before.
+    // A concurrent redelivery of the same ids waits on the row locks and gets nothing back.
+    public List<Long> claim(List<Long> eventIds) {
+        if (eventIds.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.queryForList(CLAIM_SQL, Long.class, (Object) eventIds.toArray(new Long[0]));
+    }
+
+    // Up to limit ids processed before the cutoff, for OutboxRetentionJob. Ordering-service only
+    // redelivers events it has not marked published, which it does within seconds.
+    @Transactional
+    public int deleteProcessedBefore(LocalDateTime before, int limit) {
+        return jdbcTemplate.update(DELETE_PROCESSED_SQL, before, limit);
+    }
+}
@@ -0,0 +1,30 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Folds new allocation_ledger entries into capacity_allocation_snapshots, so deriving a
+// capacity's stock from the ledger only has to add up the entries since the last run
+@Component
+public class LedgerSnapshotJob {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerSnapshotJob.class);
+
+    @Autowired
+    private AllocationLedgerRepository allocationLedgerRepository;
+
+    @Scheduled(fixedDelayString = "${allocation-ledger.snapshot-interval-ms:300000}")
+    public void snapshot() {
+        try {
+            int capacities = allocationLedgerRepository.snapshot();
+            if (capacities > 0) {
+                log.info("allocation.ledger.snapshot capacities={}", capacities);
+            }
+        } catch (Exception e) {
+            log.error("Failed to snapshot the allocation ledger, will retry", e);
+        }
+    }
+}
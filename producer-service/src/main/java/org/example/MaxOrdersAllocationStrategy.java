@@ -0,0 +1,379 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+// Serves as many orders of the pass as the stock allows, instead of letting a big order early in
+// the queue take the stock many smaller ones could have shared.
+//
+// Stock with deadline t can serve every order due on or after t, so the orders due between two
+// stocked deadlines t_k and t_k+1 (group k) can use the stock up to t_k and nothing later. A set
+// of orders can be served in full exactly when, for every k, groups 0..k need no more than the
+// stock up to t_k. That is Moore-Hodgson's scheduling problem: add the groups in deadline order,
+// and whenever the demand so far is more than the stock so far, drop the largest order taken so
+// far. Priority orders come first: the most Priority orders that fit are chosen on their own,
+// then kept while Pending orders fill up the rest.
+//
+// The chosen orders are drawn in group order, which the engine can always serve for a set that
+// fits. With allocation.solver.partial, the stock left over then goes to the dropped orders in
+// queue order, as much as each one can get without taking it from a chosen one.
+//
+// The groups are sorted in parallel (fork-join, one task per range of deadline buckets); the
+// selection itself is a sequential O(n log k) pass. A pass that does not finish within
+// allocation.solver.time-budget-ms falls back to the greedy order.
+@Component(MaxOrdersAllocationStrategy.NAME)
+public class MaxOrdersAllocationStrategy implements AllocationStrategy {
+
+    public static final String NAME = "max-orders";
+
+    private static final Logger log = LoggerFactory.getLogger(MaxOrdersAllocationStrategy.class);
+
+    // Buckets per fork-join leaf
+    private static final int BUCKETS_PER_TASK = 8;
+
+    private final AllocationEngine allocationEngine;
+    private final long timeBudgetNanos;
+    private final boolean partial;
+    private final ForkJoinPool pool;
+
+    public MaxOrdersAllocationStrategy(AllocationEngine allocationEngine,
+                                       @Value("${allocation.solver.time-budget-ms:2000}") long timeBudgetMs,
+                                       @Value("${allocation.solver.parallelism:0}") int parallelism,
+                                       @Value("${allocation.solver.partial:false}") boolean partial) {
+        this.allocationEngine = allocationEngine;
+        this.timeBudgetNanos = TimeUnit.MILLISECONDS.toNanos(timeBudgetMs);
+        this.partial = partial;
+        this.pool = parallelism > 0 ? new ForkJoinPool(parallelism) : ForkJoinPool.commonPool();
+    }
+
+    @Override
+    public void allocate(Consumer<Consumer<Order>> queue, Allocator allocator) {
+        List<Order> orders = new ArrayList<>();
+        queue.accept(order -> {
+            if (!allocator.isClaimed(order) && order.remainingQuantity() > 0) {
+                orders.add(order);
+            }
+        });
+        if (orders.isEmpty()) {
+            return;
+        }
+
+        long started = System.nanoTime();
+        int[] units;
+        try {
+            units = plan(orders, allocationEngine.stockByDeadline(), started + timeBudgetNanos);
+        } catch (TimeoutException e) {
+            log.warn("allocation.solver fallback=greedy orders={} budgetMs={}", orders.size(),
+                TimeUnit.NANOSECONDS.toMillis(timeBudgetNanos));
+            orders.forEach(order -> allocator.serve(order, order.remainingQuantity()));
+            return;
+        }
+
+        int[] drawOrder = drawOrder(orders, units);
+        for (int i : drawOrder) {
+            allocator.serve(orders.get(i), units[i]);
+        }
+        for (int i = 0; i < units.length; i++) {
+            if (units[i] == 0) {
+                allocator.skip(orders.get(i));
+            }
+        }
+        log.info("allocation.solver orders={} served={} planMs={}", orders.size(), drawOrder.length,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    // Units per order (index into orders), 0 for the ones left out
+    int[] plan(List<Order> orders, NavigableMap<LocalDate, Long> stock, long deadline) throws TimeoutException {
+        int n = orders.size();
+        int[] units = new int[n];
+        LocalDate[] deadlines = stock.keySet().toArray(new LocalDate[0]);
+        int buckets = deadlines.length;
+        if (buckets == 0) {
+            return units;
+        }
+        long[] supply = new long[buckets];
+        long total = 0;
+        int k = 0;
+        for (long quantity : stock.values()) {
+            total += quantity;
+            supply[k++] = total;
+        }
+
+        // Orders due before the first stocked deadline have group -1 and cannot be served
+        int[] group = new int[n];
+        int[] priorityCount = new int[buckets];
+        int[] pendingCount = new int[buckets];
+        for (int i = 0; i < n; i++) {
+            Order order = orders.get(i);
+            group[i] = floor(deadlines, order.getExpectedDeliveryTime());
+            if (group[i] >= 0) {
+                if ("Priority".equals(order.getStatus())) {
+                    priorityCount[group[i]]++;
+                } else {
+                    pendingCount[group[i]]++;
+                }
+            }
+        }
+        long[][] priority = new long[buckets][];
+        long[][] pending = new long[buckets][];
+        for (int g = 0; g < buckets; g++) {
+            priority[g] = new long[priorityCount[g]];
+            pending[g] = new long[pendingCount[g]];
+        }
+        Arrays.fill(priorityCount, 0);
+        Arrays.fill(pendingCount, 0);
+        for (int i = 0; i < n; i++) {
+            int g = group[i];
+            if (g < 0) {
+                continue;
+            }
+            long key = key(orders.get(i).remainingQuantity(), i);
+            if ("Priority".equals(orders.get(i).getStatus())) {
+                priority[g][priorityCount[g]++] = key;
+            } else {
+                pending[g][pendingCount[g]++] = key;
+            }
+        }
+        sortBuckets(priority, pending, deadline);
+
+        // Priority orders on their own, then Pending ones around the Priority orders that fit
+        long[] none = new long[buckets];
+        int[] priorityKept = select(priority, none, supply, deadline);
+        long[] pinned = new long[buckets];
+        for (int g = 0; g < buckets; g++) {
+            for (int j = 0; j < priorityKept[g]; j++) {
+                int i = index(priority[g][j]);
+                units[i] = orders.get(i).remainingQuantity();
+                pinned[g] += units[i];
+            }
+        }
+        int[] pendingKept = select(pending, pinned, supply, deadline);
+        long[] used = pinned;
+        for (int g = 0; g < buckets; g++) {
+            for (int j = 0; j < pendingKept[g]; j++) {
+                int i = index(pending[g][j]);
+                units[i] = orders.get(i).remainingQuantity();
+                used[g] += units[i];
+            }
+        }
+
+        if (partial) {
+            fillPartially(orders, group, units, supply, used);
+        }
+        return units;
+    }
+
+    // Moore-Hodgson over the groups. Each group's candidates are sorted by quantity, so the orders
+    // dropped from a group are always the top of its array and what is kept is a prefix: returns
+    // that prefix's length per group. pinned is demand that may not be dropped.
+    private static int[] select(long[][] candidates, long[] pinned, long[] supply, long deadline) throws TimeoutException {
+        int buckets = supply.length;
+        int[] kept = new int[buckets];
+        // Groups by the quantity of the largest order they still have in
+        PriorityQueue<Integer> largest = new PriorityQueue<>(
+            (a, b) -> Long.compare(candidates[b][kept[b] - 1], candidates[a][kept[a] - 1]));
+
+        long demand = 0;
+        for (int g = 0; g < buckets; g++) {
+            demand += pinned[g];
+            for (long key : candidates[g]) {
+                demand += quantity(key);
+            }
+            kept[g] = candidates[g].length;
+            if (kept[g] > 0) {
+                largest.add(g);
+            }
+            while (demand > supply[g] && !largest.isEmpty()) {
+                int top = largest.poll();
+                demand -= quantity(candidates[top][--kept[top]]);
+                if (kept[top] > 0) {
+                    largest.add(top);
+                }
+            }
+            if ((g & 63) == 0 && System.nanoTime() > deadline) {
+                throw new TimeoutException();
+            }
+        }
+        return kept;
+    }
+
+    // The spare stock of a group is what it has left after everything up to it; an order of group
+    // g can get at most the smallest spare stock of groups g and later
+    private static void fillPartially(List<Order> orders, int[] group, int[] units, long[] supply, long[] used) {
+        int buckets = supply.length;
+        long[] spare = new long[buckets];
+        long demand = 0;
+        for (int g = 0; g < buckets; g++) {
+            demand += used[g];
+            spare[g] = supply[g] - demand;
+        }
+        MinTree tree = new MinTree(spare);
+        for (int i = 0; i < units.length; i++) {
+            if (units[i] > 0 || group[i] < 0) {
+                continue;
+            }
+            long available = tree.min(group[i], buckets - 1);
+            int quantity = (int) Math.min(available, orders.get(i).remainingQuantity());
+            if (quantity > 0) {
+                units[i] = quantity;
+                tree.add(group[i], buckets - 1, -quantity);
+            }
+        }
+    }
+
+    // Orders with units, by group and then queue position
+    private static int[] drawOrder(List<Order> orders, int[] units) {
+        int count = 0;
+        for (int quantity : units) {
+            if (quantity > 0) {
+                count++;
+            }
+        }
+        long[] keys = new long[count];
+        int k = 0;
+        for (int i = 0; i < units.length; i++) {
+            if (units[i] > 0) {
+                keys[k++] = ((long) orders.get(i).getExpectedDeliveryTime().toEpochDay() << 32) | i;
+            }
+        }
+        Arrays.sort(keys);
+        int[] drawOrder = new int[count];
+        for (int j = 0; j < count; j++) {
+            drawOrder[j] = index(keys[j]);
+        }
+        return drawOrder;
+    }
+
+    private void sortBuckets(long[][] priority, long[][] pending, long deadline) throws TimeoutException {
+        try {
+            pool.submit(new SortBuckets(priority, pending, 0, priority.length))
+                .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutException();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Sorting the deadline buckets failed", e.getCause());
+        }
+    }
+
+    // Index of the latest deadline on or before the date, -1 if there is none
+    private static int floor(LocalDate[] deadlines, LocalDate date) {
+        int found = Arrays.binarySearch(deadlines, date);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    // Quantity in the high half, so sorting the keys sorts by quantity, then queue position
+    private static long key(int quantity, int index) {
+        return ((long) quantity << 32) | index;
+    }
+
+    private static int quantity(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int index(long key) {
+        return (int) key;
+    }
+
+    private static class SortBuckets extends RecursiveAction {
+
+        private final long[][] priority;
+        private final long[][] pending;
+        private final int from;
+        private final int to;
+
+        SortBuckets(long[][] priority, long[][] pending, int from, int to) {
+            this.priority = priority;
+            this.pending = pending;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BUCKETS_PER_TASK) {
+                for (int g = from; g < to; g++) {
+                    Arrays.sort(priority[g]);
+                    Arrays.sort(pending[g]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SortBuckets(priority, pending, from, middle), new SortBuckets(priority, pending, middle, to));
+        }
+    }
+
+    // Range add, range minimum
+    private static class MinTree {
+
+        private final int size;
+        private final long[] min;
+        private final long[] pending;
+
+        MinTree(long[] values) {
+            size = values.length;
+            min = new long[4 * size];
+            pending = new long[4 * size];
+            build(1, 0, size - 1, values);
+        }
+
+        long min(int from, int to) {
+            return min(1, 0, size - 1, from, to);
+        }
+
+        void add(int from, int to, long delta) {
+            add(1, 0, size - 1, from, to, delta);
+        }
+
+        private void build(int node, int lo, int hi, long[] values) {
+            if (lo == hi) {
+                min[node] = values[lo];
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            build(2 * node, lo, mid, values);
+            build(2 * node + 1, mid + 1, hi, values);
+            min[node] = Math.min(min[2 * node], min[2 * node + 1]);
+        }
+
+        private long min(int node, int lo, int hi, int from, int to) {
+            if (to < lo || hi < from) {
+                return Long.MAX_VALUE;
+            }
+            if (from <= lo && hi <= to) {
+                return min[node];
+            }
+            int mid = (lo + hi) >>> 1;
+            return pending[node] + Math.min(min(2 * node, lo, mid, from, to), min(2 * node + 1, mid + 1, hi, from, to));
+        }
+
+        private void add(int node, int lo, int hi, int from, int to, long delta) {
+            if (to < lo || hi < from) {
+                return;
+            }
+            if (from <= lo && hi <= to) {
+                min[node] += delta;
+                pending[node] += delta;
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            add(2 * node, lo, mid, from, to, delta);
+            add(2 * node + 1, mid + 1, hi, from, to, delta);
+            min[node] = pending[node] + Math.min(min[2 * node], min[2 * node + 1]);
+        }
+    }
+}
@@ -1,20 +1,40 @@
 package org.example;
 
+import java.time.LocalDate;
+
 public class Order {
     private Long id;
+    private String region;
     private String status;
-    private String expectedDeliveryTime;
+    private LocalDate expectedDeliveryTime;
     private int vaccineQuantity;
+    private int fulfilledQuantity;
+    private long version;
 
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
 
+    public String getRegion() { return region; }
+    public void setRegion(String region) { this.region = region; }
+
     public String getStatus() { return status; }
     public void setStatus(String status) { this.status = status; }
 
-    public String getExpectedDeliveryTime() { return expectedDeliveryTime; }
-    public void setExpectedDeliveryTime(String expectedDeliveryTime) { this.expectedDeliveryTime = expectedDeliveryTime; }
+    public LocalDate getExpectedDeliveryTime() { return expectedDeliveryTime; }
+    public void setExpectedDeliveryTime(LocalDate expectedDeliveryTime) { this.expectedDeliveryTime = expectedDeliveryTime; }
 
     public int getVaccineQuantity() { return vaccineQuantity; }
     public void setVaccineQuantity(int vaccineQuantity) { this.vaccineQuantity = vaccineQuantity; }
+
+    // Units earlier partial allocations already delivered
+    public int getFulfilledQuantity() { return fulfilledQuantity; }
+    public void setFulfilledQuantity(int fulfilledQuantity) { this.fulfilledQuantity = fulfilledQuantity; }
+
+    // Raised by ordering-service on every change to the order, so a claim on it (see
+    // AllocatedOrderRepository) only covers the state the run saw
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+
+    // What an allocation still has to serve; not a property, so it stays out of the JSON
+    public int remainingQuantity() { return vaccineQuantity - fulfilledQuantity; }
 }
\ No newline at end of file
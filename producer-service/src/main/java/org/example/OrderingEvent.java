@@ -0,0 +1,18 @@
+package org.example;
+
+// An ordering-service outbox row as it arrives at POST /api/producers/events
+public class OrderingEvent {
+    private Long id;
+    private String eventType;
+    private Long aggregateId;
+    private String payload;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getEventType() { return eventType; }
+    public void setEventType(String eventType) { this.eventType = eventType; }
+    public Long getAggregateId() { return aggregateId; }
+    public void setAggregateId(Long aggregateId) { this.aggregateId = aggregateId; }
+    public String getPayload() { return payload; }
+    public void setPayload(String payload) { this.payload = payload; }
+}
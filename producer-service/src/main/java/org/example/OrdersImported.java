@@ -0,0 +1,15 @@
+package org.example;
+
+import java.time.LocalDate;
+
+// Payload of ordering-service's OrdersImported event: a bulk import whose orders all have a
+// delivery date on or after fromDate
+public class OrdersImported {
+    private LocalDate fromDate;
+    private int orders;
+
+    public LocalDate getFromDate() { return fromDate; }
+    public void setFromDate(LocalDate fromDate) { this.fromDate = fromDate; }
+    public int getOrders() { return orders; }
+    public void setOrders(int orders) { this.orders = orders; }
+}
@@ -0,0 +1,50 @@
+package org.example;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+     // Unpublished events that are not dead-lettered and not waiting out a failed attempt
+     @Query("SELECT e FROM OutboxEvent e WHERE e.publishedAt IS NULL AND e.deadLetteredAt IS NULL"
+          + " AND (e.nextAttemptAt IS NULL OR e.nextAttemptAt <= :now) ORDER BY e.id")
+     List<OutboxEvent> findRelayable(@Param("now") LocalDateTime now, Limit limit);
+
+     // Whoever runs an event's pass takes its row first and marks it published in the same
+     // transaction; a row someone else holds or has published is left out
+     @Query(value = "SELECT id FROM producer_outbox WHERE id IN (:ids) AND published_at IS NULL"
+          + " ORDER BY id FOR UPDATE SKIP LOCKED", nativeQuery = true)
+     List<Long> lockUnpublished(@Param("ids") List<Long> ids);
+
+     @Modifying
+     @Query("UPDATE OutboxEvent e SET e.publishedAt = :publishedAt WHERE e.id IN :ids")
+     int markPublished(@Param("ids") List<Long> ids, @Param("publishedAt") LocalDateTime publishedAt);
+
+     // Backs off twice as long after every failed attempt, up to maxBackoffMs; the attempt that
+     // reaches maxAttempts dead-letters the event
+     @Modifying
+     @Query(value = "UPDATE producer_outbox SET attempts = attempts + 1, last_error = :error,"
+          + " next_attempt_at = now() + least(:maxBackoffMs, :backoffMs * power(2, attempts)) * interval '1 millisecond',"
+          + " dead_lettered_at = CASE WHEN attempts + 1 >= :maxAttempts THEN now() END"
+          + " WHERE id IN (:ids)", nativeQuery = true)
+     int recordFailure(@Param("ids") List<Long> ids, @Param("error") String error, @Param("backoffMs") long backoffMs,
+                       @Param("maxBackoffMs") long maxBackoffMs, @Param("maxAttempts") int maxAttempts);
+
+     @Modifying
+     @Query(value = "UPDATE producer_outbox SET attempts = attempts + 1, last_error = :error, dead_lettered_at = now()"
+          + " WHERE id IN (:ids)", nativeQuery = true)
+     int deadLetter(@Param("ids") List<Long> ids, @Param("error") String error);
+
+     // Up to limit events published before the cutoff, for OutboxRetentionJob
+     @Modifying
+     @Transactional
+     @Query(value = "DELETE FROM producer_outbox WHERE id IN (SELECT id FROM producer_outbox"
+          + " WHERE published_at < :before ORDER BY id LIMIT :limit)", nativeQuery = true)
+     int deletePublishedBefore(@Param("before") LocalDateTime before, @Param("limit") int limit);
+}
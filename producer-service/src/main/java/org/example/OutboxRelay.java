@@ -0,0 +1,217 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Drains producer_outbox in id order. CapacityRegistered is consumed locally (an allocation
+// pass that marks the events in its own transaction), OrdersPartiallyFulfilled and
+// OrdersFulfilled go to ordering-service as one bulk call each per batch. Each type is relayed
+// on its own: a failed call backs its events off and counts an attempt against them, and an
+// event is dead-lettered once it has used up its attempts or if its payload cannot be read.
+@Component
+public class OutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private static final String ORDERING_FULFILL_URL = "http://ordering:8081/api/orders/fulfill";
+    private static final String ORDERING_FULFILL_PARTIAL_URL = "http://ordering:8081/api/orders/fulfill-partial";
+
+    private static final List<String> RELAYED_TYPES = List.of(
+        OutboxEvent.CAPACITY_REGISTERED, OutboxEvent.ORDERS_PARTIALLY_FULFILLED, OutboxEvent.ORDERS_FULFILLED);
+
+    private static final int MAX_ERROR_LENGTH = 2000;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private ProducerService producerService;
+
+    @Autowired
+    private AllocatedOrderRepository allocatedOrderRepository;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${outbox.relay.batch-size:500}")
+    private int batchSize;
+
+    @Value("${outbox.relay.max-attempts:20}")
+    private int maxAttempts;
+
+    @Value("${outbox.relay.retry-backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    @Value("${outbox.relay.max-backoff-ms:300000}")
+    private long maxBackoffMs;
+
+    @Scheduled(fixedDelayString = "${outbox.relay.interval-ms:1000}")
+    public void relay() {
+        try {
+            List<OutboxEvent> batch;
+            boolean relayed;
+            do {
+                batch = outboxEventRepository.findRelayable(LocalDateTime.now(), Limit.of(batchSize));
+
+                relayed = relay(batch, OutboxEvent.CAPACITY_REGISTERED, new TypeReference<ProducerCapacity>() {},
+                    payloads -> producerService.onCapacitiesRegistered(List.copyOf(payloads.keySet())));
+                // Before the full ones: an order served in part and then in full ends up Fulfilled
+                relayed &= relay(batch, OutboxEvent.ORDERS_PARTIALLY_FULFILLED, new TypeReference<Map<Long, Integer>>() {},
+                    this::publishPartiallyFulfilled);
+                relayed &= relay(batch, OutboxEvent.ORDERS_FULFILLED, new TypeReference<List<Long>>() {},
+                    this::publishFulfilled);
+
+                List<OutboxEvent> unknown = batch.stream()
+                    .filter(event -> !RELAYED_TYPES.contains(event.getEventType()))
+                    .toList();
+                if (!unknown.isEmpty()) {
+                    deadLetter(unknown, "Unknown event type");
+                }
+                // A failed type is backed off, but the next batch would only run into it again
+            } while (relayed && batch.size() == batchSize);
+        } catch (Exception e) {
+            log.error("Failed to relay outbox events, will retry", e);
+        }
+    }
+
+    private interface Publisher<T> {
+        void publish(Map<OutboxEvent, T> payloads) throws Exception;
+    }
+
+    // Relays the batch's events of one type; false if the call failed
+    private <T> boolean relay(List<OutboxEvent> batch, String eventType, TypeReference<T> payloadType, Publisher<T> publisher) {
+        Map<OutboxEvent, T> payloads = new LinkedHashMap<>();
+        for (OutboxEvent event : batch) {
+            if (!eventType.equals(event.getEventType())) {
+                continue;
+            }
+            try {
+                payloads.put(event, objectMapper.readValue(event.getPayload(), payloadType));
+            } catch (JsonProcessingException e) {
+                deadLetter(List.of(event), "Cannot read payload: " + e.getOriginalMessage());
+            }
+        }
+        if (payloads.isEmpty()) {
+            return true;
+        }
+
+        try {
+            publisher.publish(payloads);
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to relay {} {} events, will retry", payloads.size(), eventType, e);
+            recordFailure(List.copyOf(payloads.keySet()), e.toString());
+            return false;
+        }
+    }
+
+    private void recordFailure(List<OutboxEvent> events, String error) {
+        List<Long> ids = events.stream().map(OutboxEvent::getId).toList();
+        transactionTemplate.executeWithoutResult(status ->
+            outboxEventRepository.recordFailure(ids, truncate(error), retryBackoffMs, maxBackoffMs, maxAttempts));
+
+        List<OutboxEvent> exhausted = events.stream()
+            .filter(event -> event.getAttempts() + 1 >= maxAttempts)
+            .toList();
+        if (!exhausted.isEmpty()) {
+            countDeadLettered(exhausted, error);
+        }
+    }
+
+    private void deadLetter(List<OutboxEvent> events, String error) {
+        List<Long> ids = events.stream().map(OutboxEvent::getId).toList();
+        transactionTemplate.executeWithoutResult(status -> outboxEventRepository.deadLetter(ids, truncate(error)));
+        countDeadLettered(events, error);
+    }
+
+    private void countDeadLettered(List<OutboxEvent> events, String error) {
+        for (OutboxEvent event : events) {
+            log.error("outbox.dead-lettered id={} type={} aggregate={} attempts={} error={}",
+                event.getId(), event.getEventType(), event.getAggregateId(), event.getAttempts() + 1, error);
+            Counter.builder("outbox.relay.dead-lettered")
+                .description("Producer outbox events set aside after failing to relay")
+                .tag("type", String.valueOf(event.getEventType()))
+                .register(meterRegistry)
+                .increment();
+        }
+    }
+
+    private static String truncate(String error) {
+        return error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+
+    // Marking orders fulfilled is idempotent on the ordering side, so a retry after a lost
+    // response is harmless. Each event's aggregate is the run that served its orders.
+    private void publishFulfilled(Map<OutboxEvent, List<Long>> payloads) {
+        Map<Long, Long> runIdsByOrderId = new LinkedHashMap<>();
+        payloads.forEach((event, orderIds) -> {
+            for (Long orderId : orderIds) {
+                runIdsByOrderId.put(orderId, event.getAggregateId());
+            }
+        });
+
+        Long[] rejected = restTemplate.postForObject(ORDERING_FULFILL_URL, List.copyOf(runIdsByOrderId.keySet()), Long[].class);
+        markPublished(List.copyOf(payloads.keySet()), runIdsByOrderId, rejected);
+    }
+
+    // Ordering-service only ever raises fulfilled quantities, so this is idempotent as well. A
+    // later event for the same order has the higher target.
+    private void publishPartiallyFulfilled(Map<OutboxEvent, Map<Long, Integer>> payloads) {
+        Map<Long, Integer> targets = new LinkedHashMap<>();
+        Map<Long, Long> runIdsByOrderId = new LinkedHashMap<>();
+        payloads.forEach((event, eventTargets) -> eventTargets.forEach((orderId, target) -> {
+            targets.merge(orderId, target, Math::max);
+            runIdsByOrderId.put(orderId, event.getAggregateId());
+        }));
+
+        Long[] rejected = restTemplate.postForObject(ORDERING_FULFILL_PARTIAL_URL, targets, Long[].class);
+        markPublished(List.copyOf(payloads.keySet()), runIdsByOrderId, rejected);
+    }
+
+    // Orders ordering-service turned down (no longer open) get their stock back in the same
+    // transaction that marks the events, so a retry can neither skip nor repeat that. Their
+    // claims are settled there too, for OutboxRetentionJob.
+    private void markPublished(List<OutboxEvent> events, Map<Long, Long> runIdsByOrderId, Long[] rejected) {
+        Map<Long, Long> rejectedRuns = new LinkedHashMap<>();
+        for (Long orderId : rejected != null ? rejected : new Long[0]) {
+            Long runId = runIdsByOrderId.get(orderId);
+            if (runId != null) {
+                rejectedRuns.put(orderId, runId);
+            }
+        }
+        List<Long> ids = events.stream().map(OutboxEvent::getId).toList();
+        LocalDateTime claimedBy = events.stream().map(OutboxEvent::getCreatedAt).max(Comparator.naturalOrder()).orElseThrow();
+        transactionTemplate.executeWithoutResult(status -> {
+            producerService.returnStock(rejectedRuns);
+            outboxEventRepository.markPublished(ids, LocalDateTime.now());
+            allocatedOrderRepository.settle(List.copyOf(runIdsByOrderId.keySet()), claimedBy);
+        });
+        producerService.releaseOrders(List.copyOf(runIdsByOrderId.keySet()));
+    }
+}
@@ -0,0 +1,75 @@
+package org.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import java.time.LocalDateTime;
+import java.util.function.BiFunction;
+
+// Deletes what only mattered until the events were through: published producer_outbox rows,
+// ordering_inbox ids and settled allocated_orders claims older than
+// outbox-retention.retention-days, a chunk at a time. Unpublished and dead-lettered events, and
+// the claims they stand for, are kept.
+@Component
+public class OutboxRetentionJob {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRetentionJob.class);
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private InboxRepository inboxRepository;
+
+    @Autowired
+    private AllocatedOrderRepository allocatedOrderRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${outbox-retention.retention-days:30}")
+    private int retentionDays;
+
+    @Value("${outbox-retention.batch-size:5000}")
+    private int batchSize;
+
+    @Value("${outbox-retention.max-batches-per-run:200}")
+    private int maxBatchesPerRun;
+
+    @Scheduled(fixedDelayString = "${outbox-retention.interval-ms:3600000}")
+    public void prune() {
+        LocalDateTime before = LocalDateTime.now().minusDays(retentionDays);
+        try {
+            prune("producer_outbox", before, outboxEventRepository::deletePublishedBefore);
+            prune("ordering_inbox", before, inboxRepository::deleteProcessedBefore);
+            prune("allocated_orders", before, allocatedOrderRepository::deleteSettledBefore);
+        } catch (Exception e) {
+            log.error("Failed to prune the outbox tables, will retry", e);
+        }
+    }
+
+    private void prune(String table, LocalDateTime before, BiFunction<LocalDateTime, Integer, Integer> deleteChunk) {
+        Counter prunedCounter = Counter.builder("outbox.pruned")
+            .description("Rows deleted by the outbox retention job")
+            .tag("table", table)
+            .register(meterRegistry);
+
+        int pruned = 0;
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            int deleted = deleteChunk.apply(before, batchSize);
+            pruned += deleted;
+            prunedCounter.increment(deleted);
+            if (deleted < batchSize) {
+                break;
+            }
+        }
+        if (pruned > 0) {
+            log.info("outbox.retention table={} before={} pruned={}", table, before, pruned);
+        }
+    }
+}
@@ -5,6 +5,8 @@ import jakarta.persistence.Id;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
+import java.time.LocalDate;
 
 @Entity
 @Table(name = "producer_capacity")
@@ -14,8 +16,10 @@ public class ProducerCapacity {
     private Long id;
     private String producerName;
     private int vaccinesQuantity;
-    private String productionDeadline;
+    private LocalDate productionDeadline;
     private int excessVaccines;
+    @Version
+    private long version;
 
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -23,8 +27,10 @@ public class ProducerCapacity {
     public void setProducerName(String producerName) { this.producerName = producerName; }
     public int getVaccinesQuantity() { return vaccinesQuantity; }
     public void setVaccinesQuantity(int vaccinesQuantity) { this.vaccinesQuantity = vaccinesQuantity; }
-    public String getProductionDeadline() { return productionDeadline; }
-    public void setProductionDeadline(String productionDeadline) { this.productionDeadline = productionDeadline; }
+    public LocalDate getProductionDeadline() { return productionDeadline; }
+    public void setProductionDeadline(LocalDate productionDeadline) { this.productionDeadline = productionDeadline; }
     public int getExcessVaccines() { return excessVaccines; }
     public void setExcessVaccines(int excessVaccines) { this.excessVaccines = excessVaccines; }
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
 }
\ No newline at end of file
@@ -2,17 +2,12 @@ package org.example;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
-import java.time.LocalDate;
+import reactor.core.publisher.Flux;
 import java.util.List;
-import org.springframework.web.client.RestTemplate;
-import java.time.format.DateTimeParseException;
-import java.util.Comparator;
-import java.util.Arrays;
-import java.util.Objects;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/producers")
@@ -24,83 +19,31 @@ public class ProducerController {
     private ProducerResponseRepository responseRepository;
 
     @Autowired
-    private org.springframework.web.client.RestTemplate restTemplate;
+    private ChangeEventStream changeEventStream;
 
-    private static final String ORDERING_BASE_URL = "http://ordering:8081/api/orders";
+    @Autowired
+    private AllocationLedgerRepository allocationLedgerRepository;
+
+    @Autowired
+    private AllocationSimulator allocationSimulator;
 
     @PostMapping("/fulfillment")
     public void fulfillOrders() {
-        // Fetch priority orders and sort them
-        ResponseEntity<Order[]> priorityResponse = restTemplate.getForEntity(
-            ORDERING_BASE_URL + "/priority", Order[].class);
-        List<Order> priorityOrders = Arrays.stream(Objects.requireNonNull(priorityResponse.getBody()))
-            .sorted(Comparator.comparing(Order::getExpectedDeliveryTime)
-                .thenComparing(Order::getVaccineQuantity))
-            .toList();
-
-        // Fetch regular pending orders and sort them
-        ResponseEntity<Order[]> pendingResponse = restTemplate.getForEntity(
-            ORDERING_BASE_URL + "/pending", Order[].class);
-        List<Order> pendingOrders = Arrays.stream(Objects.requireNonNull(pendingResponse.getBody()))
-            .sorted(Comparator.comparing(Order::getExpectedDeliveryTime)
-                .thenComparing(Order::getVaccineQuantity))
-            .toList();
-
-        // Combine: priority orders first
-        List<Order> allOrders = Stream.concat(priorityOrders.stream(), pendingOrders.stream())
-            .toList();
-
-        // 2. Get all capacities sorted by deadline
-        List<ProducerCapacity> allCapacities = responseRepository.findAll().stream()
-            .sorted(Comparator.comparing((ProducerCapacity pc) -> LocalDate.parse(pc.getProductionDeadline())).reversed())
-            .collect(Collectors.toList());
-
-        for (Order order : allOrders) {
-            LocalDate orderDate = LocalDate.parse(order.getExpectedDeliveryTime());
-
-            // 3. Filter capacities that can fulfill this order (deadline >= orderDate)
-            List<ProducerCapacity> validCapacities = allCapacities.stream()
-                .filter(pc -> {
-                    try {
-                        LocalDate capacityDeadline = LocalDate.parse(pc.getProductionDeadline());
-                        return !capacityDeadline.isAfter(orderDate);
-                    } catch (DateTimeParseException e) {
-                        return false;
-                    }
-                })
-                .toList();
-
-            // Sum total available vaccines for these capacities (only excessVaccines)
-            int totalAvailable = validCapacities.stream()
-                .mapToInt(ProducerCapacity::getExcessVaccines)
-                .sum();
-
-            if (totalAvailable < order.getVaccineQuantity()) {
-                // Not enough capacity to fulfill this order, skip to next
-                continue;
-            }
-
-            int remainingToFulfill = order.getVaccineQuantity();
-
-            for (ProducerCapacity pc : validCapacities) {
-                int available = pc.getExcessVaccines();
-
-                if (available <= 0) continue;
-
-                int used = Math.min(available, remainingToFulfill);
-
-                // Deduct used vaccines only from excessVaccines
-                int newExcess = available - used;
-                pc.setExcessVaccines(newExcess);
-                responseRepository.save(pc);
-
-                remainingToFulfill -= used;
-                if (remainingToFulfill == 0) break;
-            }
-
-            String fulfillUrl = ORDERING_BASE_URL + "/" + order.getId() + "/fulfill";
-            restTemplate.postForObject(fulfillUrl, null, Void.class);
-        }
+        producerService.fulfillOrders();
+    }
+
+    // Batches of ordering-service outbox events, delivered at least once
+    @PostMapping("/events")
+    public ResponseEntity<Void> receiveOrderEvents(@RequestBody List<OrderingEvent> events) {
+        producerService.onOrderEvents(events);
+        return ResponseEntity.ok().build();
+    }
+
+    // Live capacity changes as server-sent events; browsers resume with Last-Event-ID on their own
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamEvents(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return changeEventStream.subscribe(lastEventId);
     }
 
     @PostMapping("/capacities")
@@ -113,6 +56,17 @@ public class ProducerController {
         }
     }
 
+    // A weekly plan in one request: all rows or none, then a single allocation pass
+    @PostMapping("/capacities/batch")
+    public ResponseEntity<?> registerProducerCapacities(@RequestBody List<ProducerCapacityRequest> capacityRequests) {
+        try {
+            CapacityBatchResult result = producerService.registerProducerCapacities(capacityRequests);
+            return new ResponseEntity<>(result, HttpStatus.CREATED);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
     @GetMapping("/capacities")
     public ResponseEntity<List<ProducerCapacity>> getAllCapacities() {
         List<ProducerCapacity> capacities = producerService.getAllProducerCapacities();
@@ -122,6 +76,55 @@ public class ProducerController {
         return new ResponseEntity<>(capacities, HttpStatus.OK);
     }
 
+    // Allocation ledger: which capacity served how much of which order, in which run
+    @GetMapping("/ledger/orders/{orderId}")
+    public List<AllocationLedgerEntry> getLedgerForOrder(@PathVariable long orderId) {
+        return allocationLedgerRepository.findByOrder(orderId);
+    }
+
+    @GetMapping("/ledger/producers/{producerName}")
+    public List<AllocationLedgerEntry> getLedgerForProducer(@PathVariable String producerName,
+                                                            @RequestParam(defaultValue = "1000") int limit) {
+        return allocationLedgerRepository.findByProducer(producerName, limit);
+    }
+
+    @GetMapping("/ledger/runs/{runId}")
+    public List<AllocationLedgerEntry> getLedgerForRun(@PathVariable long runId) {
+        return allocationLedgerRepository.findByRun(runId);
+    }
+
+    // Capacities whose excessVaccines disagrees with the ledger; an empty list means none
+    @GetMapping("/ledger/reconcile")
+    public List<CapacityReconciliation> reconcileLedger() {
+        return allocationLedgerRepository.reconcile();
+    }
+
+    @PostMapping("/ledger/snapshot")
+    public ResponseEntity<Integer> snapshotLedger() {
+        return ResponseEntity.ok(allocationLedgerRepository.snapshot());
+    }
+
+    // What-if allocation over an in-memory snapshot; nothing is saved or allocated
+    @PostMapping("/simulations")
+    public ResponseEntity<?> simulate(@RequestBody List<SimulationScenario> scenarios,
+                                      @RequestParam(defaultValue = "false") boolean includeOrders) {
+        try {
+            return ResponseEntity.ok(allocationSimulator.simulate(scenarios, includeOrders));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @GetMapping("/simulations/snapshot")
+    public SimulationSnapshot getSimulationSnapshot() {
+        return allocationSimulator.getSnapshot();
+    }
+
+    @PostMapping("/simulations/snapshot")
+    public SimulationSnapshot refreshSimulationSnapshot() {
+        return allocationSimulator.refreshSnapshot();
+    }
+
     @GetMapping("/capacities/{producerName}")
     public ResponseEntity<List<ProducerCapacity>> getCapacitiesByProducer(@PathVariable String producerName) {
         List<ProducerCapacity> capacities = responseRepository.findByProducerName(producerName);
@@ -1,10 +1,18 @@
 package org.example;
 
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import java.time.LocalDate;
 import java.util.List;
 
 public interface ProducerResponseRepository extends JpaRepository<ProducerCapacity, Long> {
+     @Cacheable(cacheNames = CacheConfig.CAPACITIES_BY_PRODUCER, key = "#p0")
      List<ProducerCapacity> findByProducerName(String producerName);
-     List<ProducerCapacity> findByProductionDeadlineBefore(String date);
+     List<ProducerCapacity> findByProductionDeadlineBefore(LocalDate date);
+
+     // What the allocation engine loads: drained capacities stay in the database
+     @Query("SELECT c FROM ProducerCapacity c WHERE c.excessVaccines > 0 ORDER BY c.productionDeadline, c.id")
+     List<ProducerCapacity> findStockedOrderByDeadline();
 }
\ No newline at end of file
@@ -1,24 +1,41 @@
 package org.example;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.DistributionSummary;
+import jakarta.annotation.PostConstruct;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.scheduling.annotation.EnableScheduling;
-import org.springframework.scheduling.annotation.Scheduled;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.time.format.DateTimeParseException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.http.HttpMethod;
-import org.springframework.core.ParameterizedTypeReference;
-import java.util.Comparator;
-import java.util.Arrays;
-import java.util.Objects;
-import java.util.stream.Collectors;
-import org.springframework.http.ResponseEntity;
-import java.util.stream.Stream;
+import org.springframework.http.MediaType;
+import java.util.function.Consumer;
 
 @EnableScheduling
 @Service
@@ -26,13 +43,159 @@ public class ProducerService {
     @Autowired
     private ProducerResponseRepository responseRepository;
 
+    @Autowired
+    private AllocationEngine allocationEngine;
+
+    @Autowired
+    private CapacityDeductionRepository capacityDeductionRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private InboxRepository inboxRepository;
+
+    @Autowired
+    private AllocatedOrderRepository allocatedOrderRepository;
+
+    @Autowired
+    private AllocationLedgerRepository allocationLedgerRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // By bean name: greedy, max-orders
+    @Autowired
+    private Map<String, AllocationStrategy> allocationStrategies;
+
+    @Value("${allocation.strategy:greedy}")
+    private String allocationStrategyName;
+
+    private AllocationStrategy allocationStrategy;
+
     private static final Logger log = LoggerFactory.getLogger(ProducerService.class);
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ChangeEventStream changeEventStream;
+
+    // Server-sent event names, see ChangeEventStream
+    public static final String CAPACITY_REGISTERED_EVENT = "capacity-registered";
+    public static final String CAPACITY_DEDUCTED_EVENT = "capacity-deducted";
 
     private final String ORDERING_BASE_URL = "http://ordering:8081/api/orders";
 
+    private static final String ORDER_CREATED = "OrderCreated";
+    private static final String ORDERS_IMPORTED = "OrdersImported";
+
+    @Value("${allocation-queue.limit:100000}")
+    private int allocationQueueLimit;
+
+    // smile asks ordering-service for the binary Smile stream, ndjson for newline-delimited JSON
+    @Value("${allocation-queue.format:smile}")
+    private String allocationQueueFormat;
+
+    private static final String SMILE = "application/x-jackson-smile";
+
+    // Reads what ordering-service writes with Smile, with the same modules as objectMapper
+    private ObjectMapper smileMapper;
+
+    @PostConstruct
+    void createSmileMapper() {
+        smileMapper = objectMapper.copyWith(new SmileFactory());
+    }
+
+    @PostConstruct
+    void selectAllocationStrategy() {
+        allocationStrategy = allocationStrategies.get(allocationStrategyName);
+        if (allocationStrategy == null) {
+            throw new IllegalStateException("Unknown allocation.strategy " + allocationStrategyName
+                + ", expected one of " + allocationStrategies.keySet());
+        }
+    }
+
+    // Log one in this many allocation decisions
+    @Value("${allocation.log.sample-rate:1000}")
+    private int allocationLogSampleRate;
+
+    // Orders some run has drawn stock for that ordering-service has not marked fulfilled yet, so
+    // they still show up in its queue; concurrent and later runs skip them
+    private final Set<Long> claimedOrderIds = ConcurrentHashMap.newKeySet();
+
+    @Transactional
+    @CacheEvict(cacheNames = CacheConfig.CAPACITIES_BY_PRODUCER, key = "#request.producerName")
     public ProducerCapacity registerProducerCapacity(ProducerCapacityRequest request) {
+        ProducerCapacity newCapacity = toCapacity(request);
+
+        // Save new capacity
+        responseRepository.save(newCapacity);
+        indexAfterCommit(List.of(newCapacity));
+
+        // Allocation runs when the relay picks this up, see onCapacitiesRegistered
+        recordEvent(OutboxEvent.CAPACITY_REGISTERED, newCapacity.getId(), newCapacity);
+        changeEventStream.publish(CAPACITY_REGISTERED_EVENT, List.of(newCapacity));
+
+        return newCapacity;
+    }
+
+    // A whole production plan at once: every row is checked before anything is saved, and the
+    // new stock gets one allocation pass from its earliest deadline, instead of one
+    // CapacityRegistered event per row. The pass runs once the plan has committed, since the
+    // index only takes committed stock; the plan's event stands in for it if it never does.
+    @CacheEvict(cacheNames = CacheConfig.CAPACITIES_BY_PRODUCER, allEntries = true)
+    public CapacityBatchResult registerProducerCapacities(List<ProducerCapacityRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("At least one producer capacity is required.");
+        }
+
+        List<ProducerCapacity> newCapacities = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                newCapacities.add(toCapacity(requests.get(i)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Capacity " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+
+        ProducerCapacity earliest = newCapacities.get(0);
+        for (ProducerCapacity capacity : newCapacities) {
+            if (capacity.getProductionDeadline().isBefore(earliest.getProductionDeadline())) {
+                earliest = capacity;
+            }
+        }
+        ProducerCapacity earliestNew = earliest;
+
+        OutboxEvent registered = transactionTemplate.execute(status -> {
+            responseRepository.saveAll(newCapacities);
+            indexAfterCommit(newCapacities);
+            changeEventStream.publish(CAPACITY_REGISTERED_EVENT, newCapacities);
+            return recordEvent(OutboxEvent.CAPACITY_REGISTERED, earliestNew.getId(), earliestNew);
+        });
+
+        // The relay may already have picked the event up: whichever holds its row runs the pass,
+        // and the response then shows an empty one
+        AllocationRun run = transactionTemplate.execute(status -> {
+            if (outboxEventRepository.lockUnpublished(List.of(registered.getId())).isEmpty()) {
+                return new AllocationRun(AllocationRun.CAPACITY_BATCH, allocationEngine.generation());
+            }
+            AllocationRun batchRun = runAllocation(AllocationRun.CAPACITY_BATCH,
+                r -> allocateQueue(earliestNew.getProductionDeadline(), r));
+            outboxEventRepository.markPublished(List.of(registered.getId()), LocalDateTime.now());
+            return batchRun;
+        });
+        return new CapacityBatchResult(newCapacities, run);
+    }
+
+    // Also checks the capacities of simulation scenarios
+    ProducerCapacity toCapacity(ProducerCapacityRequest request) {
         if (request.getProducerName() == null || request.getProducerName().trim().isEmpty()) {
             throw new IllegalArgumentException("Producer name cannot be null or empty.");
         }
@@ -50,137 +213,403 @@ public class ProducerService {
             throw new IllegalArgumentException("Invalid production deadline format. Use YYYY-MM-DD.");
         }
 
-        // Save new capacity
         ProducerCapacity newCapacity = new ProducerCapacity();
         newCapacity.setProducerName(request.getProducerName());
         newCapacity.setVaccinesQuantity(request.getVaccinesQuantity());
-        newCapacity.setProductionDeadline(request.getProductionDeadline());
+        newCapacity.setProductionDeadline(productionDeadlineDate);
         newCapacity.setExcessVaccines(request.getVaccinesQuantity());
-        responseRepository.save(newCapacity);
+        return newCapacity;
+    }
 
-        // Fetch priority orders and sort them
-        ResponseEntity<Order[]> priorityResponse = restTemplate.getForEntity(
-            ORDERING_BASE_URL + "/priority", Order[].class);
-        List<Order> priorityOrders = Arrays.stream(Objects.requireNonNull(priorityResponse.getBody()))
-            .sorted(Comparator.comparing(Order::getExpectedDeliveryTime)
-                .thenComparing(Order::getVaccineQuantity))
-            .toList();
+    // Local consumer of CapacityRegistered events: one pass for the whole batch, starting at the
+    // earliest new deadline, since earlier orders cannot use the new stock
+    @Transactional
+    public void onCapacitiesRegistered(List<OutboxEvent> events) {
+        // Events whose pass a batch registration is running in-line, or has run, are its own
+        Set<Long> locked = new HashSet<>(outboxEventRepository.lockUnpublished(
+            events.stream().map(OutboxEvent::getId).toList()));
+        List<OutboxEvent> owned = events.stream().filter(event -> locked.contains(event.getId())).toList();
+        if (owned.isEmpty()) {
+            return;
+        }
 
-        // Fetch regular pending orders and sort them
-        ResponseEntity<Order[]> pendingResponse = restTemplate.getForEntity(
-            ORDERING_BASE_URL + "/pending", Order[].class);
-        List<Order> pendingOrders = Arrays.stream(Objects.requireNonNull(pendingResponse.getBody()))
-            .sorted(Comparator.comparing(Order::getExpectedDeliveryTime)
-                .thenComparing(Order::getVaccineQuantity))
-            .toList();
+        LocalDate fromDate = null;
+        List<Long> capacityIds = new ArrayList<>(owned.size());
+        for (OutboxEvent event : owned) {
+            ProducerCapacity capacity = fromJson(event.getPayload(), ProducerCapacity.class);
+            capacityIds.add(capacity.getId());
+            LocalDate deadline = capacity.getProductionDeadline();
+            if (fromDate == null || deadline.isBefore(fromDate)) {
+                fromDate = deadline;
+            }
+        }
+        // The relay can get here before the registering thread has indexed the new stock after
+        // its commit; indexing is idempotent, and the rows say what is left of them now
+        allocationEngine.addCapacities(responseRepository.findAllById(capacityIds));
+        LocalDate earliestNewDeadline = fromDate;
+        runAllocation(AllocationRun.CAPACITY_REGISTERED, run -> allocateQueue(earliestNewDeadline, run));
+
+        outboxEventRepository.markPublished(List.copyOf(locked), LocalDateTime.now());
+    }
 
-        // Combine: priority orders first
-        List<Order> allOrders = Stream.concat(priorityOrders.stream(), pendingOrders.stream())
+    // OrderCreated events from ordering-service: only the new orders need a look, everything
+    // that was already open was checked against the current stock before. They are read back
+    // from the queue by id, since an order may have been cancelled, expired or served since the
+    // event was written. A bulk import comes as one OrdersImported event instead; its orders are
+    // read from the queue in one pass.
+    @Transactional
+    public void onOrderEvents(List<OrderingEvent> events) {
+        Set<Long> fresh = new HashSet<>(inboxRepository.claim(events.stream().map(OrderingEvent::getId).toList()));
+        List<OrderingEvent> freshEvents = events.stream()
+            .filter(event -> fresh.contains(event.getId()))
+            .toList();
+        List<Order> created = freshEvents.stream()
+            .filter(event -> ORDER_CREATED.equals(event.getEventType()))
+            .map(event -> fromJson(event.getPayload(), Order.class))
             .toList();
 
-        // Print all orders after combining
-        System.out.println("\nAll Orders (Priority First):");
-        allOrders.forEach(order -> System.out.println(
-            "ID: " + order.getId() +
-            ", Delivery: " + order.getExpectedDeliveryTime() +
-            ", Quantity: " + order.getVaccineQuantity()
-        ));
-
-        // 2. Get all capacities sorted by deadline
-        List<ProducerCapacity> allCapacities = responseRepository.findAll().stream()
-            .sorted(Comparator.comparing((ProducerCapacity pc) -> LocalDate.parse(pc.getProductionDeadline())).reversed())
-            .collect(Collectors.toList());
-
-        for (Order order : allOrders) {
-            System.out.println(
-                "ID: " + order.getId() +
-                ", Delivery: " + order.getExpectedDeliveryTime() +
-                ", Quantity: " + order.getVaccineQuantity()
-            );
-            LocalDate orderDate = LocalDate.parse(order.getExpectedDeliveryTime());
-
-            // 3. Filter capacities that can fulfill this order (deadline >= orderDate)
-            List<ProducerCapacity> validCapacities = allCapacities.stream()
-                .filter(pc -> {
-                    try {
-                        LocalDate capacityDeadline = LocalDate.parse(pc.getProductionDeadline());
-                        return !capacityDeadline.isAfter(orderDate);
-                    } catch (DateTimeParseException e) {
-                        return false;
-                    }
-                })
-                .toList();
+        LocalDate importedFrom = null;
+        for (OrderingEvent event : freshEvents) {
+            if (ORDERS_IMPORTED.equals(event.getEventType())) {
+                LocalDate fromDate = fromJson(event.getPayload(), OrdersImported.class).getFromDate();
+                if (importedFrom == null || fromDate.isBefore(importedFrom)) {
+                    importedFrom = fromDate;
+                }
+            }
+        }
+
+        if (importedFrom != null) {
+            // The queue pass also covers orders created alongside the import
+            LocalDate fromDate = created.stream()
+                .map(Order::getExpectedDeliveryTime)
+                .reduce(importedFrom, (a, b) -> a.isBefore(b) ? a : b);
+            runAllocation(AllocationRun.ORDERS_IMPORTED, run -> allocateQueue(fromDate, run));
+            return;
+        }
+
+        if (created.isEmpty()) {
+            return;
+        }
+        List<Long> createdIds = created.stream().map(Order::getId).toList();
+        runAllocation(AllocationRun.ORDER_CREATED, run -> allocationStrategy.allocate(
+            consumer -> streamAllocationQueue(createdIds, consumer), allocator(run)));
+    }
 
-            // Sum total available vaccines for these capacities (only excessVaccines)
-            int totalAvailable = validCapacities.stream()
-                .mapToInt(ProducerCapacity::getExcessVaccines)
-                .sum();
+    @Transactional
+    public void fulfillOrders() {
+        runAllocation(AllocationRun.FULL, run -> allocateQueue(null, run));
+    }
 
-            if (totalAvailable < order.getVaccineQuantity()) {
-                // Not enough capacity to fulfill this order, skip to next
-                continue;
+    // Ordering-service has the orders now, so they no longer show up in the allocation queue
+    public void releaseOrders(List<Long> orderIds) {
+        claimedOrderIds.removeAll(orderIds);
+    }
+
+    // Orders ordering-service turned down when the relay reported them served: cancelled or
+    // expired after the pass read them. Order id to the run that served it. The units go back to
+    // the capacities with ledger entries reversing the run's, in the caller's transaction (the
+    // one marking the events published), and into the index once that commits.
+    @Transactional
+    public void returnStock(Map<Long, Long> runIdsByOrderId) {
+        if (runIdsByOrderId.isEmpty()) {
+            return;
+        }
+        AllocationRun reversal = new AllocationRun(AllocationRun.ORDERS_REJECTED, allocationEngine.generation());
+        Map<Long, Integer> returned = new LinkedHashMap<>();
+        for (AllocationRun.LedgerEntry served : allocationLedgerRepository.findServed(runIdsByOrderId)) {
+            reversal.reversed(served.getOrderId(), served.getCapacityId(), served.getQuantity());
+            returned.merge(served.getCapacityId(), served.getQuantity(), Integer::sum);
+        }
+        if (returned.isEmpty()) {
+            return;
+        }
+        capacityDeductionRepository.restoreAll(returned);
+        reversal.setRunId(allocationLedgerRepository.append(reversal));
+
+        List<ProducerCapacity> capacities = responseRepository.findAllById(returned.keySet());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                allocationEngine.restore(capacities, returned, reversal.getGeneration());
             }
+        });
+        Map<Long, Integer> deductions = new LinkedHashMap<>();
+        returned.forEach((capacityId, units) -> deductions.put(capacityId, -units));
+        changeEventStream.publish(CAPACITY_DEDUCTED_EVENT, Map.of("runId", reversal.getRunId(), "deductions", deductions));
+        log.warn("allocation.reversal runId={} orders={} units={} reason=orders turned down by ordering-service",
+            reversal.getRunId(), runIdsByOrderId.size(), -reversal.getUnitsAllocated());
+    }
+
+    // Runs one allocation pass inside the caller's transaction, writes its result and reports
+    // how long it took and what it did
+    private AllocationRun runAllocation(String trigger, Consumer<AllocationRun> pass) {
+        AllocationRun run = new AllocationRun(trigger, allocationEngine.generation());
+        syncEngineOnCompletion(run);
 
-            int remainingToFulfill = order.getVaccineQuantity();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failure";
+        try {
+            pass.accept(run);
+            flushAllocation(run);
+            outcome = "success";
+        } finally {
+            long nanos = sample.stop(Timer.builder("allocation.run")
+                .description("Allocation passes, from reading the queue to writing the deductions")
+                .tag("trigger", trigger)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+            recordRun(run, outcome, nanos);
+        }
+        return run;
+    }
 
-            for (ProducerCapacity pc : validCapacities) {
-                int available = pc.getExcessVaccines();
+    private void recordRun(AllocationRun run, String outcome, long nanos) {
+        summary("allocation.run.orders.considered", "orders", run).record(run.getOrdersConsidered());
+        summary("allocation.run.orders.fulfilled", "orders", run).record(run.getFulfilledOrderIds().size());
+        summary("allocation.run.orders.partial", "orders", run).record(run.getPartialFulfilments().size());
+        summary("allocation.run.orders.skipped", "orders", run).record(run.getOrdersSkipped());
+        summary("allocation.run.units.allocated", "vaccines", run).record(run.getUnitsAllocated());
+        summary("allocation.run.capacities.touched", "capacities", run).record(run.getCapacitiesTouched());
 
-                if (available <= 0) continue;
+        if (run.getOrdersConsidered() > 0) {
+            log.info("allocation.run trigger={} runId={} outcome={} considered={} fulfilled={} partial={} skipped={} units={} capacities={} durationMs={}",
+                run.getTrigger(), run.getRunId(), outcome, run.getOrdersConsidered(), run.getFulfilledOrderIds().size(),
+                run.getPartialFulfilments().size(), run.getOrdersSkipped(), run.getUnitsAllocated(), run.getCapacitiesTouched(),
+                TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
 
-                int used = Math.min(available, remainingToFulfill);
+    private DistributionSummary summary(String name, String unit, AllocationRun run) {
+        return DistributionSummary.builder(name)
+            .baseUnit(unit)
+            .tag("trigger", run.getTrigger())
+            .register(meterRegistry);
+    }
 
-                // Deduct used vaccines only from excessVaccines
-                int newExcess = available - used;
-                pc.setExcessVaccines(newExcess);
-                responseRepository.save(pc);
+    // New stock goes into the index only once it is committed: a run drawing from it earlier
+    // could commit deductions for rows that are not there yet, or roll back with them
+    private void indexAfterCommit(List<ProducerCapacity> capacities) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                allocationEngine.addCapacities(capacities);
+            }
+        });
+    }
 
-                remainingToFulfill -= used;
-                if (remainingToFulfill == 0) break;
+    // The index and the order claims are updated before commit, so the index has to be rebuilt
+    // and the run's orders freed again if the transaction does not commit. It is rebuilt as well
+    // when the run commits deductions after a reload: that load read the rows without them.
+    private void syncEngineOnCompletion(AllocationRun run) {
+        Collection<Long> runOrderIds = run.getClaims().keySet();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    allocationEngine.invalidate();
+                    claimedOrderIds.removeAll(runOrderIds);
+                } else if (!run.getDeductions().isEmpty() && !allocationEngine.isCurrent(run.getGeneration())) {
+                    allocationEngine.invalidate();
+                }
             }
+        });
+    }
 
-            String fulfillUrl = ORDERING_BASE_URL + "/" + order.getId() + "/fulfill";
-            restTemplate.postForObject(fulfillUrl, null, Void.class);
+    private void allocateQueue(LocalDate fromDate, AllocationRun run) {
+        LocalDate earliestDeadline = allocationEngine.earliestStockedDeadline();
+        if (earliestDeadline == null) {
+            return;
         }
 
-        return newCapacity;
+        // Orders due before the earliest stocked deadline, or bigger than all remaining stock,
+        // can never be served, so ordering-service filters them out in SQL
+        LocalDate queueFrom = fromDate != null && fromDate.isAfter(earliestDeadline) ? fromDate : earliestDeadline;
+        int maxQuantity = (int) Math.min(allocationEngine.totalAvailable(), Integer.MAX_VALUE);
+        allocationStrategy.allocate(consumer -> streamAllocationQueue(queueFrom, maxQuantity, consumer), allocator(run));
     }
 
-    public List<ProducerCapacity> getAllProducerCapacities() {
-        return responseRepository.findAll();
+    // One batch for the stock, the ledger entries and one outbox row for the orders, committed
+    // together; the relay tells ordering-service afterwards. The rows name the run as their
+    // aggregate, so orders ordering-service turns down can be matched to its ledger entries.
+    private void flushAllocation(AllocationRun run) {
+        Map<Long, Long> claims = run.getClaims();
+        if (claims.isEmpty()) {
+            return;
+        }
+        // Claimed in memory already; this catches runs from before a restart or on another
+        // instance, and runs that read an order just before its fulfilment was relayed
+        List<Long> claimed = allocatedOrderRepository.claim(claims);
+        if (claimed.size() != claims.size()) {
+            Set<Long> claimedElsewhere = new HashSet<>(claims.keySet());
+            claimed.forEach(claimedElsewhere::remove);
+            dropOrders(run, claimedElsewhere);
+            if (claims.isEmpty()) {
+                return;
+            }
+        }
+        capacityDeductionRepository.deductAll(run.getDeductions());
+        run.setRunId(allocationLedgerRepository.append(run));
+        List<Long> fulfilledOrderIds = run.getFulfilledOrderIds();
+        if (!fulfilledOrderIds.isEmpty()) {
+            recordEvent(OutboxEvent.ORDERS_FULFILLED, run.getRunId(), fulfilledOrderIds);
+        }
+        Map<Long, Integer> partialFulfilments = run.getPartialFulfilments();
+        if (!partialFulfilments.isEmpty()) {
+            recordEvent(OutboxEvent.ORDERS_PARTIALLY_FULFILLED, run.getRunId(), partialFulfilments);
+        }
+        // Units taken per capacity id; dashboards subtract them from excessVaccines
+        changeEventStream.publish(CAPACITY_DEDUCTED_EVENT,
+            Map.of("runId", run.getRunId(), "deductions", Map.copyOf(run.getDeductions())));
+    }
+
+    // Orders another run has claimed in the state this one saw: they leave the run, the rest of
+    // it goes ahead, and the stock they drew goes back to the index
+    private void dropOrders(AllocationRun run, Set<Long> orderIds) {
+        allocationEngine.release(run.drop(orderIds), run.getGeneration());
+        claimedOrderIds.removeAll(orderIds);
+        log.warn("allocation.run trigger={} dropped={} orders already claimed by another run", run.getTrigger(),
+            orderIds.size());
+    }
+
+    private OutboxEvent recordEvent(String eventType, Long aggregateId, Object payload) {
+        OutboxEvent event = new OutboxEvent();
+        event.setEventType(eventType);
+        event.setAggregateId(aggregateId);
+        event.setPayload(toJson(payload));
+        event.setCreatedAt(LocalDateTime.now());
+        return outboxEventRepository.save(event);
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize event payload", e);
+        }
     }
 
-    @Scheduled(fixedRate = 600000)
-    public void expireOldOrders() {
-        String url = ORDERING_BASE_URL + "/pending";
-        List<Order> pendingOrders = null;
+    private <T> T fromJson(String json, Class<T> type) {
         try {
-            pendingOrders = restTemplate.exchange(
-                url,
-                HttpMethod.GET,
-                null,
-                new ParameterizedTypeReference<List<Order>>() {}
-            ).getBody();
-        } catch (Exception e) {
-            log.error("Error fetching pending orders", e);
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot read event payload", e);
+        }
+    }
+
+    // What the strategy draws stock through; records every decision in the run
+    private AllocationStrategy.Allocator allocator(AllocationRun run) {
+        return new AllocationStrategy.Allocator() {
+            @Override
+            public boolean isClaimed(Order order) {
+                return claimedOrderIds.contains(order.getId());
+            }
+
+            @Override
+            public boolean serve(Order order, int quantity) {
+                return allocate(order, quantity, run);
+            }
+
+            @Override
+            public void skip(Order order) {
+                run.considered();
+                run.skipped();
+                logSampled(run, order, "skipped", 0);
+            }
+        };
+    }
+
+    private boolean allocate(Order order, int quantity, AllocationRun run) {
+        run.considered();
+        if (allocationEngine.totalAvailable() == 0) {
+            run.skipped();
+            return false;
+        }
+
+        // Already a LocalDate from the NDJSON reader, nothing to parse per order
+        LocalDate orderDate = order.getExpectedDeliveryTime();
+        // Being allocated by another run, or allocated already and not yet confirmed
+        if (!claimedOrderIds.add(order.getId())) {
+            return false;
+        }
+        // Not enough capacity on or before the order date, skip to next; also nothing once the
+        // index has been reloaded since the run started, the rest is left to later runs
+        Map<Long, Integer> touched = allocationEngine.allocate(orderDate, quantity, run.getGeneration());
+        if (touched.isEmpty()) {
+            claimedOrderIds.remove(order.getId());
+            run.skipped();
+            logSampled(run, order, "skipped", 0);
+            return false;
+        }
+        run.allocated(order, quantity, touched);
+        logSampled(run, order, quantity < order.remainingQuantity() ? "partial" : "allocated", touched.size());
+        return true;
+    }
+
+    // One line per order would flood the log on big runs, so only a random sample is written
+    private void logSampled(AllocationRun run, Order order, String result, int capacities) {
+        if (ThreadLocalRandom.current().nextInt(allocationLogSampleRate) != 0) {
             return;
         }
+        log.info("allocation.order trigger={} orderId={} status={} deliveryDate={} quantity={} result={} capacities={}",
+            run.getTrigger(), order.getId(), order.getStatus(), order.getExpectedDeliveryTime(),
+            order.getVaccineQuantity(), result, capacities);
+    }
+
+    // The whole queue a full pass would read, minus the orders runs have served that
+    // ordering-service has not marked yet. Claims nothing; the simulator reads it.
+    public void readAllocationQueue(Consumer<Order> consumer) {
+        streamAllocationQueue(LocalDate.EPOCH, Integer.MAX_VALUE, order -> {
+            if (!claimedOrderIds.contains(order.getId())) {
+                consumer.accept(order);
+            }
+        });
+    }
+
+    // Priority orders first, then Pending, already sorted by delivery date and quantity
+    private void streamAllocationQueue(LocalDate fromDate, int maxQuantity, Consumer<Order> consumer) {
+        readOrderStream(ORDERING_BASE_URL + "/allocation-queue?fromDate={fromDate}&maxQuantity={maxQuantity}&limit={limit}",
+            null, consumer, fromDate, maxQuantity, allocationQueueLimit);
+    }
 
-        LocalDate today = LocalDate.now();
-        if (pendingOrders != null) {
-            for (Order order : pendingOrders) {
-                try {
-                    LocalDate expectedDate = LocalDate.parse(order.getExpectedDeliveryTime());
-                    if (expectedDate.isBefore(today)) {
-                        String updateUrl = ORDERING_BASE_URL + "/" + order.getId() + "/status?newStatus=EXPIRED";
-                        restTemplate.postForObject(updateUrl, null, Void.class);
+    // The same order, for the given orders only; those no longer open are not sent
+    private void streamAllocationQueue(List<Long> orderIds, Consumer<Order> consumer) {
+        readOrderStream(ORDERING_BASE_URL + "/allocation-queue", orderIds, consumer);
+    }
+
+    // Reads the stream value by value and hands each order over as soon as it is parsed. Smile
+    // falls back to NDJSON when ordering-service answers with that (an older version). With a
+    // body the request is a POST of it as JSON.
+    private void readOrderStream(String url, Object body, Consumer<Order> consumer, Object... uriVariables) {
+        String accept = "smile".equalsIgnoreCase(allocationQueueFormat)
+            ? SMILE + ", application/x-ndjson;q=0.5"
+            : "application/x-ndjson";
+        restTemplate.execute(
+            url,
+            body != null ? HttpMethod.POST : HttpMethod.GET,
+            request -> {
+                request.getHeaders().setAccept(MediaType.parseMediaTypes(accept));
+                if (body != null) {
+                    request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                    request.getBody().write(objectMapper.writeValueAsBytes(body));
+                }
+            },
+            response -> {
+                MediaType contentType = response.getHeaders().getContentType();
+                ObjectMapper mapper = contentType != null && contentType.isCompatibleWith(MediaType.parseMediaType(SMILE))
+                    ? smileMapper
+                    : objectMapper;
+                try (MappingIterator<Order> orders = mapper.readerFor(Order.class).readValues(response.getBody())) {
+                    while (orders.hasNext()) {
+                        consumer.accept(orders.next());
                     }
-                } catch (DateTimeParseException e) {
-                    log.error("Invalid date format for order id " + order.getId(), e);
-                } catch (Exception e) {
-                    log.error("Error updating order status for order id " + order.getId(), e);
                 }
-            }
-        }
+                return null;
+            },
+            uriVariables);
+    }
+
+    public List<ProducerCapacity> getAllProducerCapacities() {
+        return responseRepository.findAll();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,57 @@
+package org.example;
+
+import java.util.List;
+
+// What one scenario would allocate from the snapshot, next to what the snapshot as it is would
+public class SimulationResult {
+    private final String name;
+    private final int ordersFulfilled;
+    private final long unitsAllocated;
+    private final int ordersGained;
+    private final long unitsGained;
+    private final List<RegionProjection> regions;
+    // Only with includeOrders
+    private final List<Long> fulfilledOrderIds;
+
+    public SimulationResult(String name, int ordersFulfilled, long unitsAllocated, int ordersGained, long unitsGained,
+                            List<RegionProjection> regions, List<Long> fulfilledOrderIds) {
+        this.name = name;
+        this.ordersFulfilled = ordersFulfilled;
+        this.unitsAllocated = unitsAllocated;
+        this.ordersGained = ordersGained;
+        this.unitsGained = unitsGained;
+        this.regions = regions;
+        this.fulfilledOrderIds = fulfilledOrderIds;
+    }
+
+    public String getName() { return name; }
+    public int getOrdersFulfilled() { return ordersFulfilled; }
+    public long getUnitsAllocated() { return unitsAllocated; }
+    // Against the snapshot without the scenario's changes; negative when it loses orders
+    public int getOrdersGained() { return ordersGained; }
+    public long getUnitsGained() { return unitsGained; }
+    public List<RegionProjection> getRegions() { return regions; }
+    public List<Long> getFulfilledOrderIds() { return fulfilledOrderIds; }
+
+    public static class RegionProjection {
+        private final String region;
+        private final int orders;
+        private final int ordersFulfilled;
+        private final long unitsOrdered;
+        private final long unitsAllocated;
+
+        RegionProjection(String region, int orders, int ordersFulfilled, long unitsOrdered, long unitsAllocated) {
+            this.region = region;
+            this.orders = orders;
+            this.ordersFulfilled = ordersFulfilled;
+            this.unitsOrdered = unitsOrdered;
+            this.unitsAllocated = unitsAllocated;
+        }
+
+        public String getRegion() { return region; }
+        public int getOrders() { return orders; }
+        public int getOrdersFulfilled() { return ordersFulfilled; }
+        public long getUnitsOrdered() { return unitsOrdered; }
+        public long getUnitsAllocated() { return unitsAllocated; }
+    }
+}
@@ -0,0 +1,18 @@
+package org.example;
+
+import java.util.List;
+
+// One what-if for POST /api/producers/simulations: stock added on top of the snapshot, and
+// producers whose remaining stock is left out (a delivery that does not come)
+public class SimulationScenario {
+    private String name;
+    private List<ProducerCapacityRequest> capacities = List.of();
+    private List<String> excludedProducers = List.of();
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public List<ProducerCapacityRequest> getCapacities() { return capacities; }
+    public void setCapacities(List<ProducerCapacityRequest> capacities) { this.capacities = capacities; }
+    public List<String> getExcludedProducers() { return excludedProducers; }
+    public void setExcludedProducers(List<String> excludedProducers) { this.excludedProducers = excludedProducers; }
+}
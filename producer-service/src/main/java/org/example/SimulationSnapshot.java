@@ -0,0 +1,91 @@
+package org.example;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// The allocation queue and the stock at one point in time, in flat arrays: dates as epoch days,
+// quantities as ints, regions and producers as indexes into a name table. Never changes once
+// built, so any number of simulations can read it at once.
+public class SimulationSnapshot {
+
+    private final LocalDateTime takenAt;
+
+    // Orders in queue order: Priority first, then delivery date, quantity and id
+    final long[] orderIds;
+    final int[] orderDays;
+    final int[] orderQuantities;
+    final int[] orderRegions;
+    final String[] regions;
+
+    // Capacities by deadline
+    final int[] capacityDays;
+    final int[] capacityQuantities;
+    final int[] capacityProducers;
+    private final Map<String, Integer> producers = new HashMap<>();
+
+    private final long unitsOrdered;
+    private final long unitsAvailable;
+
+    public SimulationSnapshot(List<Order> orders, List<ProducerCapacity> capacities, LocalDateTime takenAt) {
+        this.takenAt = takenAt;
+
+        int n = orders.size();
+        orderIds = new long[n];
+        orderDays = new int[n];
+        orderQuantities = new int[n];
+        orderRegions = new int[n];
+        // Case-insensitive like the region rollups in ordering-service, named as first seen
+        Map<String, Integer> regionIndex = new LinkedHashMap<>();
+        long ordered = 0;
+        for (int i = 0; i < n; i++) {
+            Order order = orders.get(i);
+            orderIds[i] = order.getId();
+            orderDays[i] = (int) order.getExpectedDeliveryTime().toEpochDay();
+            orderQuantities[i] = order.remainingQuantity();
+            String region = order.getRegion() != null ? order.getRegion() : "";
+            orderRegions[i] = regionIndex.computeIfAbsent(region.toLowerCase(Locale.ROOT), key -> regionIndex.size());
+            ordered += orderQuantities[i];
+        }
+        regions = new String[regionIndex.size()];
+        for (int i = n - 1; i >= 0; i--) {
+            String region = orders.get(i).getRegion();
+            regions[orderRegions[i]] = region != null ? region : "";
+        }
+        unitsOrdered = ordered;
+
+        int k = capacities.size();
+        capacityDays = new int[k];
+        capacityQuantities = new int[k];
+        capacityProducers = new int[k];
+        long available = 0;
+        for (int j = 0; j < k; j++) {
+            ProducerCapacity capacity = capacities.get(j);
+            capacityDays[j] = (int) capacity.getProductionDeadline().toEpochDay();
+            capacityQuantities[j] = capacity.getExcessVaccines();
+            capacityProducers[j] = producers.computeIfAbsent(capacity.getProducerName(), key -> producers.size());
+            available += capacityQuantities[j];
+        }
+        unitsAvailable = available;
+    }
+
+    // -1 for a producer with no stock in the snapshot
+    int producerIndex(String producerName) {
+        return producers.getOrDefault(producerName, -1);
+    }
+
+    public LocalDateTime getTakenAt() { return takenAt; }
+
+    public int getOrders() { return orderIds.length; }
+
+    public int getCapacities() { return capacityDays.length; }
+
+    public int getProducers() { return producers.size(); }
+
+    public long getUnitsOrdered() { return unitsOrdered; }
+
+    public long getUnitsAvailable() { return unitsAvailable; }
+}
@@ -0,0 +1,15 @@
+-- Failed relay attempts per event. A failed event waits next_attempt_at out (backing off) and is
+-- set aside once it has used up outbox.relay.max-attempts, or at once if its payload cannot be
+-- read, so one bad event no longer holds up the rest of the outbox. Clearing dead_lettered_at
+-- puts it back in line.
+ALTER TABLE producer_outbox ADD COLUMN IF NOT EXISTS attempts INT NOT NULL DEFAULT 0;
+ALTER TABLE producer_outbox ADD COLUMN IF NOT EXISTS last_error TEXT;
+ALTER TABLE producer_outbox ADD COLUMN IF NOT EXISTS next_attempt_at TIMESTAMP;
+ALTER TABLE producer_outbox ADD COLUMN IF NOT EXISTS dead_lettered_at TIMESTAMP;
+
+DROP INDEX IF EXISTS idx_producer_outbox_unpublished;
+CREATE INDEX IF NOT EXISTS idx_producer_outbox_unpublished
+    ON producer_outbox (id) WHERE published_at IS NULL AND dead_lettered_at IS NULL;
+
+CREATE INDEX IF NOT EXISTS idx_producer_outbox_dead_lettered
+    ON producer_outbox (id) WHERE dead_lettered_at IS NOT NULL;
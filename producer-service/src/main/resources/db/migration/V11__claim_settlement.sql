@@ -0,0 +1,13 @@
+-- A claim is settled once the relay has told ordering-service about its order: the order's
+-- version has moved on there (or the order was turned down), so the claim can no longer match a
+-- queue row and OutboxRetentionJob may delete it after the retention window. Claims from before
+-- this migration count as settled if no fulfilment event was still waiting when they were made.
+ALTER TABLE allocated_orders ADD COLUMN IF NOT EXISTS settled_at TIMESTAMP;
+
+UPDATE allocated_orders SET settled_at = allocated_at
+WHERE settled_at IS NULL
+  AND allocated_at < (SELECT coalesce(min(created_at), 'infinity') - interval '1 minute' FROM producer_outbox
+                      WHERE published_at IS NULL AND event_type IN ('OrdersFulfilled', 'OrdersPartiallyFulfilled'));
+
+CREATE INDEX IF NOT EXISTS idx_allocated_orders_settled
+    ON allocated_orders (settled_at) WHERE settled_at IS NOT NULL;
@@ -0,0 +1,7 @@
+CREATE TABLE IF NOT EXISTS producer_capacity (
+    id SERIAL PRIMARY KEY,
+    producer_name VARCHAR(255) NOT NULL,
+    vaccines_quantity INT NOT NULL,
+    excess_vaccines INT NOT NULL,
+    production_deadline VARCHAR(255) NOT NULL
+);
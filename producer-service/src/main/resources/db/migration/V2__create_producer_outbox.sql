@@ -0,0 +1,17 @@
+CREATE TABLE IF NOT EXISTS producer_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    event_type VARCHAR(50) NOT NULL,
+    aggregate_id BIGINT NOT NULL,
+    payload TEXT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT now(),
+    published_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_producer_outbox_unpublished
+    ON producer_outbox (id) WHERE published_at IS NULL;
+
+-- Ids of ordering-service outbox events already applied here, for at-least-once delivery
+CREATE TABLE IF NOT EXISTS ordering_inbox (
+    event_id BIGINT PRIMARY KEY,
+    processed_at TIMESTAMP NOT NULL DEFAULT now()
+);
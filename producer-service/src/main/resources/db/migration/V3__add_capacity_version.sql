@@ -0,0 +1 @@
+ALTER TABLE producer_capacity ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
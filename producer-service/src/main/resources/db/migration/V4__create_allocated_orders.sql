@@ -0,0 +1,6 @@
+-- One row per order the stock was drawn for, written in the same transaction as the deductions,
+-- so two allocation runs can never both take stock for the same order
+CREATE TABLE IF NOT EXISTS allocated_orders (
+    order_id BIGINT PRIMARY KEY,
+    allocated_at TIMESTAMP NOT NULL DEFAULT now()
+);
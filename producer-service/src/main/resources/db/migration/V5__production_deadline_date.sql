@@ -0,0 +1,6 @@
+-- Deadlines as a real DATE, so comparisons are date comparisons and can use an index
+ALTER TABLE producer_capacity
+    ALTER COLUMN production_deadline TYPE DATE USING production_deadline::date;
+
+CREATE INDEX IF NOT EXISTS idx_producer_capacity_deadline
+    ON producer_capacity (production_deadline);
@@ -0,0 +1,49 @@
+-- One row per allocation pass that took stock
+CREATE TABLE IF NOT EXISTS allocation_runs (
+    id BIGSERIAL PRIMARY KEY,
+    trigger VARCHAR(50) NOT NULL,
+    orders INT NOT NULL,
+    units BIGINT NOT NULL,
+    committed_at TIMESTAMP NOT NULL DEFAULT now()
+);
+
+-- Which capacity served how much of which order, written with the run's deductions and never
+-- changed afterwards. excess_vaccines = vaccines_quantity - everything the capacity has served.
+CREATE TABLE IF NOT EXISTS allocation_ledger (
+    id BIGSERIAL PRIMARY KEY,
+    run_id BIGINT NOT NULL REFERENCES allocation_runs (id),
+    order_id BIGINT NOT NULL,
+    capacity_id BIGINT NOT NULL,
+    quantity INT NOT NULL CHECK (quantity > 0),
+    allocated_at TIMESTAMP NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS idx_allocation_ledger_order ON allocation_ledger (order_id);
+CREATE INDEX IF NOT EXISTS idx_allocation_ledger_capacity ON allocation_ledger (capacity_id, id);
+CREATE INDEX IF NOT EXISTS idx_allocation_ledger_run ON allocation_ledger (run_id);
+
+CREATE OR REPLACE FUNCTION allocation_ledger_append_only() RETURNS trigger AS $$
+BEGIN
+    RAISE EXCEPTION 'allocation_ledger is append-only';
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS allocation_ledger_append_only ON allocation_ledger;
+CREATE TRIGGER allocation_ledger_append_only BEFORE UPDATE OR DELETE ON allocation_ledger
+    FOR EACH ROW EXECUTE FUNCTION allocation_ledger_append_only();
+
+-- Units each capacity has served through ledger entry through_entry_id, so its current stock
+-- is the snapshot plus the entries after it instead of a sum over its whole history
+CREATE TABLE IF NOT EXISTS capacity_allocation_snapshots (
+    capacity_id BIGINT PRIMARY KEY,
+    allocated_quantity BIGINT NOT NULL,
+    through_entry_id BIGINT NOT NULL,
+    taken_at TIMESTAMP NOT NULL DEFAULT now()
+);
+
+-- Opening balance: what was allocated before the ledger existed has no entries
+INSERT INTO capacity_allocation_snapshots (capacity_id, allocated_quantity, through_entry_id)
+SELECT id, vaccines_quantity - excess_vaccines, 0
+FROM producer_capacity
+WHERE vaccines_quantity <> excess_vaccines
+ON CONFLICT (capacity_id) DO NOTHING;
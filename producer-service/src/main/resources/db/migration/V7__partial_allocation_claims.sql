@@ -0,0 +1,5 @@
+-- A partially served order comes back to the queue with a higher fulfilled_quantity and is
+-- claimed again for the rest, so a claim is the order together with the quantity it had
+ALTER TABLE allocated_orders ADD COLUMN IF NOT EXISTS fulfilled_before INT NOT NULL DEFAULT 0;
+ALTER TABLE allocated_orders DROP CONSTRAINT IF EXISTS allocated_orders_pkey;
+ALTER TABLE allocated_orders ADD PRIMARY KEY (order_id, fulfilled_before);
@@ -0,0 +1,10 @@
+-- A claim is the order together with its version in ordering-service, which goes up on every
+-- change there: a partial fulfilment, but also a reopen that resets the fulfilled quantity and
+-- would otherwise match an old claim forever. Older claims get negative versions, distinct per
+-- order and never those of a real order.
+ALTER TABLE allocated_orders ADD COLUMN IF NOT EXISTS order_version BIGINT;
+UPDATE allocated_orders SET order_version = -1 - fulfilled_before WHERE order_version IS NULL;
+ALTER TABLE allocated_orders ALTER COLUMN order_version SET NOT NULL;
+ALTER TABLE allocated_orders DROP CONSTRAINT IF EXISTS allocated_orders_pkey;
+ALTER TABLE allocated_orders ADD PRIMARY KEY (order_id, order_version);
+ALTER TABLE allocated_orders DROP COLUMN IF EXISTS fulfilled_before;
@@ -0,0 +1,5 @@
+-- An order ordering-service cancelled or expired between the pass that served it and the relay
+-- never gets its units: they go back to the capacities, with a negative entry per capacity and
+-- order reversing the pass's, so the ledger still adds up to what each capacity has served
+ALTER TABLE allocation_ledger DROP CONSTRAINT IF EXISTS allocation_ledger_quantity_check;
+ALTER TABLE allocation_ledger ADD CONSTRAINT allocation_ledger_quantity_check CHECK (quantity <> 0);
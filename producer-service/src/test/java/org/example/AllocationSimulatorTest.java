@@ -0,0 +1,227 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// AllocationSimulator.allocate against AllocationEngine itself: for the same queue and stock, with
+// or without a scenario's changes, the simulator must fulfil exactly the orders a greedy pass over
+// the engine would
+class AllocationSimulatorTest {
+
+    private static final LocalDate START = LocalDate.of(2030, 1, 1);
+    private static final List<String> PRODUCERS = List.of("Pfizer", "Moderna", "Novavax", "Valneva");
+
+    private final List<Order> orders = new ArrayList<>();
+    private final List<ProducerCapacity> capacities = new ArrayList<>();
+    private long capacityIds;
+
+    @Test
+    void snapshotFulfilsWhatAGreedyEnginePassWould() {
+        randomQueueAndStock(new Random(42));
+
+        boolean[] fulfilled = AllocationSimulator.allocate(snapshot(), null);
+
+        assertThat(fulfilled).containsExactly(enginePass(capacities));
+        // Neither everything nor nothing, or the comparison says little
+        assertThat(count(fulfilled)).isBetween(1, orders.size() - 1);
+    }
+
+    @Test
+    void addedStockFulfilsWhatAGreedyEnginePassWould() {
+        randomQueueAndStock(new Random(7));
+        SimulationScenario scenario = scenario(capacity("Pfizer", 5, 3000), capacity("Extra", 40, 5000));
+
+        List<ProducerCapacity> withAdded = new ArrayList<>(capacities);
+        withAdded.add(stocked("Pfizer", 5, 3000));
+        withAdded.add(stocked("Extra", 40, 5000));
+
+        assertThat(AllocationSimulator.allocate(snapshot(), scenario)).containsExactly(enginePass(withAdded));
+    }
+
+    @Test
+    void excludedProducersFulfilWhatAGreedyEnginePassWould() {
+        randomQueueAndStock(new Random(11));
+        SimulationScenario scenario = scenario();
+        scenario.setExcludedProducers(List.of("Moderna", "Valneva"));
+
+        List<ProducerCapacity> without = capacities.stream()
+            .filter(capacity -> !scenario.getExcludedProducers().contains(capacity.getProducerName()))
+            .toList();
+
+        assertThat(AllocationSimulator.allocate(snapshot(), scenario)).containsExactly(enginePass(without));
+    }
+
+    @Test
+    void addedStockGainsTheOrdersItServes() {
+        order("Pending", "North", 10, 100);
+        order("Pending", "South", 10, 50);
+        capacities.add(stocked("Pfizer", 0, 100));
+        SimulationScenario scenario = scenario(capacity("Moderna", 5, 60));
+
+        SimulationResult result = new AllocationSimulator(1).simulate(snapshot(), List.of(scenario), true).get(0);
+
+        assertThat(result.getFulfilledOrderIds()).containsExactly(1L, 2L);
+        assertThat(result.getOrdersFulfilled()).isEqualTo(2);
+        assertThat(result.getOrdersGained()).isEqualTo(1);
+        assertThat(result.getUnitsGained()).isEqualTo(50);
+        assertThat(result.getRegions())
+            .extracting(SimulationResult.RegionProjection::getRegion, SimulationResult.RegionProjection::getOrdersFulfilled)
+            .containsExactly(tuple("North", 1), tuple("South", 1));
+    }
+
+    @Test
+    void stockAddedAfterAnOrderIsDueDoesNotServeIt() {
+        order("Pending", "North", 10, 100);
+        capacities.add(stocked("Pfizer", 0, 50));
+        SimulationScenario scenario = scenario(capacity("Moderna", 11, 1000));
+
+        SimulationResult result = new AllocationSimulator(1).simulate(snapshot(), List.of(scenario), true).get(0);
+
+        assertThat(result.getFulfilledOrderIds()).isEmpty();
+        assertThat(result.getOrdersGained()).isZero();
+    }
+
+    @Test
+    void excludingAProducerLosesTheOrdersOnlyItCouldServe() {
+        order("Priority", "North", 10, 60);
+        order("Pending", "South", 10, 40);
+        capacities.add(stocked("Pfizer", 0, 60));
+        capacities.add(stocked("Moderna", 5, 40));
+        SimulationScenario scenario = scenario();
+        scenario.setExcludedProducers(List.of("Moderna", "Unknown"));
+
+        SimulationResult result = new AllocationSimulator(1).simulate(snapshot(), List.of(scenario), true).get(0);
+
+        assertThat(result.getFulfilledOrderIds()).containsExactly(1L);
+        assertThat(result.getOrdersGained()).isEqualTo(-1);
+        assertThat(result.getUnitsGained()).isEqualTo(-40);
+    }
+
+    @Test
+    void excludingAProducerWithNoStockChangesNothing() {
+        order("Pending", "North", 10, 60);
+        capacities.add(stocked("Pfizer", 0, 60));
+        SimulationScenario scenario = scenario();
+        scenario.setExcludedProducers(List.of("Moderna"));
+
+        SimulationResult result = new AllocationSimulator(1).simulate(snapshot(), List.of(scenario), true).get(0);
+
+        assertThat(result.getFulfilledOrderIds()).containsExactly(1L);
+        assertThat(result.getOrdersGained()).isZero();
+    }
+
+    // Each order in queue order with everything it still needs, as allocation.strategy=greedy
+    // does; the engine answers with an empty map for an order it turns down
+    private boolean[] enginePass(List<ProducerCapacity> stock) {
+        // Copies, since the engine draws the excess down as it goes
+        List<ProducerCapacity> copies = new ArrayList<>();
+        for (ProducerCapacity capacity : stock) {
+            ProducerCapacity copy = new ProducerCapacity();
+            copy.setId(capacity.getId());
+            copy.setProducerName(capacity.getProducerName());
+            copy.setProductionDeadline(capacity.getProductionDeadline());
+            copy.setVaccinesQuantity(capacity.getVaccinesQuantity());
+            copy.setExcessVaccines(capacity.getExcessVaccines());
+            copies.add(copy);
+        }
+        copies.sort(Comparator.comparing(ProducerCapacity::getProductionDeadline).thenComparing(ProducerCapacity::getId));
+        ProducerResponseRepository repository = mock(ProducerResponseRepository.class);
+        when(repository.findStockedOrderByDeadline()).thenReturn(copies);
+        AllocationEngine engine = new AllocationEngine();
+        ReflectionTestUtils.setField(engine, "responseRepository", repository);
+
+        boolean[] fulfilled = new boolean[orders.size()];
+        for (int i = 0; i < fulfilled.length; i++) {
+            Order order = orders.get(i);
+            fulfilled[i] = !engine.allocate(order.getExpectedDeliveryTime(), order.remainingQuantity()).isEmpty();
+        }
+        return fulfilled;
+    }
+
+    // A queue that outgrows the stock, with Priority orders, partly served ones and orders due
+    // before any deadline, sorted the way readAllocationQueue returns it
+    private void randomQueueAndStock(Random random) {
+        for (int i = 0; i < 2000; i++) {
+            Order order = new Order();
+            order.setId(i + 1L);
+            order.setStatus(random.nextInt(10) == 0 ? "Priority" : "Pending");
+            order.setRegion("Region " + random.nextInt(8));
+            order.setExpectedDeliveryTime(START.plusDays(random.nextInt(90)));
+            order.setVaccineQuantity(1 + random.nextInt(500));
+            if (random.nextInt(20) == 0) {
+                order.setFulfilledQuantity(random.nextInt(order.getVaccineQuantity()));
+            }
+            orders.add(order);
+        }
+        orders.sort(Comparator.comparing((Order order) -> !"Priority".equals(order.getStatus()))
+            .thenComparing(Order::getExpectedDeliveryTime)
+            .thenComparing(Order::getVaccineQuantity)
+            .thenComparing(Order::getId));
+
+        for (int j = 0; j < 60; j++) {
+            capacities.add(stocked(PRODUCERS.get(random.nextInt(PRODUCERS.size())), 3 + random.nextInt(80),
+                1 + random.nextInt(6000)));
+        }
+        capacities.sort(Comparator.comparing(ProducerCapacity::getProductionDeadline).thenComparing(ProducerCapacity::getId));
+    }
+
+    private SimulationSnapshot snapshot() {
+        return new SimulationSnapshot(orders, capacities, LocalDateTime.now());
+    }
+
+    private void order(String status, String region, int day, int quantity) {
+        Order order = new Order();
+        order.setId(orders.size() + 1L);
+        order.setStatus(status);
+        order.setRegion(region);
+        order.setExpectedDeliveryTime(START.plusDays(day));
+        order.setVaccineQuantity(quantity);
+        orders.add(order);
+    }
+
+    private ProducerCapacity stocked(String producerName, int day, int quantity) {
+        ProducerCapacity capacity = new ProducerCapacity();
+        capacity.setId(++capacityIds);
+        capacity.setProducerName(producerName);
+        capacity.setProductionDeadline(START.plusDays(day));
+        capacity.setVaccinesQuantity(quantity);
+        capacity.setExcessVaccines(quantity);
+        return capacity;
+    }
+
+    private static ProducerCapacityRequest capacity(String producerName, int day, int quantity) {
+        ProducerCapacityRequest request = new ProducerCapacityRequest();
+        request.setProducerName(producerName);
+        request.setProductionDeadline(START.plusDays(day).toString());
+        request.setVaccinesQuantity(quantity);
+        return request;
+    }
+
+    private static SimulationScenario scenario(ProducerCapacityRequest... added) {
+        SimulationScenario scenario = new SimulationScenario();
+        scenario.setName("scenario");
+        scenario.setCapacities(List.of(added));
+        return scenario;
+    }
+
+    private static int count(boolean[] fulfilled) {
+        int count = 0;
+        for (boolean served : fulfilled) {
+            if (served) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
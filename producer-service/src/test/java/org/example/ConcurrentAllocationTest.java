@@ -0,0 +1,527 @@
+package org.example;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+import static org.hamcrest.Matchers.startsWith;
+
+// Allocation runs, single capacity registrations and production plans all at once against
+// producer-service's own migrations, with an in-memory stand-in for ordering-service that serves
+// the allocation queue and applies the fulfilments the outbox relay sends. Afterwards every unit
+// taken off a capacity must be in the ledger and delivered to exactly one order, and the
+// in-memory index must hold exactly the stock the database has left.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "outbox.relay.interval-ms=20",
+        "allocation-queue.format=ndjson",
+        "allocation.log.sample-rate=1000000"
+})
+class ConcurrentAllocationTest {
+
+    private static final LocalDate START = LocalDate.of(2030, 1, 1);
+    private static final String QUEUE_URL = "http://ordering:8081/api/orders/allocation-queue";
+    private static final String FULFILL_URL = "http://ordering:8081/api/orders/fulfill";
+
+    private static final EmbeddedPostgres postgres = start();
+
+    @Autowired
+    private ProducerService producerService;
+
+    @Autowired
+    private AllocationEngine allocationEngine;
+
+    @Autowired
+    private AllocationLedgerRepository allocationLedgerRepository;
+
+    @Autowired
+    private OutboxRetentionJob outboxRetentionJob;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final StubOrdering ordering = new StubOrdering();
+
+    @DynamicPropertySource
+    static void dataSource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+    }
+
+    private static EmbeddedPostgres start() {
+        try {
+            return EmbeddedPostgres.builder().start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @BeforeEach
+    void bindOrdering() {
+        MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).ignoreExpectOrder(true).build();
+        server.expect(ExpectedCount.manyTimes(), requestTo(startsWith(QUEUE_URL)))
+                .andExpect(method(HttpMethod.GET))
+                .andRespond(ordering::queue);
+        server.expect(ExpectedCount.manyTimes(), requestTo(FULFILL_URL))
+                .andRespond(ordering::fulfill);
+        server.expect(ExpectedCount.manyTimes(), requestTo(FULFILL_URL + "-partial"))
+                .andRespond(ordering::fulfillPartially);
+    }
+
+    @AfterEach
+    void clear() {
+        awaitRelayed();
+        jdbcTemplate.execute("TRUNCATE producer_capacity, producer_outbox, allocated_orders, allocation_ledger,"
+                + " allocation_runs, capacity_allocation_snapshots, ordering_inbox");
+        allocationEngine.invalidate();
+    }
+
+    @Test
+    void concurrentRunsAndRegistrationsNeitherOversellNorLoseStock() throws InterruptedException {
+        // About 60k units ordered against 48k registered while the runs go on
+        for (int i = 0; i < 3000; i++) {
+            ordering.add(i + 1, 1 + (i * 37) % 40, START.plusDays(i % 90));
+        }
+
+        int registrars = 2;
+        int allocators = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(registrars + allocators);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch registered = new CountDownLatch(registrars);
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong runs = new AtomicLong();
+
+        for (int r = 0; r < registrars; r++) {
+            int registrar = r;
+            executor.submit(() -> {
+                try {
+                    go.await();
+                    for (int k = 0; k < 20; k++) {
+                        producerService.registerProducerCapacity(capacity(registrar, k, 0));
+                        producerService.registerProducerCapacities(
+                                List.of(capacity(registrar, k, 1), capacity(registrar, k, 2), capacity(registrar, k, 3)));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                } finally {
+                    registered.countDown();
+                }
+                return null;
+            });
+        }
+        for (int a = 0; a < allocators; a++) {
+            executor.submit(() -> {
+                try {
+                    go.await();
+                    do {
+                        producerService.fulfillOrders();
+                        runs.incrementAndGet();
+                    } while (registered.getCount() > 0);
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+                return null;
+            });
+        }
+        go.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.MINUTES)).isTrue();
+        assertThat(failures).isEmpty();
+        assertThat(runs.get()).isGreaterThan(allocators);
+
+        // Whatever the last runs missed
+        producerService.fulfillOrders();
+        awaitRelayed();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM producer_capacity", Integer.class))
+                .isEqualTo(registrars * 20 * 4);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM producer_capacity WHERE excess_vaccines < 0",
+                Integer.class)).isZero();
+        assertThat(allocationLedgerRepository.reconcile()).isEmpty();
+
+        long excess = jdbcTemplate.queryForObject("SELECT sum(excess_vaccines) FROM producer_capacity", Long.class);
+        long ledgered = jdbcTemplate.queryForObject("SELECT coalesce(sum(quantity), 0) FROM allocation_ledger", Long.class);
+        assertThat(allocationEngine.totalAvailable()).isEqualTo(excess);
+        assertThat(ledgered).isPositive();
+        assertThat(ordering.delivered.get()).isEqualTo(ledgered);
+        assertThat(ordering.ignored.get()).isZero();
+    }
+
+    @Test
+    void orderClaimedElsewhereLeavesTheRunAndAReopenedOrderIsNotServedTwice() {
+        long first = 1_000_001;
+        long taken = 1_000_002;
+        long third = 1_000_003;
+        ordering.add(first, 10, START);
+        ordering.add(taken, 10, START);
+        ordering.add(third, 10, START);
+        jdbcTemplate.update("INSERT INTO producer_capacity (producer_name, vaccines_quantity, excess_vaccines,"
+                + " production_deadline) VALUES ('Claims', 100, 100, ?)", START);
+        // Another instance has served this order in the state the queue shows
+        jdbcTemplate.update("INSERT INTO allocated_orders (order_id, order_version) VALUES (?, 0)", taken);
+        allocationEngine.invalidate();
+
+        producerService.fulfillOrders();
+        awaitRelayed();
+
+        assertThat(allocationLedgerRepository.findByOrder(first)).hasSize(1);
+        assertThat(allocationLedgerRepository.findByOrder(taken)).isEmpty();
+        assertThat(allocationLedgerRepository.findByOrder(third)).hasSize(1);
+        assertThat(allocationEngine.totalAvailable()).isEqualTo(80);
+        assertThat(ordering.orders.get(taken).status).isEqualTo("Pending");
+
+        // Reopened: back to Pending with what it got, as PATCH /{id}/status does, so nothing is left
+        ordering.reopen(first);
+        ordering.touch(taken);
+
+        producerService.fulfillOrders();
+        awaitRelayed();
+
+        assertThat(allocationLedgerRepository.findByOrder(first)).hasSize(1);
+        assertThat(allocationLedgerRepository.findByOrder(taken)).hasSize(1);
+        assertThat(allocationEngine.totalAvailable()).isEqualTo(70);
+        assertThat(allocationLedgerRepository.reconcile()).isEmpty();
+    }
+
+    @Test
+    void stockOfAnOrderCancelledBeforeTheRelayGoesBack() {
+        long kept = 2_000_001;
+        long cancelled = 2_000_002;
+        ordering.add(kept, 10, START);
+        ordering.add(cancelled, 15, START);
+        jdbcTemplate.update("INSERT INTO producer_capacity (producer_name, vaccines_quantity, excess_vaccines,"
+                + " production_deadline) VALUES ('Cancelled', 100, 100, ?)", START);
+        allocationEngine.invalidate();
+        ordering.cancelOnArrival(cancelled);
+
+        producerService.fulfillOrders();
+        awaitRelayed();
+
+        assertThat(ordering.orders.get(kept).status).isEqualTo("Fulfilled");
+        assertThat(ordering.orders.get(cancelled).status).isEqualTo("Cancelled");
+        assertThat(allocationLedgerRepository.findByOrder(cancelled))
+                .extracting(AllocationLedgerEntry::getQuantity)
+                .containsExactly(15, -15);
+        assertThat(jdbcTemplate.queryForObject("SELECT excess_vaccines FROM producer_capacity", Integer.class))
+                .isEqualTo(90);
+        assertThat(allocationLedgerRepository.reconcile()).isEmpty();
+        awaitUntil("index restored", () -> allocationEngine.totalAvailable() == 90);
+    }
+
+    @Test
+    void unitsDrawnBeforeAReloadAreNotGivenBackTwice() {
+        jdbcTemplate.update("INSERT INTO producer_capacity (producer_name, vaccines_quantity, excess_vaccines,"
+                + " production_deadline) VALUES ('Reload', 100, 100, ?)", START);
+        allocationEngine.invalidate();
+        long generation = allocationEngine.generation();
+        Map<Long, Integer> drawn = allocationEngine.allocate(START, 30, generation);
+        assertThat(drawn.values()).containsExactly(30);
+
+        // Another run rolls back: the index is read again from the rows, which still have the 30
+        allocationEngine.invalidate();
+        assertThat(allocationEngine.totalAvailable()).isEqualTo(100);
+        assertThat(allocationEngine.isCurrent(generation)).isFalse();
+
+        allocationEngine.release(drawn, generation);
+        assertThat(allocationEngine.totalAvailable()).isEqualTo(100);
+        assertThat(allocationEngine.allocate(START, 10, generation)).isEmpty();
+        assertThat(allocationEngine.allocate(START, 10, allocationEngine.generation())).isNotEmpty();
+    }
+
+    @Test
+    void unreadableEventIsDeadLetteredWithoutHoldingUpTheRest() {
+        long order = 3_000_001;
+        ordering.add(order, 10, START);
+        jdbcTemplate.update("INSERT INTO producer_capacity (producer_name, vaccines_quantity, excess_vaccines,"
+                + " production_deadline) VALUES ('Poison', 100, 100, ?)", START);
+        jdbcTemplate.update("INSERT INTO producer_outbox (event_type, aggregate_id, payload)"
+                + " VALUES ('CapacityRegistered', 0, 'not json')");
+        allocationEngine.invalidate();
+
+        producerService.fulfillOrders();
+        awaitRelayed();
+
+        assertThat(ordering.orders.get(order).status).isEqualTo("Fulfilled");
+        assertThat(jdbcTemplate.queryForObject("SELECT attempts FROM producer_outbox WHERE payload = 'not json'"
+                + " AND dead_lettered_at IS NOT NULL AND published_at IS NULL", Integer.class)).isEqualTo(1);
+    }
+
+    @Test
+    void retentionKeepsWhatIsStillInFlight() {
+        long settled = 4_000_001;
+        long pending = 4_000_002;
+        ordering.add(settled, 10, START);
+        jdbcTemplate.update("INSERT INTO producer_capacity (producer_name, vaccines_quantity, excess_vaccines,"
+                + " production_deadline) VALUES ('Retention', 100, 100, ?)", START);
+        allocationEngine.invalidate();
+
+        producerService.fulfillOrders();
+        awaitRelayed();
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM allocated_orders WHERE order_id = ?"
+                + " AND settled_at IS NOT NULL", Integer.class, settled)).isEqualTo(1);
+
+        // A claim whose event has not gone out, and everything else made long ago
+        jdbcTemplate.update("INSERT INTO allocated_orders (order_id, order_version, allocated_at)"
+                + " VALUES (?, 0, now() - interval '90 days')", pending);
+        jdbcTemplate.update("INSERT INTO ordering_inbox (event_id, processed_at) VALUES (1, now() - interval '90 days'),"
+                + " (2, now())");
+        jdbcTemplate.update("UPDATE producer_outbox SET published_at = now() - interval '90 days'"
+                + " WHERE published_at IS NOT NULL");
+        jdbcTemplate.update("UPDATE allocated_orders SET settled_at = now() - interval '90 days'"
+                + " WHERE settled_at IS NOT NULL");
+        jdbcTemplate.update("INSERT INTO producer_outbox (event_type, aggregate_id, payload, published_at)"
+                + " VALUES ('OrdersFulfilled', 0, '[]', now())");
+
+        outboxRetentionJob.prune();
+
+        assertThat(jdbcTemplate.queryForList("SELECT order_id FROM allocated_orders", Long.class))
+                .containsExactly(pending);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM producer_outbox", Integer.class)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForList("SELECT event_id FROM ordering_inbox", Long.class)).containsExactly(2L);
+    }
+
+    @Test
+    void planEventRunsOnePassWhoeverGetsItFirst() {
+        long order = 5_000_001;
+        ordering.add(order, 10, START);
+        ProducerCapacityRequest request = new ProducerCapacityRequest();
+        request.setProducerName("Plan");
+        request.setVaccinesQuantity(100);
+        request.setProductionDeadline(START.toString());
+
+        producerService.registerProducerCapacities(List.of(request));
+        awaitRelayed();
+        ordering.add(order + 1, 10, START);
+
+        // A relay that read the event before the in-line pass (or an earlier relay) marked it
+        // must not run another pass
+        producerService.onCapacitiesRegistered(outboxEventRepository.findAll().stream()
+                .filter(event -> OutboxEvent.CAPACITY_REGISTERED.equals(event.getEventType()))
+                .toList());
+
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM allocation_runs", Integer.class)).isEqualTo(1);
+        assertThat(allocationLedgerRepository.findByOrder(order)).hasSize(1);
+        assertThat(allocationEngine.totalAvailable()).isEqualTo(90);
+    }
+
+    private static ProducerCapacityRequest capacity(int registrar, int k, int row) {
+        ProducerCapacityRequest request = new ProducerCapacityRequest();
+        request.setProducerName("Producer " + registrar);
+        request.setVaccinesQuantity(300);
+        request.setProductionDeadline(START.plusDays((registrar * 31L + k * 13L + row * 7L) % 90).toString());
+        return request;
+    }
+
+    private void awaitRelayed() {
+        awaitUntil("outbox relayed", () -> jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM producer_outbox WHERE published_at IS NULL AND dead_lettered_at IS NULL",
+                Integer.class) == 0);
+    }
+
+    private static void awaitUntil(String description, BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as(description).isLessThan(deadline);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    // What ordering-service does with the calls producer-service makes, kept in memory
+    private class StubOrdering {
+
+        private final Map<Long, StubOrder> orders = new ConcurrentHashMap<>();
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong ignored = new AtomicLong();
+        // Orders cancelled while their fulfilment is on its way
+        private final Set<Long> cancelOnArrival = ConcurrentHashMap.newKeySet();
+
+        void add(long id, int quantity, LocalDate deliveryDate) {
+            orders.put(id, new StubOrder(id, quantity, deliveryDate));
+        }
+
+        void cancelOnArrival(long id) {
+            cancelOnArrival.add(id);
+        }
+
+        void reopen(long id) {
+            StubOrder order = orders.get(id);
+            synchronized (order) {
+                order.status = "Pending";
+                order.version++;
+            }
+        }
+
+        void touch(long id) {
+            StubOrder order = orders.get(id);
+            synchronized (order) {
+                order.version++;
+            }
+        }
+
+        // Open orders from fromDate on with no more left than maxQuantity, in queue order
+        ClientHttpResponse queue(ClientHttpRequest request) throws IOException {
+            Map<String, String> query = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams()
+                    .toSingleValueMap();
+            LocalDate fromDate = LocalDate.parse(query.get("fromDate"));
+            int maxQuantity = Integer.parseInt(query.get("maxQuantity"));
+            int limit = Integer.parseInt(query.get("limit"));
+
+            List<Order> open = new ArrayList<>();
+            for (StubOrder order : orders.values()) {
+                Order snapshot = order.snapshot();
+                if ("Pending".equals(snapshot.getStatus()) && !snapshot.getExpectedDeliveryTime().isBefore(fromDate)
+                        && snapshot.remainingQuantity() <= maxQuantity) {
+                    open.add(snapshot);
+                }
+            }
+            open.sort(Comparator.comparing(Order::getExpectedDeliveryTime)
+                    .thenComparing(Order::getVaccineQuantity)
+                    .thenComparing(Order::getId));
+
+            StringBuilder body = new StringBuilder();
+            for (Order order : open.subList(0, Math.min(limit, open.size()))) {
+                body.append(objectMapper.writeValueAsString(order)).append('\n');
+            }
+            return withSuccess(body.toString(), MediaType.parseMediaType("application/x-ndjson")).createResponse(request);
+        }
+
+        // Like markFulfilled: only open orders change, the rest is counted as ignored. Answers
+        // with the orders turned down, those neither open nor fulfilled.
+        ClientHttpResponse fulfill(ClientHttpRequest request) throws IOException {
+            List<Long> ids = objectMapper.readValue(((MockClientHttpRequest) request).getBodyAsBytes(),
+                    new TypeReference<List<Long>>() {});
+            List<Long> rejected = new ArrayList<>();
+            for (Long id : ids) {
+                StubOrder order = arrive(id);
+                synchronized (order) {
+                    if (!"Pending".equals(order.status)) {
+                        ignored.incrementAndGet();
+                        if (!"Fulfilled".equals(order.status)) {
+                            rejected.add(id);
+                        }
+                        continue;
+                    }
+                    delivered.addAndGet(order.vaccineQuantity - order.fulfilledQuantity);
+                    order.fulfilledQuantity = order.vaccineQuantity;
+                    order.status = "Fulfilled";
+                    order.version++;
+                }
+            }
+            return withSuccess(objectMapper.writeValueAsString(rejected), MediaType.APPLICATION_JSON)
+                    .createResponse(request);
+        }
+
+        ClientHttpResponse fulfillPartially(ClientHttpRequest request) throws IOException {
+            Map<Long, Integer> targets = objectMapper.readValue(((MockClientHttpRequest) request).getBodyAsBytes(),
+                    new TypeReference<Map<Long, Integer>>() {});
+            List<Long> rejected = new ArrayList<>();
+            for (Map.Entry<Long, Integer> target : targets.entrySet()) {
+                StubOrder order = arrive(target.getKey());
+                synchronized (order) {
+                    if (!"Pending".equals(order.status) || order.fulfilledQuantity >= target.getValue()) {
+                        ignored.incrementAndGet();
+                        if (!"Pending".equals(order.status) && !"Fulfilled".equals(order.status)) {
+                            rejected.add(target.getKey());
+                        }
+                        continue;
+                    }
+                    delivered.addAndGet(target.getValue() - order.fulfilledQuantity);
+                    order.fulfilledQuantity = target.getValue();
+                    order.version++;
+                }
+            }
+            return withSuccess(objectMapper.writeValueAsString(rejected), MediaType.APPLICATION_JSON)
+                    .createResponse(request);
+        }
+
+        private StubOrder arrive(Long id) {
+            StubOrder order = orders.get(id);
+            if (cancelOnArrival.remove(id)) {
+                synchronized (order) {
+                    order.status = "Cancelled";
+                    order.version++;
+                }
+            }
+            return order;
+        }
+    }
+
+    private static class StubOrder {
+
+        private final long id;
+        private final int vaccineQuantity;
+        private final LocalDate deliveryDate;
+        private String status = "Pending";
+        private int fulfilledQuantity;
+        private long version;
+
+        StubOrder(long id, int vaccineQuantity, LocalDate deliveryDate) {
+            this.id = id;
+            this.vaccineQuantity = vaccineQuantity;
+            this.deliveryDate = deliveryDate;
+        }
+
+        synchronized Order snapshot() {
+            Order order = new Order();
+            order.setId(id);
+            order.setRegion("Region " + id % 16);
+            order.setStatus(status);
+            order.setExpectedDeliveryTime(deliveryDate);
+            order.setVaccineQuantity(vaccineQuantity);
+            order.setFulfilledQuantity(fulfilledQuantity);
+            order.setVersion(version);
+            return order;
+        }
+    }
+}
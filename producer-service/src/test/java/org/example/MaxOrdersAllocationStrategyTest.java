@@ -0,0 +1,158 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// MaxOrdersAllocationStrategy.plan over hand-made queues and stock; units are per order, in
+// queue order
+class MaxOrdersAllocationStrategyTest {
+
+    private static final LocalDate D1 = LocalDate.of(2030, 1, 1);
+    private static final LocalDate D2 = LocalDate.of(2030, 2, 1);
+
+    private final List<Order> orders = new ArrayList<>();
+
+    @Test
+    void largeEarlyOrderDoesNotStarveSmallerOnes() throws TimeoutException {
+        order("Pending", D1, 100);
+        for (int i = 0; i < 5; i++) {
+            order("Pending", D1, 20);
+        }
+
+        assertThat(plan(false, stock(D1, 100))).containsExactly(0, 20, 20, 20, 20, 20);
+    }
+
+    @Test
+    void priorityOrdersAreChosenBeforePendingOnes() throws TimeoutException {
+        for (int i = 0; i < 5; i++) {
+            order("Pending", D1, 10);
+        }
+        order("Priority", D1, 50);
+
+        // Five Pending orders would be more orders, but the Priority one that fits comes first
+        assertThat(plan(false, stock(D1, 50))).containsExactly(0, 0, 0, 0, 0, 50);
+    }
+
+    @Test
+    void priorityOrdersThatDoNotFitLeaveTheStockToPendingOnes() throws TimeoutException {
+        order("Priority", D1, 80);
+        order("Pending", D1, 30);
+        order("Pending", D1, 20);
+
+        assertThat(plan(false, stock(D1, 50))).containsExactly(0, 30, 20);
+    }
+
+    @Test
+    void ordersDueBeforeTheFirstStockedDeadlineGetNothing() throws TimeoutException {
+        order("Priority", D1.minusDays(1), 10);
+        order("Pending", D1, 10);
+
+        assertThat(plan(true, stock(D1, 1000))).containsExactly(0, 10);
+    }
+
+    @Test
+    void laterStockServesEarlierDeadlinesOnlyUpToItsOwn() throws TimeoutException {
+        // 30 units usable from D1 on, 10 more only from D2 on
+        order("Pending", D1, 35);
+        order("Pending", D2, 10);
+
+        assertThat(plan(false, stock(D1, 30, D2, 10))).containsExactly(0, 10);
+    }
+
+    @Test
+    void partialLeftoversNeverTakeStockFromAChosenOrder() throws TimeoutException {
+        order("Pending", D1, 40);
+        order("Pending", D2, 15);
+        order("Pending", D2, 20);
+
+        // 40 units in all, 30 of them usable for the D1 order; the D2 orders are chosen and need
+        // 35, so only 5 are left for it even though 30 are on or before its date
+        int[] units = plan(true, stock(D1, 30, D2, 10));
+
+        assertThat(units).containsExactly(5, 15, 20);
+    }
+
+    @Test
+    void withoutPartialLeftoversStayUnused() throws TimeoutException {
+        order("Pending", D1, 40);
+        order("Pending", D2, 15);
+
+        assertThat(plan(false, stock(D1, 30, D2, 10))).containsExactly(0, 15);
+    }
+
+    @Test
+    void planPastItsDeadlineTimesOut() {
+        order("Pending", D1, 10);
+        MaxOrdersAllocationStrategy strategy = new MaxOrdersAllocationStrategy(null, 0, 1, false);
+
+        assertThatThrownBy(() -> strategy.plan(orders, stock(D1, 10), System.nanoTime() - 1))
+                .isInstanceOf(TimeoutException.class);
+    }
+
+    @Test
+    void passOverItsTimeBudgetFallsBackToQueueOrder() {
+        order("Pending", D1, 100);
+        order("Pending", D1, 20);
+        AllocationEngine allocationEngine = mock(AllocationEngine.class);
+        when(allocationEngine.stockByDeadline()).thenReturn(stock(D1, 100));
+        MaxOrdersAllocationStrategy strategy = new MaxOrdersAllocationStrategy(allocationEngine, 0, 1, false);
+        List<String> calls = new ArrayList<>();
+
+        strategy.allocate(consumer -> orders.forEach(consumer), new AllocationStrategy.Allocator() {
+            @Override
+            public boolean isClaimed(Order order) {
+                return false;
+            }
+
+            @Override
+            public boolean serve(Order order, int quantity) {
+                calls.add("serve " + order.getId() + " " + quantity);
+                return true;
+            }
+
+            @Override
+            public void skip(Order order) {
+                calls.add("skip " + order.getId());
+            }
+        });
+
+        // Greedy: every order in queue order with all it still needs; the engine turns down what
+        // no longer fits
+        assertThat(calls).containsExactly("serve 1 100", "serve 2 20");
+    }
+
+    private int[] plan(boolean partial, NavigableMap<LocalDate, Long> stock) throws TimeoutException {
+        MaxOrdersAllocationStrategy strategy = new MaxOrdersAllocationStrategy(null, 2000, 1, partial);
+        return strategy.plan(orders, stock, System.nanoTime() + TimeUnit.SECONDS.toNanos(10));
+    }
+
+    private void order(String status, LocalDate deliveryDate, int quantity) {
+        Order order = new Order();
+        order.setId(orders.size() + 1L);
+        order.setStatus(status);
+        order.setExpectedDeliveryTime(deliveryDate);
+        order.setVaccineQuantity(quantity);
+        orders.add(order);
+    }
+
+    private static NavigableMap<LocalDate, Long> stock(LocalDate deadline, long quantity) {
+        return new TreeMap<>(Map.of(deadline, quantity));
+    }
+
+    private static NavigableMap<LocalDate, Long> stock(LocalDate first, long firstQuantity, LocalDate second,
+                                                       long secondQuantity) {
+        return new TreeMap<>(Map.of(first, firstQuantity, second, secondQuantity));
+    }
+}